@@ -1,12 +1,22 @@
 package cluedo;
 
 import java.awt.*;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import cluedo.game.Game;
+import cluedo.game.Scenario;
+import cluedo.loader.CompiledScenario;
 import cluedo.loader.Loader;
 import cluedo.loader.Loader.SyntaxException;
+import cluedo.loader.ScenarioRegistry;
+import cluedo.loader.ScenarioValidator;
+import cluedo.loader.ScenarioWatcher;
 import cluedo.ui.console.ConsoleRenderer;
 import cluedo.ui.graphical.GUIRenderer;
 
@@ -14,13 +24,21 @@ import javax.swing.*;
 
 /**
  * Main class - starts a game of Cluedo, rendering with either a GUI or a CLI (depending on whether --cli is specified
- * as a command line argument)
+ * as a command line argument). Alternatively, "--compile input output" compiles a text scenario into the binary
+ * format read by CompiledScenario, and "--validate directory [summary.json]" checks every scenario in a directory.
  */
 public class Main {
 
 	public static void main(String[] args) {
 		try {
-			if (Arrays.asList(args).contains("--cli")) {
+			if (args.length == 3 && args[0].equals("--compile")) {
+				compile(args[1], args[2]);
+			}
+			else if ((args.length == 2 || args.length == 3) && args[0].equals("--validate")) {
+				boolean valid = validate(args[1], args.length == 3 ? args[2] : null);
+				System.exit(valid ? 0 : 1);
+			}
+			else if (Arrays.asList(args).contains("--cli")) {
 				startCLI();
 			}
 			else {
@@ -37,7 +55,7 @@ public class Main {
 		}
 	}
 
-	private static void startGUI() throws IOException, SyntaxException {
+	private static void startGUI() {
         // Nicer look and feel for UI
 		try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -45,19 +63,91 @@ public class Main {
         }
 		ToolTipManager.sharedInstance().setInitialDelay(0);
 
-		// The user can change the setup later from the game menu
-		final Loader loader = new Loader("data/standard.txt");
+		// Show the window straight away, and load the standard setup in the background. The user can change the
+		// setup later from the game menu, so the other scenarios are loaded in the background too.
 		EventQueue.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				new GUIRenderer(new Game(loader)).setVisible(true);
+				GUIRenderer renderer = new GUIRenderer();
+				renderer.setVisible(true);
+				renderer.loadGame("data/standard.txt");
+				ScenarioRegistry.getDefault().preload(new File("data"));
 			}
 		});
 	}
 
 	private static void startCLI() throws IOException, SyntaxException {
 		String filename = ConsoleRenderer.queryFilename("data/standard.txt");
-		Loader loader = new Loader(filename);
-		new ConsoleRenderer(new Game(loader)).run();
+		Scenario scenario = ScenarioRegistry.getDefault().get(filename);
+		printIsolatedRegions(scenario);
+
+		// Pick up edits to the file between games
+		ScenarioWatcher watcher = new ScenarioWatcher(filename, scenario, new ScenarioWatcher.Listener() {
+			@Override
+			public void scenarioChanged(Scenario changed) {
+				System.out.println("\n[The setup file has changed, and will be used for the next game.]");
+				printIsolatedRegions(changed);
+			}
+
+			@Override
+			public void reloadFailed(String message) {
+				System.out.println("\n[The setup file has changed, but couldn't be loaded: " + message + "]");
+			}
+		});
+
+		ConsoleRenderer renderer = new ConsoleRenderer(new Game(scenario));
+		try {
+			while (true) {
+				renderer.run();
+				if (!ConsoleRenderer.readLine("Play again (y/n)? ").trim().equalsIgnoreCase("y")) {
+					break;
+				}
+				renderer.setGame(new Game(watcher.getScenario()));
+			}
+		}
+		finally {
+			watcher.close();
+		}
+	}
+
+	private static void compile(String input, String output) throws IOException, SyntaxException {
+		Loader loader = new Loader(input);
+		printIsolatedRegions(new Scenario(loader));
+		CompiledScenario.compile(loader, new File(output));
+		System.out.println("Compiled " + input + " to " + output);
+	}
+
+	private static boolean validate(String directory, String summaryFile) throws IOException {
+		ScenarioValidator.Summary summary = new ScenarioValidator().validateDirectory(new File(directory));
+		for (ScenarioValidator.Result result : summary.getResults()) {
+			System.out.printf("%-4s %9.2f ms  %s%n", result.isValid() ? "OK" : "FAIL", result.getNanos() / 1e6,
+					result.getFilename());
+			for (String error : result.getErrors()) {
+				System.out.println("       error: " + error);
+			}
+			for (String warning : result.getWarnings()) {
+				System.out.println("       warning: " + warning);
+			}
+		}
+		System.out.printf("%d of %d files valid in %.1f ms (%.1f files/s, %.2f MB/s)%n", summary.getValidCount(),
+				summary.getResults().size(), summary.getNanos() / 1e6, summary.getFilesPerSecond(),
+				summary.getBytesPerSecond() / (1024 * 1024));
+
+		if (summaryFile != null) {
+			Writer out = new OutputStreamWriter(new FileOutputStream(summaryFile), StandardCharsets.UTF_8);
+			try {
+				out.write(summary.toJson());
+			}
+			finally {
+				out.close();
+			}
+		}
+		return summary.getValidCount() == summary.getResults().size();
+	}
+
+	private static void printIsolatedRegions(Scenario scenario) {
+		for (String region : scenario.getComponents().getIsolatedRegions()) {
+			System.out.println("Warning: " + region);
+		}
 	}
 }
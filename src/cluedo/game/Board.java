@@ -1,11 +1,11 @@
 package cluedo.game;
 
 import java.awt.Point;
-import java.util.ArrayList;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import cluedo.game.objects.Room;
 import cluedo.loader.Loader;
@@ -31,15 +31,42 @@ public class Board {
 		UP, RIGHT, DOWN, LEFT
 	}
 
+	// Largest value of the room and door fields of a makeMove() token
+	private static final long UNDO_FIELD_MASK = 0xFFFF;
+
 	private int width;
 	private int height;
 
-	// Contains (width * height) bits in 'blocks' of (size).
-	// The bit at (x + width * y) is true if the point (x,y) is a corridor
-	private BitSet corridors;
-	private Map<Point, Door> doorLocations;
+	// Corridor and door positions are shared with every other board using the
+	// same scenario
+	private Scenario scenario;
+	private TileGrid tiles;
+
+	// Players by ordinal (see Player.getOrdinal), and the tile index (x +
+	// width * y) of each player's location. Players in a room are at the door
+	// they entered through.
+	private Player[] players = new Player[6];
+	private int[] playerLocations = new int[6];
+	private int playerCount;
+	// The bit for each tile index is set if at least one player is there
+	private BitSet occupied = new BitSet();
 
-	private Map<Player, Point> playerLocations = new HashMap<Player, Point>();
+	// Zobrist hash of every player's position and remaining moves, and each
+	// player's part of it
+	private long hash;
+	private long[] playerKeys = new long[6];
+	private final PropertyChangeListener playerListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent e) {
+			Player player = (Player) e.getSource();
+			if (e.getPropertyName().equals("room")) {
+				updateKey(player, (Room) e.getNewValue(), player.getMovesRemaining());
+			}
+			else if (e.getPropertyName().equals("movesRemaining")) {
+				updateKey(player, player.getRoom(), (Integer) e.getNewValue());
+			}
+		}
+	};
 
 	/**
 	 * Construct a new board
@@ -49,16 +76,27 @@ public class Board {
 	 *            locations, door locations, etc.
 	 */
 	public Board(Loader loader) {
-		this.width = loader.getBoardWidth();
-		this.height = loader.getBoardHeight();
-		this.corridors = loader.getCorridors();
-
-		this.doorLocations = new HashMap<Point, Door>();
-		for (Room room : loader.getRooms().values()) {
-			for (Door door : room.getDoors()) {
-				this.doorLocations.put(door.getLocation(), door);
-			}
-		}
+		this(new Scenario(loader));
+	}
+
+	/**
+	 * Construct a new board with the layout of a (possibly shared) scenario
+	 *
+	 * @param scenario
+	 *            scenario containing corridor positions, door locations, etc.
+	 */
+	public Board(Scenario scenario) {
+		this.scenario = scenario;
+		this.tiles = scenario.getTiles();
+		this.width = scenario.getWidth();
+		this.height = scenario.getHeight();
+	}
+
+	/**
+	 * Returns the scenario this board's layout comes from
+	 */
+	public Scenario getScenario() {
+		return scenario;
 	}
 
 	/**
@@ -82,10 +120,14 @@ public class Board {
 	 *            point to check (in tiles)
 	 */
 	public boolean isCorridor(Point point) {
-		if (point.x < 0 || point.x >= width || point.y < 0 || point.y >= height) {
-            return false;
-        }
-		return corridors.get(point.x + width * point.y);
+		return tiles.isCorridor(point.x, point.y);
+	}
+
+	/**
+	 * Returns true if the tile (x,y) is a corridor, false otherwise
+	 */
+	public boolean isCorridor(int x, int y) {
+		return tiles.isCorridor(x, y);
 	}
 
     /**
@@ -94,9 +136,16 @@ public class Board {
      *            point to check (in tiles)
      */
     public boolean isDoor(Point point) {
-        return doorLocations.containsKey(point);
+        return tiles.isDoor(point.x, point.y);
     }
 
+	/**
+	 * Returns true if the tile (x,y) is a door, false otherwise
+	 */
+	public boolean isDoor(int x, int y) {
+		return tiles.isDoor(x, y);
+	}
+
 	/**
 	 * Returns true if the given point is a door and can be entered from `beside`, false otherwise
 	 *
@@ -107,17 +156,45 @@ public class Board {
      *            to go through a vertical door horizontally etc.)
      */
 	public boolean canEnterDoor(Point doorLocation, Point beside) {
-        Door door = doorLocations.get(doorLocation);
-        if (door == null) {
-            return false;
-        }
-        else if (doorLocation.getX() == beside.getX() && door.isVertical()) {
-            return false;
-        }
-        else if (doorLocation.getY() == beside.getY() && !door.isVertical()) {
-            return false;
-        }
-        return true;
+		return tiles.canEnterDoor(doorLocation.x, doorLocation.y, beside.x, beside.y);
+	}
+
+	/**
+	 * Returns true if the tile (doorX,doorY) is a door and can be entered from
+	 * the tile (fromX,fromY), false otherwise
+	 */
+	public boolean canEnterDoor(int doorX, int doorY, int fromX, int fromY) {
+		return tiles.canEnterDoor(doorX, doorY, fromX, fromY);
+	}
+
+	/**
+	 * Returns the tile (x,y), as described by TileGrid
+	 */
+	public int getTile(int x, int y) {
+		return tiles.getTile(x, y);
+	}
+
+	/**
+	 * Returns true if the player could walk to the goal (a corridor or door)
+	 * given enough moves, ignoring other players. This takes constant time, so
+	 * can be used to reject unreachable goals before searching for a path.
+	 *
+	 * @param player
+	 *            player to check from (in a room or on the board)
+	 * @param goal
+	 *            point to check (in tiles)
+	 */
+	public boolean canReach(Player player, Point goal) {
+		ConnectedComponents components = scenario.getComponents();
+		int from;
+		if (player.getRoom() != null) {
+			from = components.getComponent(player.getRoom());
+		}
+		else {
+			int location = getLocationIndex(player);
+			from = location < 0 ? -1 : components.getComponent(location % width, location / width);
+		}
+		return from >= 0 && from == components.getComponent(goal.x, goal.y);
 	}
 
 	/**
@@ -128,7 +205,29 @@ public class Board {
 	 *         board
 	 */
 	public Point getPlayerLocation(Player player) {
-		return playerLocations.get(player);
+		int location = getLocationIndex(player);
+		return location < 0 ? null : new Point(location % width, location / width);
+	}
+
+	/**
+	 * Returns true if a player is on the tile (x,y). Players in a room count
+	 * as being on the door they entered through.
+	 */
+	public boolean isOccupied(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height && occupied.get(x + width * y);
+	}
+
+	/**
+	 * Returns true if another player stops a move by this player from ending
+	 * on the tile (x,y). Players can walk past each other and any number can
+	 * enter a room by the same door, so only a corridor tile with someone
+	 * else on it is blocked.
+	 */
+	public boolean isBlocked(Player player, int x, int y) {
+		if (!isOccupied(x, y) || isDoor(x, y)) {
+			return false;
+		}
+		return getLocationIndex(player) != x + width * y;
 	}
 
 	/**
@@ -142,14 +241,46 @@ public class Board {
 		if (startLocation == null) {
 			throw new RuntimeException("Player " + player + "'s token doesn't have a start position");
 		}
-		this.playerLocations.put(player, startLocation);
+
+		if (getLocationIndex(player) < 0) {
+			if (playerCount == players.length) {
+				players = Arrays.copyOf(players, playerCount * 2);
+				playerLocations = Arrays.copyOf(playerLocations, playerCount * 2);
+				playerKeys = Arrays.copyOf(playerKeys, playerCount * 2);
+			}
+			player.setOrdinal(playerCount);
+			players[playerCount] = player;
+			playerLocations[playerCount] = -1;
+			playerKeys[playerCount++] = 0;
+			player.addPropertyChangeListener(playerListener);
+		}
+		setLocation(player, startLocation.x, startLocation.y);
 	}
 
 	/**
 	 * Remove all players from the board
 	 */
 	public void clearPlayers() {
-		playerLocations.clear();
+		for (int i = 0; i < playerCount; i++) {
+			if (players[i].getOrdinal() == i) {
+				players[i].setOrdinal(-1);
+			}
+			players[i].removePropertyChangeListener(playerListener);
+			players[i] = null;
+		}
+		playerCount = 0;
+		occupied.clear();
+		hash = 0;
+	}
+
+	/**
+	 * Returns a Zobrist hash of the players' positions (their tile, or their
+	 * room if they are in one) and remaining moves. It is kept up to date as
+	 * players move, change rooms or use up moves, so reading it is free. Equal
+	 * positions have equal hashes; different positions almost always differ.
+	 */
+	public long getHash() {
+		return hash;
 	}
 
 	/**
@@ -167,125 +298,262 @@ public class Board {
 	 *             trying to exit from a room they're not in
 	 */
 	public void movePlayer(Player player, List<Direction> steps, Door door) throws UnableToMoveException {
-		if (!playerLocations.containsKey(player)) {
+		movePlayer(player, PackedPath.of(steps), door);
+	}
+
+	/**
+	 * Move a player out of a room through a door (if door is not null), then
+	 * along the specified path. The whole path is checked before the player
+	 * is moved, so the player stays where they were if this throws.
+	 *
+	 * @param player
+	 *            player to move
+	 * @param steps
+	 *            path to move the player along
+	 * @param door
+	 *            door the player should start moving from, or null if the
+	 *            player is in a corridor
+	 * @throws UnableToMoveException
+	 *             if the player tries to move to an invalid location, or is
+	 *             trying to exit from a room they're not in
+	 */
+	public void movePlayer(Player player, PackedPath steps, Door door) throws UnableToMoveException {
+		int location = getLocationIndex(player);
+		if (location < 0) {
 			throw new RuntimeException("Player " + player + " isn't on the board");
 		}
-		List<Direction> stepsCopy = new ArrayList<>(steps);
 
 		// Simple case - player is just moving along a corridor
 		if (door == null) {
 			if (player.getRoom() != null) {
 				throw new UnableToMoveException("You must go out through a door");
 			}
-			movePlayerAlongPath(player, stepsCopy);
-			return;
+			if (steps.size() == 0) {
+				return;
+			}
 		}
 
 		// Complex case - player is going out of a room
-		if (player.getRoom() == null
-				|| !player.getRoom().equals(door.getRoom())) {
-			throw new UnableToMoveException("You're not in that room");
-		}
-		for (Map.Entry<Point, Door> entry : doorLocations.entrySet()) {
-			if (entry.getValue() == door) {
-				playerLocations.put(player, door.getPointBeside());
-				player.setRoom(null);
-				movePlayerAlongPath(player, stepsCopy);
-				return;
+		else {
+			if (player.getRoom() == null
+					|| !player.getRoom().equals(door.getRoom())) {
+				throw new UnableToMoveException("You're not in that room");
+			}
+			Point doorLocation = door.getLocation();
+			int tile = tiles.getTile(doorLocation.x, doorLocation.y);
+			if (TileGrid.kind(tile) != TileGrid.DOOR || tiles.getDoors().get(TileGrid.index(tile)) != door) {
+				throw new RuntimeException("Door doesn't exist");
 			}
+			location = tiles.getBesideIndex(TileGrid.index(tile));
+			if (location < 0) {
+				throw new UnableToMoveException("You're trying to go outside the board");
+			}
+		}
+
+		int destination = steps.size() == 0 ? location : checkPath(location, steps);
+		int tile = tiles.tileAt(destination);
+		if (TileGrid.kind(tile) == TileGrid.DOOR) {
+			player.setRoom(tiles.getDoors().get(TileGrid.index(tile)).getRoom());
+		}
+		else {
+			player.setRoom(null);
 		}
-		throw new RuntimeException("Door doesn't exist");
+		setLocation(player, destination % width, destination / width);
 	}
 
 	/**
-	 * Move a player along the specified path
+	 * Moves a player as movePlayer(Player, PackedPath, Door) does, and returns
+	 * a token which unmakeMove() can use to put them back. Together these let
+	 * look-ahead searches try moves on one board without copying it. Neither
+	 * method allocates, other than the events Player.setRoom() fires.
+	 *
+	 * The token holds the player's previous tile index in its low 32 bits,
+	 * their previous room's index (in Scenario.getRooms()) plus one in the
+	 * next 16 bits, and the index of the door used (in TileGrid.getDoors())
+	 * plus one in the top 16 bits, with 0 for no room or door.
 	 *
 	 * @param player
 	 *            player to move
 	 * @param steps
 	 *            path to move the player along
+	 * @param door
+	 *            door the player should start moving from, or null if the
+	 *            player is in a corridor
+	 * @return token describing how to undo the move
 	 * @throws UnableToMoveException
-	 *             if the player tries to move to an invalid location
+	 *             if the move isn't allowed, in which case nothing changes
 	 */
-	private void movePlayerAlongPath(Player player, List<Direction> steps) throws UnableToMoveException {
-		if (steps.size() == 0) {
-            return;
-        }
-
-        Point currentLocation = playerLocations.get(player);
-		if (currentLocation == null) {
-			throw new RuntimeException("Player " + player + " isn't on the board");
+	public long makeMove(Player player, PackedPath steps, Door door) throws UnableToMoveException {
+		long location = getLocationIndex(player) & 0xFFFFFFFFL;
+		long room = player.getRoom() == null ? 0 : scenario.getRoomIndex(player.getRoom()) + 1;
+		long doorUsed = 0;
+		if (door != null) {
+			Point doorLocation = door.getLocation();
+			int tile = tiles.getTile(doorLocation.x, doorLocation.y);
+			doorUsed = TileGrid.kind(tile) == TileGrid.DOOR ? TileGrid.index(tile) + 1 : 0;
+		}
+		if (room > UNDO_FIELD_MASK || doorUsed > UNDO_FIELD_MASK) {
+			throw new IllegalStateException("Too many rooms or doors to record a move");
 		}
 
-		Direction finalStep = steps.remove(steps.size() - 1);
-		Point newLocation = currentLocation;
-		for (Direction step : steps) {
-			newLocation = moveFrom(newLocation, step);
-			checkInCorridor(newLocation);
+		movePlayer(player, steps, door);
+		return location | room << 32 | doorUsed << 48;
+	}
+
+	/**
+	 * Puts a player back where they were before a move made by makeMove().
+	 * Moves must be undone in the reverse order they were made.
+	 *
+	 * @param player
+	 *            player who was moved
+	 * @param token
+	 *            token returned by makeMove()
+	 */
+	public void unmakeMove(Player player, long token) {
+		int location = (int) token;
+		int room = (int) (token >>> 32 & UNDO_FIELD_MASK) - 1;
+		player.setRoom(room < 0 ? null : scenario.getRooms().get(room));
+		setLocation(player, location % width, location / width);
+	}
+
+	/**
+	 * Returns the door a move made by makeMove() left a room through, or null
+	 * if the player started in a corridor
+	 *
+	 * @param token
+	 *            token returned by makeMove()
+	 */
+	public Door getDoorUsed(long token) {
+		int door = (int) (token >>> 48 & UNDO_FIELD_MASK) - 1;
+		return door < 0 ? null : tiles.getDoors().get(door);
+	}
+
+	/**
+	 * Checks that a path can be followed, without moving anyone
+	 *
+	 * @param start
+	 *            tile index to start from
+	 * @param steps
+	 *            path to follow (at least one step)
+	 * @return the tile index at the end of the path
+	 * @throws UnableToMoveException
+	 *             if the path leaves the corridors (other than into a door at
+	 *             the end), or ends on another player
+	 */
+	private int checkPath(int start, PackedPath steps) throws UnableToMoveException {
+		int x = start % width;
+		int y = start / width;
+		int last = steps.size() - 1;
+		for (int i = 0; i < last; i++) {
+			x += steps.dx(i);
+			y += steps.dy(i);
+			checkInCorridor(x, y);
 		}
 
-		newLocation = moveFrom(newLocation, finalStep);
-		Door door = doorLocations.get(newLocation);
-		if (door != null) {
-			if (door.isVertical() &&
-					(finalStep == Direction.UP || finalStep == Direction.DOWN)) {
+		Direction finalStep = steps.get(last);
+		x += steps.dx(last);
+		y += steps.dy(last);
+		int tile = tiles.getTile(x, y);
+		if (TileGrid.kind(tile) == TileGrid.DOOR) {
+			boolean vertical = TileGrid.isVerticalDoor(tile);
+			if (vertical && (finalStep == Direction.UP || finalStep == Direction.DOWN)) {
 				throw new UnableToMoveException("You can't enter this door that way");
 			}
-			else if (!door.isVertical() &&
-					(finalStep == Direction.LEFT || finalStep == Direction.RIGHT)) {
+			else if (!vertical && (finalStep == Direction.LEFT || finalStep == Direction.RIGHT)) {
 				throw new UnableToMoveException("You can't enter this door that way");
 			}
-			player.setRoom(door.getRoom());
 		}
 		else {
-			checkInCorridor(newLocation);
-			if (playerLocations.values().contains(newLocation)) {
+			checkInCorridor(x, y);
+			if (occupied.get(x + width * y)) {
 				throw new UnableToMoveException("You can't move onto the same square as another player!");
 			}
-			player.setRoom(null);
 		}
-		playerLocations.put(player, newLocation);
+		return x + width * y;
 	}
 
 	/**
-	 * Moves one step from the given point in the given direction
-	 *
-	 * @param location
-	 *            point to move from
-	 * @param step
-	 *            direction to move in
-	 * @return a new point created by moving one step in the direction
+	 * Returns the player with an ordinal (see Player.getOrdinal), or null if
+	 * there isn't one
+	 */
+	Player getPlayer(int ordinal) {
+		return ordinal >= 0 && ordinal < playerCount ? players[ordinal] : null;
+	}
+
+	/**
+	 * Returns the tile index of a player's location, or -1 if the player is
+	 * not on this board
 	 */
-	private Point moveFrom(Point location, Direction step) {
-		switch (step) {
-		case UP:
-			return new Point(location.x, location.y - 1);
-		case RIGHT:
-			return new Point(location.x + 1, location.y);
-		case DOWN:
-			return new Point(location.x, location.y + 1);
-		case LEFT:
-		default:
-			return new Point(location.x - 1, location.y);
+	private int getLocationIndex(Player player) {
+		int ordinal = player.getOrdinal();
+		if (ordinal < 0 || ordinal >= playerCount || players[ordinal] != player) {
+			return -1;
+		}
+		return playerLocations[ordinal];
+	}
+
+	/**
+	 * Moves a player (who must be on the board) to the tile (x,y), keeping
+	 * the occupied tiles up to date
+	 */
+	private void setLocation(Player player, int x, int y) {
+		int ordinal = player.getOrdinal();
+		int from = playerLocations[ordinal];
+		int to = x + width * y;
+		playerLocations[ordinal] = to;
+		occupied.set(to);
+		updateKey(player, player.getRoom(), player.getMovesRemaining());
+
+		if (from >= 0 && from != to) {
+			// Players can share a door (or a start tile), so only clear the
+			// tile if no one else is on it
+			occupied.clear(from);
+			for (int i = 0; i < playerCount; i++) {
+				if (playerLocations[i] == from) {
+					occupied.set(from);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces a player's part of the hash, given their room and remaining
+	 * moves (which may be about to change) and their current location
+	 */
+	private void updateKey(Player player, Room room, int movesRemaining) {
+		int ordinal = player.getOrdinal();
+		if (ordinal < 0 || ordinal >= playerCount || players[ordinal] != player) {
+			return;
+		}
+
+		long key = Zobrist.key(Zobrist.MOVES, ordinal, movesRemaining);
+		if (room != null) {
+			key ^= Zobrist.key(Zobrist.ROOM, ordinal, scenario.getRoomIndex(room));
+		}
+		else {
+			key ^= Zobrist.key(Zobrist.TILE, ordinal, playerLocations[ordinal]);
 		}
+		hash ^= playerKeys[ordinal] ^ key;
+		playerKeys[ordinal] = key;
 	}
 
 	/**
-	 * Checks whether a location is a corridor (ie. a valid place to move) or
-	 * not
+	 * Checks whether a tile is a corridor (ie. a valid place to move) or not
 	 *
-	 * @param location
-	 *            point to check
+	 * @param x
+	 *            x-coordinate of the tile to check
+	 * @param y
+	 *            y-coordinate of the tile to check
 	 * @throws UnableToMoveException
-	 *             if the point is outside the board or is not a corridor
+	 *             if the tile is outside the board or is not a corridor
 	 */
-	private void checkInCorridor(Point location) throws UnableToMoveException {
-		if (location.x < 0 || location.y < 0 || location.x > width
-				|| location.y > height) {
+	private void checkInCorridor(int x, int y) throws UnableToMoveException {
+		if (x < 0 || y < 0 || x > width || y > height) {
 			throw new UnableToMoveException(
 					"You're trying to go outside the board");
 		}
-		else if (!corridors.get(location.x + location.y * width)) {
+		else if (!tiles.isCorridor(x, y)) {
 			throw new UnableToMoveException(
 					"You're trying to move through a wall");
 		}
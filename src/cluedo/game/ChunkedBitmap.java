@@ -0,0 +1,277 @@
+package cluedo.game;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A tile bitmap for huge boards, divided into chunks of 64x64 tiles. Chunks
+ * where every tile is clear (eg. inside rooms) or every tile is set (eg. open
+ * corridor) are stored as a single flag, so only chunks containing both use
+ * memory for their tiles.
+ *
+ * The bitmap is built one row at a time with set() and finishRow(); each band
+ * of 64 rows is compacted as soon as it is complete, so the whole board is
+ * never held uncompacted. Once finish() has been called the bitmap must not
+ * be modified.
+ */
+public final class ChunkedBitmap implements TileBitmap {
+	/**
+	 * The ways a chunk can be stored
+	 */
+	public enum ChunkType {
+		/** Every tile is clear; stored as a flag */
+		EMPTY,
+		/** Every tile is set; stored as a flag */
+		FULL,
+		/** A mixture; stored as 64 words of 64 bits */
+		MIXED
+	}
+
+	/** Width and height of a chunk, in tiles */
+	public static final int CHUNK_SIZE = 64;
+	private static final int CHUNK_SHIFT = 6;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Memory used by a mixed chunk (the words plus the array header)
+	private static final int MIXED_CHUNK_BYTES = CHUNK_SIZE * 8 + 16;
+
+	private final int width;
+	private int height;
+	private final int chunkColumns;
+
+	// Chunks in row-major order. Each mixed chunk is 64 words, one per row of
+	// tiles, where bit x of a word is the tile (x,y) within the chunk. Uniform
+	// chunks are null, and are full if their bit is set in (fullChunks).
+	private long[][] chunks;
+	private final BitSet fullChunks = new BitSet();
+
+	/**
+	 * Construct a new, empty bitmap of the given width. Rows are added by
+	 * calling set() and finishRow(), then finish().
+	 *
+	 * @param width
+	 *            width of the bitmap (in tiles)
+	 */
+	public ChunkedBitmap(int width) {
+		this.width = width;
+		this.chunkColumns = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+		this.chunks = new long[chunkColumns * 4][];
+	}
+
+	/**
+	 * Returns a chunked copy of a bit set in the format returned by
+	 * toBitSet()
+	 *
+	 * @param width
+	 *            width of the bitmap (in tiles)
+	 * @param height
+	 *            height of the bitmap (in tiles)
+	 * @param bits
+	 *            bits to copy
+	 */
+	public static ChunkedBitmap fromBitSet(int width, int height, BitSet bits) {
+		ChunkedBitmap bitmap = new ChunkedBitmap(width);
+		for (int y = 0; y < height; y++) {
+			int rowStart = y * width;
+			int rowEnd = rowStart + width;
+			for (int i = bits.nextSetBit(rowStart); i >= 0 && i < rowEnd; i = bits.nextSetBit(i + 1)) {
+				bitmap.set(i - rowStart, y);
+			}
+			bitmap.finishRow(y);
+		}
+		bitmap.finish(height);
+		return bitmap;
+	}
+
+	/**
+	 * Sets the bit for the tile (x,y). Rows must be added in order, so y must
+	 * not be in a band of rows which has already been compacted.
+	 */
+	public void set(int x, int y) {
+		if (x < 0 || x >= width || y < 0) {
+			throw new IndexOutOfBoundsException("Tile (" + x + "," + y + ") is outside the bitmap");
+		}
+
+		int index = chunkIndex(x, y);
+		if (index >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, index + chunkColumns));
+		}
+
+		long[] chunk = chunks[index];
+		if (chunk == null) {
+			chunk = new long[CHUNK_SIZE];
+			chunks[index] = chunk;
+		}
+		chunk[y & CHUNK_MASK] |= 1L << (x & CHUNK_MASK);
+	}
+
+	/**
+	 * Marks the row y as complete, compacting its band of chunks if this was
+	 * the last row in the band
+	 */
+	public void finishRow(int y) {
+		if ((y & CHUNK_MASK) == CHUNK_MASK) {
+			compactBand(y >> CHUNK_SHIFT, CHUNK_SIZE);
+		}
+	}
+
+	/**
+	 * Finishes building the bitmap, compacting the final band of chunks
+	 *
+	 * @param height
+	 *            number of rows in the bitmap
+	 */
+	public void finish(int height) {
+		this.height = height;
+		if ((height & CHUNK_MASK) != 0) {
+			compactBand(height >> CHUNK_SHIFT, height & CHUNK_MASK);
+		}
+
+		int chunkRows = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+		chunks = Arrays.copyOf(chunks, chunkRows * chunkColumns);
+	}
+
+	@Override
+	public boolean get(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+
+		int index = chunkIndex(x, y);
+		long[] chunk = chunks[index];
+		if (chunk == null) {
+			return fullChunks.get(index);
+		}
+		return (chunk[y & CHUNK_MASK] & (1L << (x & CHUNK_MASK))) != 0;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the type of the chunk containing the tile (x,y)
+	 */
+	public ChunkType getChunkType(int x, int y) {
+		int index = chunkIndex(x, y);
+		if (chunks[index] != null) {
+			return ChunkType.MIXED;
+		}
+		return fullChunks.get(index) ? ChunkType.FULL : ChunkType.EMPTY;
+	}
+
+	/**
+	 * Returns the number of chunks of the given type
+	 */
+	public int getChunkCount(ChunkType type) {
+		int mixed = 0;
+		for (long[] chunk : chunks) {
+			if (chunk != null) {
+				mixed++;
+			}
+		}
+
+		switch (type) {
+		case MIXED:
+			return mixed;
+		case FULL:
+			return fullChunks.cardinality();
+		default:
+			return chunks.length - mixed - fullChunks.cardinality();
+		}
+	}
+
+	/**
+	 * Returns the memory used by chunks of the given type, in bytes
+	 */
+	public long getMemoryUsage(ChunkType type) {
+		switch (type) {
+		case MIXED:
+			return (long) getChunkCount(ChunkType.MIXED) * MIXED_CHUNK_BYTES;
+		default:
+			// Uniform chunks only need a (null) reference, plus a bit in
+			// (fullChunks) which is counted by estimateSize()
+			return getChunkCount(type) * 4L;
+		}
+	}
+
+	/**
+	 * Returns a description of the number of chunks of each type and the
+	 * memory they use, eg. for logging
+	 */
+	public String getMemoryReport() {
+		StringBuilder report = new StringBuilder();
+		report.append(width).append('x').append(height).append(" tiles in ").append(chunks.length)
+				.append(" chunks of ").append(CHUNK_SIZE).append('x').append(CHUNK_SIZE).append(':');
+		for (ChunkType type : ChunkType.values()) {
+			report.append(String.format("%n  %-6s %9d chunks %,14d bytes", type, getChunkCount(type),
+					getMemoryUsage(type)));
+		}
+		report.append(String.format("%n  total  %,31d bytes", estimateSize()));
+		return report.toString();
+	}
+
+	@Override
+	public long estimateSize() {
+		long size = 64 + fullChunks.size() / 8;
+		for (ChunkType type : ChunkType.values()) {
+			size += getMemoryUsage(type);
+		}
+		return size;
+	}
+
+	@Override
+	public BitSet toBitSet() {
+		BitSet bits = new BitSet(width * height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (get(x, y)) {
+					bits.set(x + width * y);
+				}
+			}
+		}
+		return bits;
+	}
+
+	private int chunkIndex(int x, int y) {
+		return (y >> CHUNK_SHIFT) * chunkColumns + (x >> CHUNK_SHIFT);
+	}
+
+	/**
+	 * Replaces the uniform chunks in a band with flags
+	 *
+	 * @param band
+	 *            index of the band (row of chunks)
+	 * @param rows
+	 *            number of rows of tiles in the band
+	 */
+	private void compactBand(int band, int rows) {
+		for (int column = 0; column < chunkColumns; column++) {
+			int index = band * chunkColumns + column;
+			if (index >= chunks.length || chunks[index] == null) {
+				continue;
+			}
+
+			long[] chunk = chunks[index];
+			int columns = Math.min(CHUNK_SIZE, width - (column << CHUNK_SHIFT));
+			long rowMask = columns == CHUNK_SIZE ? -1L : (1L << columns) - 1;
+
+			boolean empty = true;
+			boolean full = true;
+			for (int row = 0; row < rows; row++) {
+				empty &= chunk[row] == 0;
+				full &= chunk[row] == rowMask;
+			}
+
+			if (empty || full) {
+				chunks[index] = null;
+				fullChunks.set(index, full);
+			}
+		}
+	}
+}
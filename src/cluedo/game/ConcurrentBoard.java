@@ -0,0 +1,347 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import cluedo.game.objects.Room;
+import cluedo.loader.Loader;
+
+/**
+ * A board which can be read from other threads (eg. spectators or renderers)
+ * while one game thread moves players. Moves, undos and changes to the players
+ * take a write lock. Readers use optimistic StampedLock reads, so they never
+ * block the game thread, and only fall back to a read lock if a move happened
+ * while they were reading.
+ *
+ * Readers never look at Board's own state, which is resized as players are
+ * added. Instead the board keeps a copy of each player's tile and room, and
+ * the occupied tiles, in arrays which are only ever replaced (not resized)
+ * under the write lock. The layout (corridors, doors and rooms) never changes,
+ * so isCorridor() and the other layout queries need no locking. The hash and
+ * the players' own fields (eg. remaining moves) are not covered, and should
+ * only be read on the game thread.
+ */
+public class ConcurrentBoard extends Board {
+	private final StampedLock lock = new StampedLock();
+
+	// Copies of each player's tile index and room index (-1 for none), by
+	// ordinal, and one bit per occupied tile
+	private int[] locations = new int[0];
+	private int[] rooms = new int[0];
+	private final long[] occupied;
+
+	// The thread holding the write lock, so room changes made during a move
+	// don't try to take it again
+	private Thread writer;
+
+	private final PropertyChangeListener roomListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent e) {
+			if (!e.getPropertyName().equals("room")) {
+				return;
+			}
+			Player player = (Player) e.getSource();
+			Room room = (Room) e.getNewValue();
+			if (writer == Thread.currentThread()) {
+				copyRoom(player, room);
+				return;
+			}
+
+			long stamp = beginWrite();
+			try {
+				copyRoom(player, room);
+			}
+			finally {
+				endWrite(stamp);
+			}
+		}
+	};
+
+	/**
+	 * Construct a new board
+	 *
+	 * @param loader
+	 *            will be used to get corridor positions, suspect start
+	 *            locations, door locations, etc.
+	 */
+	public ConcurrentBoard(Loader loader) {
+		this(new Scenario(loader));
+	}
+
+	/**
+	 * Construct a new board with the layout of a (possibly shared) scenario
+	 *
+	 * @param scenario
+	 *            scenario containing corridor positions, door locations, etc.
+	 */
+	public ConcurrentBoard(Scenario scenario) {
+		super(scenario);
+		occupied = new long[(int) (((long) getWidth() * getHeight() + 63) / 64)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addPlayer(Player player) {
+		long stamp = beginWrite();
+		try {
+			Point from = super.getPlayerLocation(player);
+			super.addPlayer(player);
+			player.removePropertyChangeListener(roomListener);
+			player.addPropertyChangeListener(roomListener);
+			copyLocation(player, from);
+		}
+		finally {
+			endWrite(stamp);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void clearPlayers() {
+		long stamp = beginWrite();
+		try {
+			for (int ordinal = 0; ordinal < locations.length; ordinal++) {
+				Player player = getPlayer(ordinal);
+				if (player != null) {
+					player.removePropertyChangeListener(roomListener);
+				}
+			}
+			super.clearPlayers();
+			locations = new int[0];
+			rooms = new int[0];
+			Arrays.fill(occupied, 0);
+		}
+		finally {
+			endWrite(stamp);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void movePlayer(Player player, PackedPath steps, Door door) throws UnableToMoveException {
+		long stamp = beginWrite();
+		try {
+			Point from = super.getPlayerLocation(player);
+			super.movePlayer(player, steps, door);
+			copyLocation(player, from);
+		}
+		finally {
+			endWrite(stamp);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unmakeMove(Player player, long token) {
+		long stamp = beginWrite();
+		try {
+			Point from = super.getPlayerLocation(player);
+			super.unmakeMove(player, token);
+			copyLocation(player, from);
+		}
+		finally {
+			endWrite(stamp);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Point getPlayerLocation(Player player) {
+		long stamp = lock.tryOptimisticRead();
+		int location = readLocation(player);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				location = readLocation(player);
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return location < 0 ? null : new Point(location % getWidth(), location / getWidth());
+	}
+
+	/**
+	 * Returns the room a player is in, as last recorded by this board, or null
+	 * if they are in a corridor or not on the board. Unlike Player.getRoom(),
+	 * this is safe to call from any thread.
+	 */
+	public Room getPlayerRoom(Player player) {
+		long stamp = lock.tryOptimisticRead();
+		int room = readRoom(player);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				room = readRoom(player);
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return room < 0 ? null : getScenario().getRooms().get(room);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isOccupied(int x, int y) {
+		if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+			return false;
+		}
+		long tile = x + (long) getWidth() * y;
+		long stamp = lock.tryOptimisticRead();
+		long word = occupied[(int) (tile >>> 6)];
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				word = occupied[(int) (tile >>> 6)];
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return (word & (1L << tile)) != 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isBlocked(Player player, int x, int y) {
+		if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight() || isDoor(x, y)) {
+			return false;
+		}
+		long tile = x + (long) getWidth() * y;
+		long stamp = lock.tryOptimisticRead();
+		long word = occupied[(int) (tile >>> 6)];
+		int location = readLocation(player);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				word = occupied[(int) (tile >>> 6)];
+				location = readLocation(player);
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return (word & (1L << tile)) != 0 && location != tile;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canReach(Player player, Point goal) {
+		int location;
+		int room;
+		long stamp = lock.tryOptimisticRead();
+		location = readLocation(player);
+		room = readRoom(player);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				location = readLocation(player);
+				room = readRoom(player);
+			}
+			finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		ConnectedComponents components = getScenario().getComponents();
+		int from;
+		if (room >= 0) {
+			from = components.getComponent(getScenario().getRooms().get(room));
+		}
+		else {
+			from = location < 0 ? -1 : components.getComponent(location % getWidth(), location / getWidth());
+		}
+		return from >= 0 && from == components.getComponent(goal.x, goal.y);
+	}
+
+	private long beginWrite() {
+		long stamp = lock.writeLock();
+		writer = Thread.currentThread();
+		return stamp;
+	}
+
+	private void endWrite(long stamp) {
+		writer = null;
+		lock.unlockWrite(stamp);
+	}
+
+	/**
+	 * Reads a player's copied tile index. Safe to call without a lock, as the
+	 * arrays are never resized in place; the result is checked afterwards.
+	 */
+	private int readLocation(Player player) {
+		int ordinal = player.getOrdinal();
+		int[] locations = this.locations;
+		return ordinal < 0 || ordinal >= locations.length ? -1 : locations[ordinal];
+	}
+
+	private int readRoom(Player player) {
+		int ordinal = player.getOrdinal();
+		int[] rooms = this.rooms;
+		return ordinal < 0 || ordinal >= rooms.length ? -1 : rooms[ordinal];
+	}
+
+	/**
+	 * Copies a player's new location and room after a change, and updates the
+	 * occupied bits of the tile they left and the tile they moved to. Must be
+	 * called with the write lock held.
+	 */
+	private void copyLocation(Player player, Point from) {
+		int ordinal = player.getOrdinal();
+		if (ordinal >= locations.length) {
+			int[] grownLocations = Arrays.copyOf(locations, ordinal + 1);
+			int[] grownRooms = Arrays.copyOf(rooms, ordinal + 1);
+			Arrays.fill(grownLocations, locations.length, grownLocations.length, -1);
+			Arrays.fill(grownRooms, rooms.length, grownRooms.length, -1);
+			locations = grownLocations;
+			rooms = grownRooms;
+		}
+
+		Point to = super.getPlayerLocation(player);
+		locations[ordinal] = to == null ? -1 : to.x + getWidth() * to.y;
+		copyRoom(player, player.getRoom());
+		if (from != null) {
+			copyOccupied(from.x, from.y);
+		}
+		if (to != null) {
+			copyOccupied(to.x, to.y);
+		}
+	}
+
+	private void copyRoom(Player player, Room room) {
+		int ordinal = player.getOrdinal();
+		if (ordinal >= 0 && ordinal < rooms.length) {
+			rooms[ordinal] = room == null ? -1 : getScenario().getRoomIndex(room);
+		}
+	}
+
+	private void copyOccupied(int x, int y) {
+		long tile = x + (long) getWidth() * y;
+		if (super.isOccupied(x, y)) {
+			occupied[(int) (tile >>> 6)] |= 1L << tile;
+		}
+		else {
+			occupied[(int) (tile >>> 6)] &= ~(1L << tile);
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
+
+/**
+ * Labels the parts of a board which are connected by walking, so that
+ * unreachable goals can be rejected without searching for a path. Corridor
+ * tiles are connected to the corridor tiles beside them, and each room
+ * (including its doors) is connected to the tiles its doors open onto. Secret
+ * passages are not counted, as they can't be used part way through a move.
+ *
+ * Corridors are stored as horizontal runs rather than one label per tile, so
+ * the labels take little memory even on huge boards. Runs are joined using
+ * union-find when the scenario is constructed. Doors take their room's label,
+ * found through the scenario's TileGrid.
+ */
+public final class ConnectedComponents {
+	private final Scenario scenario;
+
+	// The runs in row y are at indices rowStarts[y] to rowStarts[y + 1] - 1
+	private final int[] rowStarts;
+	private final int[] runStarts;
+	private final int[] runEnds;
+	private final int[] runLabels;
+	private final int[] roomLabels;
+
+	private final int componentCount;
+	private final List<String> isolatedRegions;
+
+	/**
+	 * Labels the components of a scenario. Called by the Scenario constructor
+	 * once its corridors, rooms and doors have been set.
+	 */
+	ConnectedComponents(Scenario scenario) {
+		this.scenario = scenario;
+
+		int width = scenario.getWidth();
+		int height = scenario.getHeight();
+		rowStarts = new int[height + 1];
+		int[] starts = new int[64];
+		int[] ends = new int[64];
+		int runCount = 0;
+		for (int y = 0; y < height; y++) {
+			rowStarts[y] = runCount;
+			for (int x = 0; x < width; x++) {
+				if (!scenario.isCorridor(x, y)) {
+					continue;
+				}
+
+				if (runCount == starts.length) {
+					starts = Arrays.copyOf(starts, runCount * 2);
+					ends = Arrays.copyOf(ends, runCount * 2);
+				}
+				starts[runCount] = x;
+				while (x < width && scenario.isCorridor(x, y)) {
+					x++;
+				}
+				ends[runCount++] = x;
+			}
+		}
+		rowStarts[height] = runCount;
+		runStarts = Arrays.copyOf(starts, runCount);
+		runEnds = Arrays.copyOf(ends, runCount);
+
+		// Nodes are the runs, followed by the rooms
+		List<Room> rooms = scenario.getRooms();
+		int[] parents = new int[runCount + rooms.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+
+		// Join overlapping runs in adjacent rows
+		for (int y = 1; y < height; y++) {
+			int above = rowStarts[y - 1];
+			int below = rowStarts[y];
+			while (above < rowStarts[y] && below < rowStarts[y + 1]) {
+				if (runStarts[above] < runEnds[below] && runStarts[below] < runEnds[above]) {
+					union(parents, above, below);
+				}
+				if (runEnds[above] < runEnds[below]) {
+					above++;
+				}
+				else {
+					below++;
+				}
+			}
+		}
+
+		// Join rooms to the tiles their doors open onto
+		for (int i = 0; i < rooms.size(); i++) {
+			for (Door door : rooms.get(i).getDoors()) {
+				Point beside = door.getPointBeside();
+				int run = findRun(beside.x, beside.y);
+				if (run >= 0) {
+					union(parents, runCount + i, run);
+				}
+			}
+		}
+
+		// Number the components densely, in order of their first node
+		int[] labels = new int[parents.length];
+		Arrays.fill(labels, -1);
+		int count = 0;
+		for (int i = 0; i < parents.length; i++) {
+			int root = find(parents, i);
+			if (labels[root] < 0) {
+				labels[root] = count++;
+			}
+			labels[i] = labels[root];
+		}
+		componentCount = count;
+		runLabels = Arrays.copyOf(labels, runCount);
+		roomLabels = Arrays.copyOfRange(labels, runCount, labels.length);
+
+		isolatedRegions = Collections.unmodifiableList(findIsolatedRegions());
+	}
+
+	/**
+	 * Returns the number of components on the board
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns the component containing the tile (x,y), or -1 if the tile is
+	 * not a corridor or door
+	 */
+	public int getComponent(int x, int y) {
+		TileGrid tiles = scenario.getTiles();
+		switch (TileGrid.kind(tiles.getTile(x, y))) {
+		case TileGrid.CORRIDOR:
+			return runLabels[findRun(x, y)];
+		case TileGrid.DOOR:
+			return roomLabels[tiles.getRoomIndex(x, y)];
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the component containing the room, or -1 if the room is not part
+	 * of the scenario
+	 */
+	public int getComponent(Room room) {
+		int index = scenario.getRoomIndex(room);
+		return index < 0 ? -1 : roomLabels[index];
+	}
+
+	/**
+	 * Returns true if it is possible to walk between the two tiles (each
+	 * either a corridor or door), ignoring other players and the number of
+	 * moves needed
+	 */
+	public boolean isConnected(Point from, Point to) {
+		int component = getComponent(from.x, from.y);
+		return component >= 0 && component == getComponent(to.x, to.y);
+	}
+
+	/**
+	 * Returns a description of each part of the board which can't be reached
+	 * from any start tile, even using secret passages. A well-formed scenario
+	 * has none.
+	 */
+	public List<String> getIsolatedRegions() {
+		return isolatedRegions;
+	}
+
+	/**
+	 * Finds the components which can't be reached from a start tile, and
+	 * describes them
+	 */
+	private List<String> findIsolatedRegions() {
+		boolean[] reachable = new boolean[componentCount];
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Point start = suspect.getStartLocation();
+			if (start != null && getComponent(start.x, start.y) >= 0) {
+				reachable[getComponent(start.x, start.y)] = true;
+			}
+		}
+
+		// Passages can be taken at the start of a turn, so follow them until
+		// nothing changes
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Room room : scenario.getRooms()) {
+				Room exit = room.getPassageExit();
+				if (exit != null && reachable[getComponent(room)] && !reachable[getComponent(exit)]) {
+					reachable[getComponent(exit)] = true;
+					changed = true;
+				}
+			}
+		}
+
+		// Describe each unreachable component by its first tile, its size and
+		// its rooms
+		Point[] firstTiles = new Point[componentCount];
+		int[] tileCounts = new int[componentCount];
+		for (int y = 0; y + 1 < rowStarts.length; y++) {
+			for (int run = rowStarts[y]; run < rowStarts[y + 1]; run++) {
+				int component = runLabels[run];
+				if (firstTiles[component] == null) {
+					firstTiles[component] = new Point(runStarts[run], y);
+				}
+				tileCounts[component] += runEnds[run] - runStarts[run];
+			}
+		}
+
+		List<List<String>> roomNames = new ArrayList<List<String>>();
+		for (int i = 0; i < componentCount; i++) {
+			roomNames.add(new ArrayList<String>());
+		}
+		for (Room room : scenario.getRooms()) {
+			roomNames.get(getComponent(room)).add(room.getName());
+		}
+
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < componentCount; i++) {
+			if (reachable[i]) {
+				continue;
+			}
+
+			StringBuilder description = new StringBuilder();
+			if (tileCounts[i] > 0) {
+				Point first = firstTiles[i];
+				description.append(tileCounts[i]).append(" corridor tiles from (").append(first.x).append(',')
+						.append(first.y).append(')');
+				if (!roomNames.get(i).isEmpty()) {
+					description.append(" and ");
+				}
+			}
+			if (!roomNames.get(i).isEmpty()) {
+				description.append(roomNames.get(i).size() == 1 ? "room " : "rooms ");
+				for (int j = 0; j < roomNames.get(i).size(); j++) {
+					description.append(j == 0 ? "" : ", ").append(roomNames.get(i).get(j));
+				}
+			}
+			result.add(description.append(" can't be reached from any start tile").toString());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the run containing the tile (x,y), or -1 if the
+	 * tile is not a corridor. Only the runs in row y are searched, so this
+	 * doesn't slow down as the board gets taller.
+	 */
+	private int findRun(int x, int y) {
+		if (y < 0 || y + 1 >= rowStarts.length) {
+			return -1;
+		}
+
+		int low = rowStarts[y];
+		int high = rowStarts[y + 1] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (runStarts[middle] <= x) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return high >= rowStarts[y] && x < runEnds[high] ? high : -1;
+	}
+
+	private static int find(int[] parents, int node) {
+		while (parents[node] != node) {
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if (rootA != rootB) {
+			parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+		}
+	}
+}
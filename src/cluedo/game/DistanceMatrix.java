@@ -0,0 +1,404 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
+
+/**
+ * Walking distances between every pair of important points on a board: each
+ * door, the tile just outside each door, and each suspect's start tile.
+ * Distances follow the movement rules, so walls are walked around and doors
+ * can only be entered from the side they face. A distance from a door counts
+ * the step out of the door, and a distance to a door counts the step into it,
+ * so the distance between two doors is the cost of walking between their
+ * rooms.
+ *
+ * Distances are stored in a short per pair, and are computed with one
+ * breadth-first search per point, spread over one thread per processor. The
+ * matrix can be saved next to the scenario file, so it is only computed once
+ * per board layout.
+ */
+public final class DistanceMatrix {
+	/** Magic number at the start of every saved matrix ("DIST") */
+	public static final int MAGIC = 0x44495354;
+	/** Current version of the file layout */
+	public static final int VERSION = 1;
+
+	// Offsets to the tiles left, right, above and below a tile
+	private static final int[] NEIGHBOUR_X = { -1, 1, 0, 0 };
+	private static final int[] NEIGHBOUR_Y = { 0, 0, -1, 1 };
+
+	private final Scenario scenario;
+	private final long fingerprint;
+
+	// Points are the doors (in TileGrid.getDoors() order), then the tiles
+	// beside them, then the start tiles (in GameData.getSuspects() order).
+	// Each point's tile index is x + width * y, or -1 if it is off the board.
+	private final int doorCount;
+	private final int[] pointTiles;
+	private final Map<Suspect, Integer> startIndices;
+
+	// Distance from point i to point j is at i * size + j, or -1 if it can't
+	// be walked
+	private final short[] distances;
+
+	private DistanceMatrix(Scenario scenario) {
+		this.scenario = scenario;
+		this.fingerprint = fingerprint(scenario);
+
+		List<Door> doors = scenario.getTiles().getDoors();
+		List<Suspect> suspects = scenario.getData().getSuspects();
+		int width = scenario.getWidth();
+		doorCount = doors.size();
+		pointTiles = new int[doorCount * 2 + suspects.size()];
+		for (int i = 0; i < doorCount; i++) {
+			Point location = doors.get(i).getLocation();
+			pointTiles[i] = contains(scenario, location.x, location.y) ? location.x + width * location.y : -1;
+			pointTiles[doorCount + i] = scenario.getTiles().getBesideIndex(i);
+		}
+		startIndices = new HashMap<Suspect, Integer>();
+		for (int i = 0; i < suspects.size(); i++) {
+			Point start = suspects.get(i).getStartLocation();
+			int index = doorCount * 2 + i;
+			pointTiles[index] = start != null && contains(scenario, start.x, start.y) ? start.x + width * start.y : -1;
+			startIndices.put(suspects.get(i), index);
+		}
+
+		distances = new short[pointTiles.length * pointTiles.length];
+	}
+
+	/**
+	 * Computes the distances for a scenario
+	 *
+	 * @param scenario
+	 *            scenario to compute distances for
+	 */
+	public static DistanceMatrix compute(Scenario scenario) {
+		final DistanceMatrix matrix = new DistanceMatrix(scenario);
+		final AtomicInteger next = new AtomicInteger();
+		int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), matrix.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						// Each thread reuses its own search arrays for every
+						// point it takes
+						int tileCount = matrix.scenario.getWidth() * matrix.scenario.getHeight();
+						int[] tileDistances = new int[tileCount];
+						int[] queue = new int[tileCount];
+						int source;
+						while ((source = next.getAndIncrement()) < matrix.size()) {
+							matrix.search(source, tileDistances, queue);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while computing distances", e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return matrix;
+	}
+
+	/**
+	 * Reads a matrix saved by write(). Returns null if the file was saved for
+	 * a different board layout (eg. the scenario has since been edited).
+	 *
+	 * @param file
+	 *            file to read
+	 * @param scenario
+	 *            scenario the matrix is for
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static DistanceMatrix read(File file, Scenario scenario) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			DistanceMatrix matrix = new DistanceMatrix(scenario);
+			if (in.readLong() != matrix.fingerprint || in.readInt() != matrix.size()) {
+				return null;
+			}
+			for (int i = 0; i < matrix.distances.length; i++) {
+				matrix.distances[i] = in.readShort();
+			}
+			return matrix;
+		}
+		catch (EOFException e) {
+			// Partly written
+			return null;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the matrix to a file. The file is written under a temporary name
+	 * first, so a reader never sees it half written.
+	 *
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(size());
+			for (short distance : distances) {
+				out.writeShort(distance);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		if (!temporary.renameTo(file)) {
+			file.delete();
+			if (!temporary.renameTo(file)) {
+				temporary.delete();
+				throw new IOException("Couldn't replace " + file);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points in the matrix
+	 */
+	public int size() {
+		return pointTiles.length;
+	}
+
+	/**
+	 * Returns the walking distance from one point to another, or -1 if there
+	 * is no way to walk between them. Distances longer than Short.MAX_VALUE
+	 * are stored as Short.MAX_VALUE.
+	 *
+	 * @param from
+	 *            index of the point to start from
+	 * @param to
+	 *            index of the point to end at
+	 */
+	public int getDistance(int from, int to) {
+		return distances[from * size() + to];
+	}
+
+	/**
+	 * Returns the index of a door's point, or -1 if the door is not on this
+	 * board
+	 */
+	public int getDoorIndex(Door door) {
+		return indexOfDoor(door);
+	}
+
+	/**
+	 * Returns the index of the point just outside a door, or -1 if the door is
+	 * not on this board
+	 */
+	public int getBesideIndex(Door door) {
+		int index = indexOfDoor(door);
+		return index < 0 ? -1 : doorCount + index;
+	}
+
+	/**
+	 * Returns the index of a suspect's start tile, or -1 if the suspect is not
+	 * part of this scenario
+	 */
+	public int getStartIndex(Suspect suspect) {
+		Integer index = startIndices.get(suspect);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the fewest steps needed to walk from one room into another, 0 if
+	 * they are the same room, or -1 if there is no way to walk between them
+	 */
+	public int getDistance(Room from, Room to) {
+		if (from == to) {
+			return 0;
+		}
+
+		int best = -1;
+		for (Door exit : from.getDoors()) {
+			int exitIndex = indexOfDoor(exit);
+			for (Door entrance : to.getDoors()) {
+				int entranceIndex = indexOfDoor(entrance);
+				if (exitIndex < 0 || entranceIndex < 0) {
+					continue;
+				}
+				int distance = getDistance(exitIndex, entranceIndex);
+				if (distance >= 0 && (best < 0 || distance < best)) {
+					best = distance;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the door to leave a room by to reach another room in the fewest
+	 * steps, or null if there is no way to walk between them
+	 */
+	public Door getExit(Room from, Room to) {
+		Door bestDoor = null;
+		int best = -1;
+		for (Door exit : from.getDoors()) {
+			int exitIndex = indexOfDoor(exit);
+			if (exitIndex < 0) {
+				continue;
+			}
+			for (Door entrance : to.getDoors()) {
+				int entranceIndex = indexOfDoor(entrance);
+				int distance = entranceIndex < 0 ? -1 : getDistance(exitIndex, entranceIndex);
+				if (distance >= 0 && (best < 0 || distance < best)) {
+					best = distance;
+					bestDoor = exit;
+				}
+			}
+		}
+		return bestDoor;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by this matrix, in bytes
+	 */
+	public long estimateSize() {
+		return 96 + distances.length * 2L + pointTiles.length * 4L + startIndices.size() * 48L;
+	}
+
+	/**
+	 * Fills in the row for one point with a breadth-first search over the
+	 * whole board
+	 *
+	 * @param source
+	 *            index of the point to search from
+	 * @param tileDistances
+	 *            work array with one element per tile
+	 * @param queue
+	 *            work array with one element per tile
+	 */
+	private void search(int source, int[] tileDistances, int[] queue) {
+		TileGrid grid = scenario.getTiles();
+		int width = scenario.getWidth();
+		Arrays.fill(tileDistances, -1);
+		int head = 0;
+		int tail = 0;
+
+		// Leaving by a door starts from the tile beside it, one step away
+		int start = source < doorCount ? pointTiles[doorCount + source] : pointTiles[source];
+		if (start >= 0 && TileGrid.kind(grid.tileAt(start)) == TileGrid.CORRIDOR) {
+			tileDistances[start] = source < doorCount ? 1 : 0;
+			queue[tail++] = start;
+		}
+
+		while (head < tail) {
+			int current = queue[head++];
+			int x = current % width;
+			int y = current / width;
+			if (TileGrid.kind(grid.tileAt(current)) == TileGrid.DOOR) {
+				continue;
+			}
+
+			for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+				int nextX = x + NEIGHBOUR_X[i];
+				int nextY = y + NEIGHBOUR_Y[i];
+				if (!grid.isCorridor(nextX, nextY) && !grid.canEnterDoor(nextX, nextY, x, y)) {
+					continue;
+				}
+				int next = nextX + width * nextY;
+				if (tileDistances[next] < 0) {
+					tileDistances[next] = tileDistances[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		int size = size();
+		for (int i = 0; i < size; i++) {
+			int distance = i == source ? 0 : pointTiles[i] < 0 ? -1 : tileDistances[pointTiles[i]];
+			distances[source * size + i] = (short) Math.min(distance, Short.MAX_VALUE);
+		}
+	}
+
+	private int indexOfDoor(Door door) {
+		Point location = door.getLocation();
+		if (!contains(scenario, location.x, location.y)) {
+			return -1;
+		}
+		int tile = scenario.getTiles().getTile(location.x, location.y);
+		if (TileGrid.kind(tile) != TileGrid.DOOR || scenario.getTiles().getDoors().get(TileGrid.index(tile)) != door) {
+			return -1;
+		}
+		return TileGrid.index(tile);
+	}
+
+	private static boolean contains(Scenario scenario, int x, int y) {
+		return x >= 0 && y >= 0 && x < scenario.getWidth() && y < scenario.getHeight();
+	}
+
+	/**
+	 * Returns a hash of everything distances depend on: the corridors, the
+	 * doors and the start tiles
+	 */
+	private static long fingerprint(Scenario scenario) {
+		long hash = 1125899906842597L;
+		hash = hash * 31 + scenario.getWidth();
+		hash = hash * 31 + scenario.getHeight();
+		for (long word : scenario.getCorridors().toBitSet().toLongArray()) {
+			hash = hash * 31 + word;
+		}
+		for (Door door : scenario.getTiles().getDoors()) {
+			hash = hash * 31 + door.getLocation().x;
+			hash = hash * 31 + door.getLocation().y;
+			hash = hash * 31 + (door.isVertical() ? 1 : 0);
+		}
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Point start = suspect.getStartLocation();
+			hash = hash * 31 + (start == null ? -1 : start.x);
+			hash = hash * 31 + (start == null ? -1 : start.y);
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,59 @@
+package cluedo.game;
+
+import java.util.BitSet;
+
+/**
+ * A tile bitmap stored as a single bit set, where the bit at (x + width * y)
+ * is the bit for the tile (x,y). This is the fastest layout, but needs memory
+ * for every tile on the board.
+ */
+public final class FlatBitmap implements TileBitmap {
+	private final int width;
+	private final int height;
+	private final BitSet bits;
+
+	/**
+	 * Construct a new bitmap. The bit set is shared with the bitmap and must
+	 * not be modified afterwards.
+	 *
+	 * @param width
+	 *            width of the bitmap (in tiles)
+	 * @param height
+	 *            height of the bitmap (in tiles)
+	 * @param bits
+	 *            bit set in the format described above
+	 */
+	public FlatBitmap(int width, int height, BitSet bits) {
+		this.width = width;
+		this.height = height;
+		this.bits = bits;
+	}
+
+	@Override
+	public boolean get(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		return bits.get(x + width * y);
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public long estimateSize() {
+		return 32 + bits.size() / 8;
+	}
+
+	@Override
+	public BitSet toBitSet() {
+		return (BitSet) bits.clone();
+	}
+}
@@ -0,0 +1,442 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import cluedo.game.objects.Room;
+
+/**
+ * Finds every tile within some number of steps of a starting point by
+ * expanding a whole row of tiles at once, rather than one tile at a time. The
+ * board is held as 64 tiles per long, with each row starting at a new long.
+ * Each step shifts the frontier's words left and right (with the bit carried
+ * over from the neighbouring word) and takes the words of the rows above and
+ * below, then masks the result with the tiles which can be entered that way.
+ * So a step costs a few operations per 64 tiles, however many tiles the
+ * frontier holds.
+ *
+ * Doors are the end of a move: a vertical door (entered from the left or
+ * right) is only in the mask for horizontal steps, a horizontal door only in
+ * the mask for vertical steps, and the frontier never expands from a door.
+ * Other players are not taken into account, as they don't block paths.
+ *
+ * Each step only looks at the words holding the frontier and the words next
+ * to them, and a search only allocates the part of the board within maxSteps
+ * of its start, so reach sets for a roll of the dice cost the same on any
+ * size of board. The masks take two bits per tile, and are built when the
+ * scenario's fill is first used.
+ */
+public final class FloodFill {
+	private final Scenario scenario;
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+
+	// The tiles which can be entered by a step left or right (corridors and
+	// vertical doors), and by a step up or down (corridors and horizontal
+	// doors). Tiles in both are corridors.
+	private final long[] horizontalEntry;
+	private final long[] verticalEntry;
+
+	/**
+	 * The tiles found by one search, with their distances if they were asked
+	 * for. Tiles are held for a window of the board around the start.
+	 */
+	public static final class Result {
+		private final Scenario scenario;
+		private final int start;
+
+		// The window: its first row and first word, and its size in rows and
+		// words. The arrays have an empty word around every edge of the
+		// window, so a step never needs to check it is inside the window.
+		private final int top;
+		private final int left;
+		private final int rows;
+		private final int columns;
+		private final int stride;
+
+		private final long[] reached;
+		// Distance of each tile in the window (64 per word), or null
+		private final int[] distances;
+		private int size;
+
+		private Result(Scenario scenario, int start, int top, int left, int rows, int columns, boolean withDistances) {
+			this.scenario = scenario;
+			this.start = start;
+			this.top = top;
+			this.left = left;
+			this.rows = rows;
+			this.columns = columns;
+			this.stride = columns + 2;
+			this.reached = new long[(rows + 2) * stride];
+			if (withDistances) {
+				distances = new int[reached.length * 64];
+				Arrays.fill(distances, -1);
+			}
+			else {
+				distances = null;
+			}
+		}
+
+		/**
+		 * Returns true if the tile (x,y) was reached
+		 */
+		public boolean contains(int x, int y) {
+			int word = wordOf(x, y);
+			return word >= 0 && (reached[word] & (1L << x)) != 0;
+		}
+
+		/**
+		 * Returns the number of steps to the tile (x,y), or -1 if it wasn't
+		 * reached
+		 *
+		 * @throws IllegalStateException
+		 *             if the search was not asked for distances
+		 */
+		public int getDistance(int x, int y) {
+			if (distances == null) {
+				throw new IllegalStateException("Distances were not recorded by this search");
+			}
+			int word = wordOf(x, y);
+			return word < 0 ? -1 : distances[word * 64 + (x & 63)];
+		}
+
+		/**
+		 * Returns true if distances were recorded by this search
+		 */
+		public boolean hasDistances() {
+			return distances != null;
+		}
+
+		/**
+		 * Returns the number of tiles reached, including the start
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Returns the tile indices (x + width * y) of every tile reached,
+		 * including the start, in increasing order
+		 */
+		public int[] getTileIndices() {
+			int[] indices = new int[size];
+			int n = 0;
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					long word = reached[(row + 1) * stride + column + 1];
+					while (word != 0) {
+						int x = (left + column) * 64 + Long.numberOfTrailingZeros(word);
+						indices[n++] = x + scenario.getWidth() * (top + row);
+						word &= word - 1;
+					}
+				}
+			}
+			return indices;
+		}
+
+		/**
+		 * Returns the tiles (including doors) which were reached, not
+		 * including the start, in row-major order
+		 */
+		public List<Point> getTiles() {
+			List<Point> points = new ArrayList<Point>(size);
+			int width = scenario.getWidth();
+			for (int index : getTileIndices()) {
+				if (index != start) {
+					points.add(new Point(index % width, index / width));
+				}
+			}
+			return points;
+		}
+
+		/**
+		 * Returns the rooms with a door which was reached
+		 */
+		public List<Room> getRooms() {
+			TileGrid grid = scenario.getTiles();
+			List<Room> rooms = new ArrayList<Room>();
+			boolean[] found = new boolean[scenario.getRooms().size()];
+			List<Door> doors = grid.getDoors();
+			for (int i = 0; i < doors.size(); i++) {
+				Point location = doors.get(i).getLocation();
+				if (contains(location.x, location.y)) {
+					int roomIndex = grid.getRoomIndex(location.x, location.y);
+					if (roomIndex >= 0) {
+						found[roomIndex] = true;
+					}
+				}
+			}
+			for (int i = 0; i < found.length; i++) {
+				if (found[i]) {
+					rooms.add(scenario.getRooms().get(i));
+				}
+			}
+			return rooms;
+		}
+
+		/**
+		 * Returns the index of the word holding the tile (x,y) in the window,
+		 * or -1 if it is outside the window
+		 */
+		private int wordOf(int x, int y) {
+			if (x < 0 || y < 0 || x >= scenario.getWidth() || y >= scenario.getHeight()) {
+				return -1;
+			}
+			int row = y - top;
+			int column = (x >>> 6) - left;
+			if (row < 0 || row >= rows || column < 0 || column >= columns) {
+				return -1;
+			}
+			return (row + 1) * stride + column + 1;
+		}
+	}
+
+	/**
+	 * Builds the masks for a scenario. Called by Scenario.getFloodFill().
+	 */
+	FloodFill(Scenario scenario) {
+		this.scenario = scenario;
+		this.width = scenario.getWidth();
+		this.height = scenario.getHeight();
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.horizontalEntry = new long[wordsPerRow * height];
+		this.verticalEntry = new long[wordsPerRow * height];
+
+		// Rooms and doors are drawn over corridors, so the grid decides
+		TileGrid grid = scenario.getTiles();
+		BitSet corridors = scenario.getCorridors().toBitSet();
+		for (int i = corridors.nextSetBit(0); i >= 0 && i < width * height; i = corridors.nextSetBit(i + 1)) {
+			if (TileGrid.kind(grid.tileAt(i)) == TileGrid.CORRIDOR) {
+				int word = wordOf(i % width, i / width);
+				horizontalEntry[word] |= 1L << (i % width);
+				verticalEntry[word] |= 1L << (i % width);
+			}
+		}
+
+		for (Door door : grid.getDoors()) {
+			Point location = door.getLocation();
+			int tile = grid.getTile(location.x, location.y);
+			if (TileGrid.kind(tile) != TileGrid.DOOR) {
+				continue;
+			}
+			if (TileGrid.isVerticalDoor(tile)) {
+				horizontalEntry[wordOf(location.x, location.y)] |= 1L << location.x;
+			}
+			else {
+				verticalEntry[wordOf(location.x, location.y)] |= 1L << location.x;
+			}
+		}
+	}
+
+	/**
+	 * Returns the tiles (including doors) within maxSteps steps of the
+	 * corridor tile (x,y), including the tile itself. If the tile is not a
+	 * corridor, nothing is reached.
+	 *
+	 * @param withDistances
+	 *            true to record the distance to each tile as well
+	 */
+	public Result reach(int x, int y, int maxSteps, boolean withDistances) {
+		int[] seeds = isCorridor(x, y) ? new int[] { x + width * y } : new int[0];
+		Result result = newResult(seeds.length == 0 ? -1 : seeds[0], seeds, maxSteps, withDistances);
+		fill(result, seeds, 0, maxSteps);
+		return result;
+	}
+
+	/**
+	 * Returns the tiles (including doors) within maxSteps steps of a room.
+	 * Stepping out of a door counts as the first step, so the search starts
+	 * from the corridor tiles outside every door at a distance of 1.
+	 *
+	 * @param withDistances
+	 *            true to record the distance to each tile as well
+	 */
+	public Result reach(Room room, int maxSteps, boolean withDistances) {
+		int roomIndex = scenario.getRoomIndex(room);
+		TileGrid grid = scenario.getTiles();
+		List<Door> doors = grid.getDoors();
+		int[] seeds = new int[doors.size()];
+		int count = 0;
+		for (int i = 0; i < doors.size() && roomIndex >= 0 && maxSteps >= 1; i++) {
+			int beside = grid.getBesideIndex(i);
+			if (doors.get(i).getRoom() == room && beside >= 0 && isCorridor(beside % width, beside / width)) {
+				seeds[count++] = beside;
+			}
+		}
+		seeds = Arrays.copyOf(seeds, count);
+
+		Result result = newResult(-1, seeds, maxSteps - 1, withDistances);
+		fill(result, seeds, 1, maxSteps);
+		return result;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by the masks, in bytes
+	 */
+	public long estimateSize() {
+		return 64 + (horizontalEntry.length + verticalEntry.length) * 8L;
+	}
+
+	private boolean isCorridor(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return false;
+		}
+		int word = wordOf(x, y);
+		return (horizontalEntry[word] & verticalEntry[word] & (1L << x)) != 0;
+	}
+
+	private int wordOf(int x, int y) {
+		return y * wordsPerRow + (x >>> 6);
+	}
+
+	/**
+	 * Creates a result whose window covers every tile within reach steps of
+	 * any of the seeds
+	 */
+	private Result newResult(int start, int[] seeds, int reach, boolean withDistances) {
+		if (seeds.length == 0) {
+			return new Result(scenario, start, 0, 0, 0, 0, withDistances);
+		}
+
+		long minX = Long.MAX_VALUE;
+		long minY = Long.MAX_VALUE;
+		long maxX = Long.MIN_VALUE;
+		long maxY = Long.MIN_VALUE;
+		for (int seed : seeds) {
+			minX = Math.min(minX, seed % width - (long) reach);
+			maxX = Math.max(maxX, seed % width + (long) reach);
+			minY = Math.min(minY, seed / width - (long) reach);
+			maxY = Math.max(maxY, seed / width + (long) reach);
+		}
+		int top = (int) Math.max(0, minY);
+		int bottom = (int) Math.min(height - 1, maxY);
+		int left = (int) (Math.max(0, minX) >>> 6);
+		int right = (int) (Math.min(width - 1, maxX) >>> 6);
+		return new Result(scenario, start, top, left, bottom - top + 1, right - left + 1, withDistances);
+	}
+
+	/**
+	 * Expands from the seeds (at distance startDistance) until nothing new is
+	 * reached or maxSteps is reached, filling in the result
+	 */
+	private void fill(Result result, int[] seeds, int startDistance, int maxSteps) {
+		int stride = result.stride;
+		long[] reached = result.reached;
+		int length = reached.length;
+		long[] frontier = new long[length];
+		long[] next = new long[length];
+
+		// The masks for the window, so the border words are empty
+		long[] horizontal = new long[length];
+		long[] vertical = new long[length];
+		for (int row = 0; row < result.rows; row++) {
+			int from = (result.top + row) * wordsPerRow + result.left;
+			System.arraycopy(horizontalEntry, from, horizontal, (row + 1) * stride + 1, result.columns);
+			System.arraycopy(verticalEntry, from, vertical, (row + 1) * stride + 1, result.columns);
+		}
+
+		// The words holding the frontier, the words to look at in this step
+		// (the frontier's words and those beside them) and the last step each
+		// word was listed for
+		int[] active = new int[length];
+		int activeCount = 0;
+		int[] nextActive = new int[length];
+		int[] candidates = new int[length];
+		int[] listed = new int[length];
+
+		for (int seed : seeds) {
+			int x = seed % width;
+			int word = result.wordOf(x, seed / width);
+			if ((reached[word] & (1L << x)) != 0) {
+				continue;
+			}
+			if (frontier[word] == 0) {
+				active[activeCount++] = word;
+			}
+			reached[word] |= 1L << x;
+			frontier[word] |= 1L << x;
+			result.size++;
+			if (result.distances != null) {
+				result.distances[word * 64 + (x & 63)] = startDistance;
+			}
+		}
+
+		for (int distance = startDistance + 1; distance <= maxSteps && activeCount > 0; distance++) {
+			// A step can only reach the frontier's own words and the words
+			// beside, above and below them
+			int candidateCount = 0;
+			int stamp = distance - startDistance;
+			for (int a = 0; a < activeCount; a++) {
+				int word = active[a];
+				candidateCount = list(word, stamp, listed, candidates, candidateCount);
+				candidateCount = list(word - 1, stamp, listed, candidates, candidateCount);
+				candidateCount = list(word + 1, stamp, listed, candidates, candidateCount);
+				candidateCount = list(word - stride, stamp, listed, candidates, candidateCount);
+				candidateCount = list(word + stride, stamp, listed, candidates, candidateCount);
+			}
+
+			int nextCount = 0;
+			for (int c = 0; c < candidateCount; c++) {
+				int i = candidates[c];
+				long enterable = horizontal[i] | vertical[i];
+				if (enterable == 0) {
+					// Includes the border words
+					continue;
+				}
+
+				long current = frontier[i];
+				long sideways = current << 1 | frontier[i - 1] >>> 63 | current >>> 1 | frontier[i + 1] << 63;
+				long upOrDown = frontier[i - stride] | frontier[i + stride];
+				long found = (sideways & horizontal[i] | upOrDown & vertical[i]) & ~reached[i];
+				if (found == 0) {
+					continue;
+				}
+
+				reached[i] |= found;
+				result.size += Long.bitCount(found);
+				if (result.distances != null) {
+					for (long bits = found; bits != 0; bits &= bits - 1) {
+						result.distances[i * 64 + Long.numberOfTrailingZeros(bits)] = distance;
+					}
+				}
+
+				// Doors are the end of a move, so only corridors expand
+				long corridors = found & horizontal[i] & vertical[i];
+				if (corridors != 0) {
+					next[i] = corridors;
+					nextActive[nextCount++] = i;
+				}
+			}
+
+			// Clear the old frontier, leaving the array empty for the step
+			// after next
+			for (int a = 0; a < activeCount; a++) {
+				frontier[active[a]] = 0;
+			}
+			long[] swapWords = frontier;
+			frontier = next;
+			next = swapWords;
+			int[] swapList = active;
+			active = nextActive;
+			nextActive = swapList;
+			activeCount = nextCount;
+		}
+	}
+
+	/**
+	 * Adds a word to the candidates, unless it was already listed in this
+	 * step. Returns the new number of candidates.
+	 */
+	private static int list(int word, int stamp, int[] listed, int[] candidates, int count) {
+		if (listed[word] == stamp) {
+			return count;
+		}
+		listed[word] = stamp;
+		candidates[count] = word;
+		return count + 1;
+	}
+}
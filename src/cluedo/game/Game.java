@@ -1,6 +1,7 @@
 package cluedo.game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -67,11 +68,23 @@ public class Game {
 
 	private static Random random = new Random();
 
+	private Scenario scenario;
 	private GameData data;
 	private Board board;
 	private Solution solution;
 	private List<Player> players = new ArrayList<Player>();
 
+	// The weapon in each room, indexed by Scenario.getRoomIndex(), and the
+	// room index of each weapon, indexed by Scenario.getWeaponIndex()
+	private Weapon[] roomWeapons;
+	private int[] weaponRooms;
+
+	private Player currentPlayer;
+
+	// Zobrist hash of the weapon placement and whose turn it is (the board
+	// hashes the players)
+	private long hash;
+
 	/**
 	 * Construct a new game
 	 *
@@ -79,17 +92,33 @@ public class Game {
 	 *            object to retrieve game and board info from
 	 */
 	public Game(Loader loader) {
-		this.data = new GameData(loader);
-		this.board = new Board(loader);
+		this(new Scenario(loader));
+	}
+
+	/**
+	 * Construct a new game from a scenario, which may be shared with other
+	 * games
+	 *
+	 * @param scenario
+	 *            scenario containing game and board info
+	 */
+	public Game(Scenario scenario) {
+		this.scenario = scenario;
+		this.data = scenario.getData();
+		this.board = new Board(scenario);
+		this.roomWeapons = new Weapon[scenario.getRooms().size()];
+		this.weaponRooms = new int[scenario.getWeapons().size()];
+		Arrays.fill(weaponRooms, -1);
 		distributeWeapons();
 	}
 
 	public void reset() {
 		players.clear();
         board.clearPlayers();
-        for (Room room : data.getRooms()) {
-            room.setWeapon(null);
-        }
+        currentPlayer = null;
+        hash = 0;
+        Arrays.fill(roomWeapons, null);
+        Arrays.fill(weaponRooms, -1);
         distributeWeapons();
 	}
 
@@ -141,6 +170,13 @@ public class Game {
 		return data;
 	}
 
+	/**
+	 * Returns the scenario this game was created from
+	 */
+	public Scenario getScenario() {
+		return scenario;
+	}
+
 	/**
 	 * Represents the board the game is being played on
 	 */
@@ -148,6 +184,80 @@ public class Game {
 		return board;
 	}
 
+	/**
+	 * Returns the weapon currently in the given room, or null if there isn't
+	 * one
+	 */
+	public Weapon getRoomWeapon(Room room) {
+		return roomWeapons[scenario.getRoomIndex(room)];
+	}
+
+	/**
+	 * Moves a weapon into a room (eg. after it was named in a suggestion). The
+	 * weapon already in that room, if any, swaps places with it.
+	 *
+	 * @param room
+	 *            room to move the weapon to
+	 * @param weapon
+	 *            weapon to move
+	 */
+	public void setRoomWeapon(Room room, Weapon weapon) {
+		int to = scenario.getRoomIndex(room);
+		int weaponIndex = scenario.getWeaponIndex(weapon);
+		int from = weaponRooms[weaponIndex];
+		if (from == to) {
+			return;
+		}
+
+		Weapon displaced = roomWeapons[to];
+		roomWeapons[from] = null;
+		placeWeapon(weaponIndex, to);
+		if (displaced != null) {
+			placeWeapon(scenario.getWeaponIndex(displaced), from);
+		}
+	}
+
+	/**
+	 * Returns the player whose turn it is, or null if no turn is in progress
+	 */
+	public Player getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * Sets the player whose turn it is
+	 *
+	 * @param player
+	 *            player starting their turn, or null if no turn is in progress
+	 */
+	public void setCurrentPlayer(Player player) {
+		if (currentPlayer != null) {
+			hash ^= Zobrist.key(Zobrist.TURN, currentPlayer.getOrdinal(), 0);
+		}
+		currentPlayer = player;
+		if (player != null) {
+			hash ^= Zobrist.key(Zobrist.TURN, player.getOrdinal(), 0);
+		}
+	}
+
+	/**
+	 * Returns a Zobrist hash of the position: every player's tile or room and
+	 * remaining moves, the room each weapon is in, and whose turn it is. The
+	 * hash is updated as each of these changes, so this takes constant time.
+	 */
+	public long getHash() {
+		return hash ^ board.getHash();
+	}
+
+	/**
+	 * Returns an immutable copy of the current positions, weapons and turn,
+	 * which can be read from other threads. This must be called on the thread
+	 * playing the game.
+	 */
+	public GameSnapshot snapshot() {
+		return new GameSnapshot(this, roomWeapons);
+	}
+
 	/**
 	 * Returns the game's solution - whodunnit, where and how
 	 */
@@ -187,11 +297,25 @@ public class Game {
 	 * Randomly assigns weapons to rooms
 	 */
 	private void distributeWeapons() {
-		List<Room> roomsWithoutWeapon = new ArrayList<Room>(data.getRooms());
+		List<Room> roomsWithoutWeapon = new ArrayList<Room>(scenario.getRooms());
 		for (Weapon weapon : data.getWeapons()) {
 			Room room = roomsWithoutWeapon.remove(random.nextInt(roomsWithoutWeapon.size()));
-			room.setWeapon(weapon);
+			placeWeapon(scenario.getWeaponIndex(weapon), scenario.getRoomIndex(room));
+		}
+	}
+
+	/**
+	 * Puts a weapon in a room, replacing the room's entry, and updates the
+	 * hash for the weapon's move
+	 */
+	private void placeWeapon(int weaponIndex, int roomIndex) {
+		int previous = weaponRooms[weaponIndex];
+		if (previous >= 0) {
+			hash ^= Zobrist.key(Zobrist.WEAPON, weaponIndex, previous);
 		}
+		roomWeapons[roomIndex] = scenario.getWeapons().get(weaponIndex);
+		weaponRooms[weaponIndex] = roomIndex;
+		hash ^= Zobrist.key(Zobrist.WEAPON, weaponIndex, roomIndex);
 	}
 
 	/**
@@ -1,6 +1,9 @@
 package cluedo.game;
 
+import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,13 +14,14 @@ import cluedo.loader.Loader;
 
 /**
  * Represents a collection of data that defines how the current game behaves
- * (eg. lists of all suspects, rooms and weapons)
+ * (eg. lists of all suspects, rooms and weapons). This data never changes once
+ * loaded, so it can be shared between games (see Scenario).
  */
 public class GameData {
-	private Map<String, Room> rooms;
-	private Map<String, Suspect> suspects;
-	private Map<Character, Suspect> suspectsById;
-	private Map<String, Weapon> weapons;
+	private final Map<String, Room> rooms;
+	private final Map<String, Suspect> suspects;
+	private final Map<Character, Suspect> suspectsById;
+	private final Map<String, Weapon> weapons;
 
 	/**
 	 * Load data from the specified loader
@@ -26,10 +30,43 @@ public class GameData {
 	 * 			  object to load data from
 	 */
 	public GameData(Loader loader) {
-		this.rooms = loader.getRooms();
-		this.suspects = loader.getSuspects();
-		this.suspectsById = loader.getSuspectsById();
-		this.weapons = loader.getWeapons();
+		this(loader, null);
+	}
+
+	/**
+	 * Load data from the specified loader, keeping the suspect and weapon
+	 * objects of a previous version of the same scenario where they haven't
+	 * changed. A suspect is unchanged if its identifier, name, colour and start
+	 * tile are the same; a weapon if its name is. Rooms are always taken from
+	 * the loader, as they are part of the board layout.
+	 *
+	 * @param loader
+	 * 			  object to load data from
+	 * @param previous
+	 * 			  data loaded from the previous version, or null
+	 */
+	public GameData(Loader loader, GameData previous) {
+		Map<String, Suspect> suspects = new HashMap<String, Suspect>();
+		Map<Character, Suspect> suspectsById = new HashMap<Character, Suspect>();
+		for (Suspect suspect : loader.getSuspects().values()) {
+			Suspect old = previous == null ? null : previous.suspects.get(suspect.getName());
+			if (old != null && isUnchanged(old, suspect)) {
+				suspect = old;
+			}
+			suspects.put(suspect.getName(), suspect);
+			suspectsById.put(suspect.getIdentifier(), suspect);
+		}
+
+		Map<String, Weapon> weapons = new HashMap<String, Weapon>();
+		for (Weapon weapon : loader.getWeapons().values()) {
+			Weapon old = previous == null ? null : previous.weapons.get(weapon.getName());
+			weapons.put(weapon.getName(), old != null ? old : weapon);
+		}
+
+		this.rooms = Collections.unmodifiableMap(new HashMap<String, Room>(loader.getRooms()));
+		this.suspects = Collections.unmodifiableMap(suspects);
+		this.suspectsById = Collections.unmodifiableMap(suspectsById);
+		this.weapons = Collections.unmodifiableMap(weapons);
 	}
 
 	/**
@@ -89,4 +126,14 @@ public class GameData {
 	public Room getRoom(String name) {
 		return rooms.get(name);
 	}
+
+	/**
+	 * Returns true if two suspects are interchangeable
+	 */
+	private static boolean isUnchanged(Suspect old, Suspect suspect) {
+		Point oldStart = old.getStartLocation();
+		Point start = suspect.getStartLocation();
+		return old.getIdentifier() == suspect.getIdentifier() && old.getColor().equals(suspect.getColor())
+				&& (oldStart == null ? start == null : oldStart.equals(start));
+	}
 }
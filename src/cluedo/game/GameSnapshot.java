@@ -0,0 +1,180 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Weapon;
+
+/**
+ * An immutable view of a game at one moment: where each player is, which room
+ * they are in, whether they are still playing and how many moves they have
+ * left, along with the weapon in each room and whose turn it is. The layout
+ * comes from the game's Scenario, which is shared rather than copied, so a
+ * snapshot only copies a few small arrays.
+ *
+ * A snapshot must be taken (with Game.snapshot()) on the thread that plays the
+ * game, but can then be read from any thread, eg. to render, broadcast or
+ * record the game without locking it. Player objects are only used for their
+ * identity, name and token, which never change.
+ */
+public final class GameSnapshot {
+	private final Scenario scenario;
+	private final List<Player> players;
+	private final Player currentPlayer;
+	private final long hash;
+
+	// Per player (in the order of getPlayers()): tile index or -1, room index
+	// or -1, remaining moves and whether they are still in the game
+	private final int[] locations;
+	private final int[] rooms;
+	private final int[] movesRemaining;
+	private final boolean[] inGame;
+
+	// The weapon in each room, indexed by Scenario.getRoomIndex()
+	private final Weapon[] roomWeapons;
+
+	/**
+	 * Copies the current state of a game. Called by Game.snapshot().
+	 */
+	GameSnapshot(Game game, Weapon[] roomWeapons) {
+		this.scenario = game.getScenario();
+		this.players = Collections.unmodifiableList(new ArrayList<Player>(game.getPlayers()));
+		this.currentPlayer = game.getCurrentPlayer();
+		this.hash = game.getHash();
+		this.roomWeapons = Arrays.copyOf(roomWeapons, roomWeapons.length);
+
+		Board board = game.getBoard();
+		int count = players.size();
+		locations = new int[count];
+		rooms = new int[count];
+		movesRemaining = new int[count];
+		inGame = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			Player player = players.get(i);
+			Point location = board.getPlayerLocation(player);
+			locations[i] = location == null ? -1 : location.x + scenario.getWidth() * location.y;
+			rooms[i] = player.getRoom() == null ? -1 : scenario.getRoomIndex(player.getRoom());
+			movesRemaining[i] = player.getMovesRemaining();
+			inGame[i] = player.isInGame();
+		}
+	}
+
+	/**
+	 * Returns the scenario the game was created from
+	 */
+	public Scenario getScenario() {
+		return scenario;
+	}
+
+	/**
+	 * Returns every player in the game, including those who have lost
+	 */
+	public List<Player> getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Returns the player whose turn it was, or null if no turn was in progress
+	 */
+	public Player getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * Returns the game's hash (see Game.getHash()) when the snapshot was taken
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns a player's location, or null if they were not on the board.
+	 * Players in a room are at the door they entered through.
+	 */
+	public Point getLocation(Player player) {
+		int index = indexOf(player);
+		if (index < 0 || locations[index] < 0) {
+			return null;
+		}
+		return new Point(locations[index] % scenario.getWidth(), locations[index] / scenario.getWidth());
+	}
+
+	/**
+	 * Returns the room a player was in, or null if they were in a corridor
+	 */
+	public Room getRoom(Player player) {
+		int index = indexOf(player);
+		return index < 0 || rooms[index] < 0 ? null : scenario.getRooms().get(rooms[index]);
+	}
+
+	/**
+	 * Returns the number of moves a player had left
+	 */
+	public int getMovesRemaining(Player player) {
+		int index = indexOf(player);
+		return index < 0 ? 0 : movesRemaining[index];
+	}
+
+	/**
+	 * Returns true if a player was still in the game
+	 */
+	public boolean isInGame(Player player) {
+		int index = indexOf(player);
+		return index >= 0 && inGame[index];
+	}
+
+	/**
+	 * Returns true if another player stopped a move by this player from
+	 * ending on the tile (x,y), as Board.isBlocked() did when the snapshot
+	 * was taken
+	 */
+	public boolean isBlocked(Player player, int x, int y) {
+		if (x < 0 || y < 0 || x >= scenario.getWidth() || y >= scenario.getHeight()
+				|| scenario.getTiles().isDoor(x, y)) {
+			return false;
+		}
+		int tile = x + scenario.getWidth() * y;
+		for (int i = 0; i < players.size(); i++) {
+			if (locations[i] == tile && players.get(i) != player) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the players who were in a room and still in the game, in turn
+	 * order
+	 */
+	public List<Player> getPlayersInRoom(Room room) {
+		int roomIndex = scenario.getRoomIndex(room);
+		List<Player> result = new ArrayList<Player>();
+		for (int i = 0; i < players.size(); i++) {
+			if (inGame[i] && roomIndex >= 0 && rooms[i] == roomIndex) {
+				result.add(players.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the weapon that was in a room, or null if there wasn't one
+	 */
+	public Weapon getRoomWeapon(Room room) {
+		int index = scenario.getRoomIndex(room);
+		return index < 0 ? null : roomWeapons[index];
+	}
+
+	private int indexOf(Player player) {
+		for (int i = 0; i < players.size(); i++) {
+			if (players.get(i) == player) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
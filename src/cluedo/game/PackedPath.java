@@ -0,0 +1,164 @@
+package cluedo.game;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import cluedo.game.Board.Direction;
+
+/**
+ * A sequence of steps stored in 2 bits per step, 32 steps to a long, so that
+ * paths can be built, stored and replayed without creating an object per
+ * step. Steps are numbered from 0, and step i is bits (2i % 64) to
+ * (2i % 64 + 1) of word i / 32, holding the ordinal of its Direction.
+ */
+public final class PackedPath {
+	private static final int STEPS_PER_WORD = 32;
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private long[] words;
+	private int size;
+
+	/**
+	 * Construct a new, empty path
+	 */
+	public PackedPath() {
+		this(STEPS_PER_WORD);
+	}
+
+	/**
+	 * Construct a new, empty path with room for the given number of steps
+	 * before it needs to grow
+	 *
+	 * @param capacity
+	 *            number of steps to allocate space for
+	 */
+	public PackedPath(int capacity) {
+		words = new long[Math.max(1, (capacity + STEPS_PER_WORD - 1) / STEPS_PER_WORD)];
+	}
+
+	/**
+	 * Returns a packed copy of a list of steps
+	 */
+	public static PackedPath of(List<Direction> steps) {
+		PackedPath path = new PackedPath(steps.size());
+		for (Direction step : steps) {
+			path.add(step);
+		}
+		return path;
+	}
+
+	/**
+	 * Adds a step to the end of the path
+	 */
+	public void add(Direction step) {
+		if (size == words.length * STEPS_PER_WORD) {
+			words = Arrays.copyOf(words, words.length * 2);
+		}
+		words[size / STEPS_PER_WORD] |= (long) step.ordinal() << ((size % STEPS_PER_WORD) * 2);
+		size++;
+	}
+
+	/**
+	 * Removes every step, keeping the space allocated for them
+	 */
+	public void clear() {
+		Arrays.fill(words, 0, (size + STEPS_PER_WORD - 1) / STEPS_PER_WORD, 0);
+		size = 0;
+	}
+
+	/**
+	 * Returns the step at an index
+	 */
+	public Direction get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Step " + index + " of " + size);
+		}
+		int ordinal = (int) (words[index / STEPS_PER_WORD] >>> ((index % STEPS_PER_WORD) * 2)) & 0b11;
+		return DIRECTIONS[ordinal];
+	}
+
+	/**
+	 * Returns the number of steps in the path
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the change in x-coordinate made by the step at an index
+	 */
+	public int dx(int index) {
+		switch (get(index)) {
+		case RIGHT:
+			return 1;
+		case LEFT:
+			return -1;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the change in y-coordinate made by the step at an index
+	 */
+	public int dy(int index) {
+		switch (get(index)) {
+		case DOWN:
+			return 1;
+		case UP:
+			return -1;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns a read-only view of the steps as a list. The view reads from
+	 * this path, so it doesn't copy the steps.
+	 */
+	public List<Direction> asList() {
+		return new AbstractList<Direction>() {
+			@Override
+			public Direction get(int index) {
+				return PackedPath.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof PackedPath)) {
+			return false;
+		}
+		PackedPath path = (PackedPath) other;
+		if (path.size != size) {
+			return false;
+		}
+		for (int i = 0; i < (size + STEPS_PER_WORD - 1) / STEPS_PER_WORD; i++) {
+			if (words[i] != path.words[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = size;
+		for (int i = 0; i < (size + STEPS_PER_WORD - 1) / STEPS_PER_WORD; i++) {
+			hash = hash * 31 + (int) (words[i] ^ (words[i] >>> 32));
+		}
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return asList().toString();
+	}
+}
@@ -24,6 +24,8 @@ public class Player {
 	private Room room;
 	private int movesRemaining;
 	private boolean inGame = true;
+	// Position on the board's list of players, set by Board
+	private int ordinal = -1;
 
 	/**
 	 * Construct a new player
@@ -90,6 +92,22 @@ public class Player {
 		this.inGame = inGame;
 	}
 
+	/**
+	 * Returns the player's position in the order players were added to the
+	 * board (0 for the first player), or -1 if the player isn't on a board
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	/**
+	 * Sets the player's position in the order players were added to the
+	 * board. Called by Board.
+	 */
+	void setOrdinal(int ordinal) {
+		this.ordinal = ordinal;
+	}
+
     /**
      * Get the number the player rolled this turn, or 0 if it isn't this
      * player's turn
@@ -0,0 +1,266 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cluedo.game.objects.Room;
+
+/**
+ * Answers "where can I go with this roll" by lookup rather than by searching
+ * for paths. For each starting point (a corridor tile, or a room whose doors
+ * the player can leave by), the table holds every tile within MAX_ROLL steps
+ * along with its walking distance, so one entry answers every roll from 1 to
+ * MAX_ROLL: a tile can be reached with a roll of k if its distance is at most
+ * k, and in exactly k steps if its distance is k. Doors are counted as the end
+ * of a move, so a room can be reached if one of its doors can be.
+ *
+ * Entries are built (with the scenario's FloodFill) the first time a starting
+ * point is queried and kept for the life of the scenario. Each entry is a
+ * sorted array of tile indices and a byte of distance per tile, so even a
+ * fully open area costs under 2 KB per starting point. Other players are not
+ * taken into account, as they don't block paths; only the last tile of a move
+ * must be free.
+ */
+public final class ReachabilityTable {
+	/** The largest roll the table can answer for (the total of two dice) */
+	public static final int MAX_ROLL = 12;
+
+	/**
+	 * The tiles within reach of one starting point
+	 */
+	private static final class Entry {
+		// Tile indices (x + width * y) in increasing order
+		private final int[] tiles;
+		private final byte[] distances;
+
+		private Entry(int[] tiles, byte[] distances) {
+			this.tiles = tiles;
+			this.distances = distances;
+		}
+
+		/**
+		 * Returns the distance to a tile index, or -1 if it is out of reach
+		 */
+		private int getDistance(int index) {
+			int position = Arrays.binarySearch(tiles, index);
+			return position < 0 ? -1 : distances[position];
+		}
+
+		private long estimateSize() {
+			return 48 + tiles.length * 5L;
+		}
+	}
+
+	private final Scenario scenario;
+	private final TileGrid grid;
+	private final int width;
+
+	// Entries by starting tile index, and by room index
+	private final Map<Integer, Entry> tileEntries = new HashMap<Integer, Entry>();
+	private final Map<Integer, Entry> roomEntries = new HashMap<Integer, Entry>();
+	private long size;
+
+	/**
+	 * Construct an empty table. Called by Scenario.getReachability().
+	 */
+	ReachabilityTable(Scenario scenario) {
+		this.scenario = scenario;
+		this.grid = scenario.getTiles();
+		this.width = scenario.getWidth();
+	}
+
+	/**
+	 * Returns the number of steps needed to walk from the corridor tile
+	 * (fromX,fromY) to the tile (toX,toY), or -1 if that takes more than
+	 * MAX_ROLL steps
+	 */
+	public int getDistance(int fromX, int fromY, int toX, int toY) {
+		if (!grid.isCorridor(fromX, fromY) || !contains(toX, toY)) {
+			return -1;
+		}
+		return getEntry(fromX, fromY).getDistance(toX + width * toY);
+	}
+
+	/**
+	 * Returns the number of steps needed to walk from a room to the tile
+	 * (toX,toY), counting the step out of the door, or -1 if that takes more
+	 * than MAX_ROLL steps
+	 */
+	public int getDistance(Room from, int toX, int toY) {
+		if (!contains(toX, toY)) {
+			return -1;
+		}
+		Entry entry = getEntry(from);
+		return entry == null ? -1 : entry.getDistance(toX + width * toY);
+	}
+
+	/**
+	 * Returns true if the tile (toX,toY) can be reached from the corridor tile
+	 * (fromX,fromY) with the given roll
+	 */
+	public boolean canReach(int fromX, int fromY, int toX, int toY, int roll) {
+		int distance = getDistance(fromX, fromY, toX, toY);
+		return distance >= 0 && distance <= roll;
+	}
+
+	/**
+	 * Returns true if the tile (toX,toY) can be reached from a room with the
+	 * given roll
+	 */
+	public boolean canReach(Room from, int toX, int toY, int roll) {
+		int distance = getDistance(from, toX, toY);
+		return distance >= 0 && distance <= roll;
+	}
+
+	/**
+	 * Returns the tiles (including doors) which can be reached from the
+	 * corridor tile (x,y) with the given roll, not including the tile itself
+	 */
+	public List<Point> getReachableTiles(int x, int y, int roll) {
+		if (!grid.isCorridor(x, y)) {
+			return new ArrayList<Point>();
+		}
+		return getTiles(getEntry(x, y), roll);
+	}
+
+	/**
+	 * Returns the tiles (including doors) which can be reached from a room
+	 * with the given roll
+	 */
+	public List<Point> getReachableTiles(Room from, int roll) {
+		return getTiles(getEntry(from), roll);
+	}
+
+	/**
+	 * Returns the rooms which can be entered from the corridor tile (x,y) with
+	 * the given roll
+	 */
+	public List<Room> getReachableRooms(int x, int y, int roll) {
+		if (!grid.isCorridor(x, y)) {
+			return new ArrayList<Room>();
+		}
+		return getRooms(getEntry(x, y), roll);
+	}
+
+	/**
+	 * Returns the rooms which can be entered from a room with the given roll.
+	 * This can include the room itself, by way of another door.
+	 */
+	public List<Room> getReachableRooms(Room from, int roll) {
+		return getRooms(getEntry(from), roll);
+	}
+
+	/**
+	 * Returns the number of starting points which have been looked up so far
+	 */
+	public synchronized int getEntryCount() {
+		return tileEntries.size() + roomEntries.size();
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by the entries built so far,
+	 * in bytes
+	 */
+	public synchronized long estimateSize() {
+		return 64 + size + getEntryCount() * 48L;
+	}
+
+	private boolean contains(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < scenario.getHeight();
+	}
+
+	/**
+	 * Returns the entry for a corridor tile, building it if needed
+	 */
+	private synchronized Entry getEntry(int x, int y) {
+		Integer key = x + width * y;
+		Entry entry = tileEntries.get(key);
+		if (entry == null) {
+			entry = search(x, y);
+			tileEntries.put(key, entry);
+			size += entry.estimateSize();
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the entry for a room, building it if needed, or null if the room
+	 * isn't part of the scenario
+	 */
+	private synchronized Entry getEntry(Room room) {
+		int roomIndex = scenario.getRoomIndex(room);
+		if (roomIndex < 0) {
+			return null;
+		}
+		Entry entry = roomEntries.get(roomIndex);
+		if (entry == null) {
+			entry = searchFromRoom(roomIndex);
+			roomEntries.put(roomIndex, entry);
+			size += entry.estimateSize();
+		}
+		return entry;
+	}
+
+	/**
+	 * Searches from the corridor tile (x,y) with the scenario's flood fill
+	 */
+	private Entry search(int x, int y) {
+		return toEntry(scenario.getFloodFill().reach(x, y, MAX_ROLL, true));
+	}
+
+	/**
+	 * Searches from the tiles outside each of a room's doors at once.
+	 * Stepping out of the door counts as the first step.
+	 */
+	private Entry searchFromRoom(int roomIndex) {
+		return toEntry(scenario.getFloodFill().reach(scenario.getRooms().get(roomIndex), MAX_ROLL, true));
+	}
+
+	private Entry toEntry(FloodFill.Result result) {
+		// The fill lists tiles in increasing order, as the entry needs
+		int[] tiles = result.getTileIndices();
+		byte[] distances = new byte[tiles.length];
+		for (int i = 0; i < tiles.length; i++) {
+			distances[i] = (byte) result.getDistance(tiles[i] % width, tiles[i] / width);
+		}
+		return new Entry(tiles, distances);
+	}
+
+	private List<Point> getTiles(Entry entry, int roll) {
+		List<Point> points = new ArrayList<Point>();
+		if (entry == null) {
+			return points;
+		}
+		for (int i = 0; i < entry.tiles.length; i++) {
+			if (entry.distances[i] > 0 && entry.distances[i] <= roll) {
+				points.add(new Point(entry.tiles[i] % width, entry.tiles[i] / width));
+			}
+		}
+		return points;
+	}
+
+	private List<Room> getRooms(Entry entry, int roll) {
+		List<Room> rooms = new ArrayList<Room>();
+		if (entry == null) {
+			return rooms;
+		}
+		boolean[] found = new boolean[scenario.getRooms().size()];
+		for (int i = 0; i < entry.tiles.length; i++) {
+			int tile = grid.tileAt(entry.tiles[i]);
+			if (entry.distances[i] <= roll && TileGrid.kind(tile) == TileGrid.DOOR) {
+				int roomIndex = grid.getRoomIndex(entry.tiles[i] % width, entry.tiles[i] / width);
+				found[roomIndex] = true;
+			}
+		}
+		for (int i = 0; i < found.length; i++) {
+			if (found[i]) {
+				rooms.add(scenario.getRooms().get(i));
+			}
+		}
+		return rooms;
+	}
+}
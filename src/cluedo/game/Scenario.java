@@ -0,0 +1,278 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Weapon;
+import cluedo.loader.Loader;
+
+/**
+ * An immutable template for games: the cards (suspects, rooms and weapons) and
+ * the layout of the board. A scenario holds no per-game state, so one instance
+ * can be shared by any number of games, including games running on different
+ * threads. Per-game state (weapon placement, player locations and hands) is
+ * kept by Game, Board and Player.
+ */
+public final class Scenario {
+	private final GameData data;
+
+	private final int width;
+	private final int height;
+
+	// The bit for (x,y) is true if the point (x,y) is a corridor
+	private final TileBitmap corridors;
+	private final TileGrid tiles;
+
+	// Rooms and weapons in a fixed order, so per-game state can be stored in
+	// arrays indexed by getRoomIndex() and getWeaponIndex()
+	private final List<Room> rooms;
+	private final Map<Room, Integer> roomIndices;
+	private final List<Weapon> weapons;
+	private final Map<Weapon, Integer> weaponIndices;
+
+	private final ConnectedComponents components;
+	private ReachabilityTable reachability;
+	private FloodFill floodFill;
+	private DistanceMatrix distances;
+	private File distanceFile;
+
+	/**
+	 * Construct a new scenario. The loader's rooms, suspects, weapons and
+	 * corridors are shared with the scenario and must not be modified
+	 * afterwards.
+	 *
+	 * @param loader
+	 *            object to retrieve game and board info from
+	 */
+	public Scenario(Loader loader) {
+		this(loader, null);
+	}
+
+	/**
+	 * Construct a new version of a scenario, eg. after its file has been
+	 * edited. Suspects and weapons which haven't changed are shared with the
+	 * previous version (see GameData), so only the board and rooms are new
+	 * objects when just the board was edited.
+	 *
+	 * @param loader
+	 *            object to retrieve game and board info from
+	 * @param previous
+	 *            the previous version of the scenario, or null
+	 */
+	public Scenario(Loader loader, Scenario previous) {
+		this.data = new GameData(loader, previous == null ? null : previous.data);
+		this.width = loader.getBoardWidth();
+		this.height = loader.getBoardHeight();
+		this.corridors = loader.getCorridorMap();
+
+		Map<Room, Integer> roomIndices = new HashMap<Room, Integer>();
+		List<Room> rooms = new ArrayList<Room>(data.getRooms());
+		for (int i = 0; i < rooms.size(); i++) {
+			roomIndices.put(rooms.get(i), i);
+		}
+		this.roomIndices = Collections.unmodifiableMap(roomIndices);
+		this.rooms = Collections.unmodifiableList(rooms);
+
+		Map<Weapon, Integer> weaponIndices = new HashMap<Weapon, Integer>();
+		List<Weapon> weapons = new ArrayList<Weapon>(data.getWeapons());
+		for (int i = 0; i < weapons.size(); i++) {
+			weaponIndices.put(weapons.get(i), i);
+		}
+		this.weaponIndices = Collections.unmodifiableMap(weaponIndices);
+		this.weapons = Collections.unmodifiableList(weapons);
+		this.tiles = new TileGrid(this, Loader.HUGE_BOARD_TILES);
+		this.components = new ConnectedComponents(this);
+	}
+
+	/**
+	 * Returns the cards in this scenario (suspects, rooms and weapons)
+	 */
+	public GameData getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the width of the board (in tiles)
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the board (in tiles)
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns true if the point (x,y) is a corridor, false otherwise
+	 */
+	public boolean isCorridor(int x, int y) {
+		return corridors.get(x, y);
+	}
+
+	/**
+	 * Returns the corridors on the board. For huge boards this is a
+	 * ChunkedBitmap, which can report its memory use.
+	 */
+	public TileBitmap getCorridors() {
+		return corridors;
+	}
+
+	/**
+	 * Returns the door at the given point, or null if there isn't one
+	 */
+	public Door getDoor(Point location) {
+		return tiles.getDoor(location.x, location.y);
+	}
+
+	/**
+	 * Returns the kind of each tile on the board, along with the room or door
+	 * it belongs to
+	 */
+	public TileGrid getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * Returns all rooms in a fixed order (the order used by getRoomIndex)
+	 */
+	public List<Room> getRooms() {
+		return rooms;
+	}
+
+	/**
+	 * Returns the position of the room in getRooms(), or -1 if the room is not
+	 * part of this scenario
+	 */
+	public int getRoomIndex(Room room) {
+		Integer index = roomIndices.get(room);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns all weapons in a fixed order (the order used by getWeaponIndex)
+	 */
+	public List<Weapon> getWeapons() {
+		return weapons;
+	}
+
+	/**
+	 * Returns the position of the weapon in getWeapons(), or -1 if the weapon
+	 * is not part of this scenario
+	 */
+	public int getWeaponIndex(Weapon weapon) {
+		Integer index = weaponIndices.get(weapon);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the parts of the board which are connected by walking, labelled
+	 * when the scenario was constructed
+	 */
+	public ConnectedComponents getComponents() {
+		return components;
+	}
+
+	/**
+	 * Returns the table of tiles and rooms within reach of each starting
+	 * point, which is created on first use and fills in as it is queried
+	 */
+	public synchronized ReachabilityTable getReachability() {
+		if (reachability == null) {
+			reachability = new ReachabilityTable(this);
+		}
+		return reachability;
+	}
+
+	/**
+	 * Returns the bit-parallel search over this board's corridors, which is
+	 * created on first use
+	 */
+	public synchronized FloodFill getFloodFill() {
+		if (floodFill == null) {
+			floodFill = new FloodFill(this);
+		}
+		return floodFill;
+	}
+
+	/**
+	 * Returns the walking distances between doors and start tiles. The matrix
+	 * is read from the distance file if one has been set and matches this
+	 * board, and is otherwise computed (and saved to the distance file) on
+	 * first use.
+	 */
+	public synchronized DistanceMatrix getDistances() {
+		if (distances != null) {
+			return distances;
+		}
+
+		if (distanceFile != null && distanceFile.isFile()) {
+			try {
+				distances = DistanceMatrix.read(distanceFile, this);
+			}
+			catch (IOException e) {
+				// Computed again below
+			}
+		}
+		if (distances == null) {
+			distances = DistanceMatrix.compute(this);
+			if (distanceFile != null) {
+				try {
+					distances.write(distanceFile);
+				}
+				catch (IOException e) {
+					// Eg. a read-only directory; the matrix is still kept in
+					// memory
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Sets the file getDistances() reads the distance matrix from, and saves
+	 * it to. ScenarioRegistry uses a ".dist" file beside the first file the
+	 * scenario was loaded from.
+	 *
+	 * @param file
+	 *            file for the distance matrix, or null to keep it in memory
+	 *            only
+	 */
+	public synchronized void setDistanceFile(File file) {
+		this.distanceFile = file;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by this scenario, in bytes.
+	 * This includes the distance matrix, the flood fill masks and the entries
+	 * of the reachability table, if they have been built.
+	 */
+	public long estimateSize() {
+		long size = corridors.estimateSize() + tiles.estimateSize();
+		for (Room room : rooms) {
+			size += room.estimateSize();
+		}
+		size += data.getSuspects().size() * 128L + data.getWeapons().size() * 96L;
+		synchronized (this) {
+			if (reachability != null) {
+				size += reachability.estimateSize();
+			}
+			if (floodFill != null) {
+				size += floodFill.estimateSize();
+			}
+			if (distances != null) {
+				size += distances.estimateSize();
+			}
+		}
+		return size;
+	}
+}
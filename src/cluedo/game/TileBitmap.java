@@ -0,0 +1,35 @@
+package cluedo.game;
+
+import java.util.BitSet;
+
+/**
+ * One bit per tile of a board, used to store which tiles are corridors
+ */
+public interface TileBitmap {
+	/**
+	 * Returns the bit for the tile (x,y), or false if the tile is outside the
+	 * bitmap
+	 */
+	public boolean get(int x, int y);
+
+	/**
+	 * Returns the width of the bitmap (in tiles)
+	 */
+	public int getWidth();
+
+	/**
+	 * Returns the height of the bitmap (in tiles)
+	 */
+	public int getHeight();
+
+	/**
+	 * Returns a rough estimate of the memory used by this bitmap, in bytes
+	 */
+	public long estimateSize();
+
+	/**
+	 * Returns a copy of the bitmap as a bit set, where the bit at (x + width *
+	 * y) is the bit for the tile (x,y)
+	 */
+	public BitSet toBitSet();
+}
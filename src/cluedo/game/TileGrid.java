@@ -0,0 +1,395 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import cluedo.game.objects.Room;
+
+/**
+ * Classifies every tile of a board, so that movement and drawing code can ask
+ * what is at (x,y) without creating a Point or looking it up in a map. Each
+ * tile is described by an int made up of its kind (WALL, CORRIDOR, ROOM or
+ * DOOR), whether it is a vertical door, and an index: the room's index in
+ * Scenario.getRooms() for room tiles, or the door's index in getDoors() for
+ * door tiles.
+ *
+ * Boards of up to Loader.HUGE_BOARD_TILES tiles are stored, as one short per
+ * tile if there are at most MAX_INDEX rooms and doors, or one int per tile if
+ * there are more. Larger boards are classified on demand from the scenario's
+ * corridors, doors and rooms instead, which keeps huge boards small. Doors are
+ * then found by a binary search over their sorted tile indices, and rooms by
+ * checking only the rooms whose bounding boxes overlap a coarse grid of cells.
+ */
+public final class TileGrid {
+	/** A tile which is not part of a corridor or room */
+	public static final int WALL = 0;
+	/** A corridor tile */
+	public static final int CORRIDOR = 1;
+	/** A tile inside a room, other than a door */
+	public static final int ROOM = 2;
+	/** A door, which is also part of its room */
+	public static final int DOOR = 3;
+
+	/** The largest room or door index that can be stored in a short per tile */
+	public static final int MAX_INDEX = (1 << 13) - 1;
+
+	private static final int KIND_MASK = 0b11;
+	private static final int VERTICAL = 0b100;
+	private static final int INDEX_SHIFT = 3;
+
+	// Boards classified on demand group rooms by cells of this many tiles
+	// (as a power of two) in each direction
+	private static final int CELL_SHIFT = 5;
+
+	private final Scenario scenario;
+	private final int width;
+	private final int height;
+
+	// One tile per element, indexed x + width * y. Only one of these is set:
+	// shorts (read as unsigned) if every index fits, otherwise ints, and
+	// neither if the tiles are classified on demand.
+	private final short[] tiles;
+	private final int[] wideTiles;
+
+	// Every door on the board, with the index of its room
+	private final List<Door> doors;
+	private final int[] doorRooms;
+	// The tile index outside each door, or -1 if it is off the board
+	private final int[] doorBeside;
+
+	// For boards classified on demand: the tile index of each door in
+	// ascending order, with the index of the door at each tile
+	private final int[] doorTiles;
+	private final int[] doorsByTile;
+	// For boards classified on demand: the rooms whose bounding box overlaps
+	// each cell, as cellRooms[cellStarts[cell]] up to cellStarts[cell + 1]
+	private final int cellColumns;
+	private final int[] cellStarts;
+	private final int[] cellRooms;
+
+	/**
+	 * Classifies the tiles of a scenario. Called by the Scenario constructor
+	 * once its corridors, rooms and doors have been set.
+	 */
+	TileGrid(Scenario scenario, int maxTiles) {
+		this.scenario = scenario;
+		this.width = scenario.getWidth();
+		this.height = scenario.getHeight();
+
+		List<Room> rooms = scenario.getRooms();
+		List<Door> doors = new ArrayList<Door>();
+		List<Integer> doorRooms = new ArrayList<Integer>();
+		for (int i = 0; i < rooms.size(); i++) {
+			for (Door door : rooms.get(i).getDoors()) {
+				doors.add(door);
+				doorRooms.add(i);
+			}
+		}
+		this.doors = Collections.unmodifiableList(doors);
+		this.doorRooms = new int[doorRooms.size()];
+		for (int i = 0; i < this.doorRooms.length; i++) {
+			this.doorRooms[i] = doorRooms.get(i);
+		}
+		this.doorBeside = new int[doors.size()];
+		for (int i = 0; i < doorBeside.length; i++) {
+			Point beside = doors.get(i).getPointBeside();
+			doorBeside[i] = contains(beside.x, beside.y) ? beside.x + width * beside.y : -1;
+		}
+
+		if ((long) width * height > maxTiles) {
+			tiles = null;
+			wideTiles = null;
+			doorTiles = new int[doors.size()];
+			doorsByTile = new int[doors.size()];
+			indexDoors();
+			cellColumns = ((width - 1) >> CELL_SHIFT) + 1;
+			cellStarts = new int[cellColumns * (((height - 1) >> CELL_SHIFT) + 1) + 1];
+			cellRooms = indexRooms();
+			return;
+		}
+		doorTiles = null;
+		doorsByTile = null;
+		cellColumns = 0;
+		cellStarts = null;
+		cellRooms = null;
+
+		int[] grid = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (scenario.isCorridor(x, y)) {
+					grid[x + width * y] = CORRIDOR;
+				}
+			}
+		}
+		for (int i = 0; i < rooms.size(); i++) {
+			for (Point point : rooms.get(i).getPoints()) {
+				if (contains(point.x, point.y)) {
+					grid[point.x + width * point.y] = encode(ROOM, false, i);
+				}
+			}
+		}
+		for (int i = 0; i < doors.size(); i++) {
+			Point location = doors.get(i).getLocation();
+			if (contains(location.x, location.y)) {
+				grid[location.x + width * location.y] = encode(DOOR, doors.get(i).isVertical(), i);
+			}
+		}
+
+		if (rooms.size() > MAX_INDEX || doors.size() > MAX_INDEX) {
+			tiles = null;
+			wideTiles = grid;
+		}
+		else {
+			tiles = new short[grid.length];
+			for (int i = 0; i < grid.length; i++) {
+				tiles[i] = (short) grid[i];
+			}
+			wideTiles = null;
+		}
+	}
+
+	/**
+	 * Returns the kind of a tile (WALL, CORRIDOR, ROOM or DOOR)
+	 */
+	public static int kind(int tile) {
+		return tile & KIND_MASK;
+	}
+
+	/**
+	 * Returns true if a tile is a door which is entered from the left or right
+	 */
+	public static boolean isVerticalDoor(int tile) {
+		return (tile & (KIND_MASK | VERTICAL)) == (DOOR | VERTICAL);
+	}
+
+	/**
+	 * Returns the room index of a room tile, or the door index of a door tile
+	 */
+	public static int index(int tile) {
+		return tile >>> INDEX_SHIFT;
+	}
+
+	/**
+	 * Returns the tile (x,y), or WALL if it is outside the board
+	 */
+	public int getTile(int x, int y) {
+		if (!contains(x, y)) {
+			return WALL;
+		}
+		return tileAt(x + width * y);
+	}
+
+	/**
+	 * Returns the tile at an index of the form (x + width * y), which must be
+	 * on the board
+	 */
+	public int tileAt(int index) {
+		if (tiles != null) {
+			return tiles[index] & 0xFFFF;
+		}
+		else if (wideTiles != null) {
+			return wideTiles[index];
+		}
+		return classify(index % width, index / width);
+	}
+
+	/**
+	 * Returns true if the tile (x,y) is a corridor
+	 */
+	public boolean isCorridor(int x, int y) {
+		return kind(getTile(x, y)) == CORRIDOR;
+	}
+
+	/**
+	 * Returns true if the tile (x,y) is a door
+	 */
+	public boolean isDoor(int x, int y) {
+		return kind(getTile(x, y)) == DOOR;
+	}
+
+	/**
+	 * Returns true if the tile (doorX,doorY) is a door which can be entered
+	 * from the tile (fromX,fromY) beside it
+	 */
+	public boolean canEnterDoor(int doorX, int doorY, int fromX, int fromY) {
+		int tile = getTile(doorX, doorY);
+		if (kind(tile) != DOOR) {
+			return false;
+		}
+		return isVerticalDoor(tile) ? doorY == fromY : doorX == fromX;
+	}
+
+	/**
+	 * Returns the door at the tile (x,y), or null if there isn't one
+	 */
+	public Door getDoor(int x, int y) {
+		int tile = getTile(x, y);
+		return kind(tile) == DOOR ? doors.get(index(tile)) : null;
+	}
+
+	/**
+	 * Returns every door on the board, in the order used for door indices
+	 */
+	public List<Door> getDoors() {
+		return doors;
+	}
+
+	/**
+	 * Returns the tile index (x + width * y) of the tile just outside a door,
+	 * or -1 if that tile is off the board
+	 *
+	 * @param doorIndex
+	 *            index of the door in getDoors()
+	 */
+	public int getBesideIndex(int doorIndex) {
+		return doorBeside[doorIndex];
+	}
+
+	/**
+	 * Returns the index (in Scenario.getRooms()) of the room containing the
+	 * tile (x,y), or -1 if the tile is not part of a room. Doors are part of
+	 * their room.
+	 */
+	public int getRoomIndex(int x, int y) {
+		int tile = getTile(x, y);
+		switch (kind(tile)) {
+		case ROOM:
+			return index(tile);
+		case DOOR:
+			return doorRooms[index(tile)];
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns true if the tiles are stored, rather than classified on demand
+	 */
+	public boolean isStored() {
+		return tiles != null || wideTiles != null;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by this grid, in bytes
+	 */
+	public long estimateSize() {
+		long size = 64 + doors.size() * 48L;
+		if (tiles != null) {
+			size += 16 + tiles.length * 2L;
+		}
+		else if (wideTiles != null) {
+			size += 16 + wideTiles.length * 4L;
+		}
+		else {
+			size += 48 + doorTiles.length * 8L + (cellStarts.length + cellRooms.length) * 4L;
+		}
+		return size;
+	}
+
+	private boolean contains(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	private static int encode(int kind, boolean vertical, int index) {
+		return kind | (vertical ? VERTICAL : 0) | (index << INDEX_SHIFT);
+	}
+
+	/**
+	 * Sorts the doors by tile index, for boards which aren't stored. Doors off
+	 * the board are left out.
+	 */
+	private void indexDoors() {
+		long[] sorted = new long[doors.size()];
+		int count = 0;
+		for (int i = 0; i < doors.size(); i++) {
+			Point location = doors.get(i).getLocation();
+			if (contains(location.x, location.y)) {
+				// Tile index in the high half and door index in the low half
+				sorted[count++] = ((long) (location.x + width * location.y) << 32) | i;
+			}
+		}
+		Arrays.sort(sorted, 0, count);
+		for (int i = 0; i < doorTiles.length; i++) {
+			doorTiles[i] = i < count ? (int) (sorted[i] >>> 32) : Integer.MAX_VALUE;
+			doorsByTile[i] = i < count ? (int) sorted[i] : -1;
+		}
+	}
+
+	/**
+	 * Fills in cellStarts and returns the rooms overlapping each cell, for
+	 * boards which aren't stored
+	 */
+	private int[] indexRooms() {
+		List<Room> rooms = scenario.getRooms();
+
+		// Count the rooms overlapping each cell (at the element after it),
+		// then turn the counts into the start of each cell's rooms
+		for (Room room : rooms) {
+			forEachCell(room, cellStarts, null, 0);
+		}
+		for (int i = 1; i < cellStarts.length; i++) {
+			cellStarts[i] += cellStarts[i - 1];
+		}
+
+		int[] result = new int[cellStarts[cellStarts.length - 1]];
+		int[] next = Arrays.copyOf(cellStarts, cellStarts.length);
+		for (int i = 0; i < rooms.size(); i++) {
+			forEachCell(rooms.get(i), next, result, i);
+		}
+		return result;
+	}
+
+	/**
+	 * Visits the cells overlapped by a room's bounding box. Without a result
+	 * array, adds one to the element after each cell; otherwise stores the
+	 * room at the element of result given by each cell, and moves it on.
+	 */
+	private void forEachCell(Room room, int[] starts, int[] result, int roomIndex) {
+		Room.BoundingBox box = room.getBoundingBox();
+		int minX = Math.max(0, box.getMinX());
+		int minY = Math.max(0, box.getMinY());
+		int maxX = Math.min(width - 1, box.getMaxX());
+		int maxY = Math.min(height - 1, box.getMaxY());
+		for (int cellY = minY >> CELL_SHIFT; minX <= maxX && cellY <= maxY >> CELL_SHIFT; cellY++) {
+			for (int cellX = minX >> CELL_SHIFT; cellX <= maxX >> CELL_SHIFT; cellX++) {
+				int cell = cellX + cellColumns * cellY;
+				if (result == null) {
+					starts[cell + 1]++;
+				}
+				else {
+					result[starts[cell]++] = roomIndex;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the tile (x,y) for boards which aren't stored
+	 */
+	private int classify(int x, int y) {
+		if (scenario.isCorridor(x, y)) {
+			return CORRIDOR;
+		}
+
+		int door = Arrays.binarySearch(doorTiles, x + width * y);
+		if (door >= 0) {
+			int index = doorsByTile[door];
+			return encode(DOOR, doors.get(index).isVertical(), index);
+		}
+
+		List<Room> rooms = scenario.getRooms();
+		int cell = (x >> CELL_SHIFT) + cellColumns * (y >> CELL_SHIFT);
+		for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+			Room room = rooms.get(cellRooms[i]);
+			Room.BoundingBox box = room.getBoundingBox();
+			if (x >= box.getMinX() && x <= box.getMaxX() && y >= box.getMinY() && y <= box.getMaxY()
+					&& room.contains(x, y)) {
+				return encode(ROOM, false, cellRooms[i]);
+			}
+		}
+		return WALL;
+	}
+}
@@ -0,0 +1,211 @@
+package cluedo.game;
+
+import java.awt.Point;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of tiles stored as horizontal runs in each row, rather than as one
+ * Point object per tile. Rectangular rooms need a single run per row however
+ * large they are. Points are created only when iterating, in row-major order.
+ */
+public class TileSet extends AbstractSet<Point> {
+	private static final int[] NO_RUNS = new int[0];
+
+	// The y-coordinate of rows[0]
+	private int minY;
+	// For each row, sorted non-overlapping runs as (start, end) pairs of
+	// x-coordinates, with the end exclusive. Runs are never adjacent, as
+	// adjacent runs are merged.
+	private int[][] rows = new int[0][];
+	private int rowCount;
+	private int size;
+
+	/**
+	 * Adds the tile (x,y) to the set
+	 *
+	 * @return true if the tile was not already in the set
+	 */
+	public boolean add(int x, int y) {
+		int[] runs = getRow(y, true);
+		int run = findRun(runs, x);
+
+		if (run >= 0 && x < runs[run + 1]) {
+			return false;
+		}
+
+		boolean joinsPrevious = run >= 0 && runs[run + 1] == x;
+		boolean joinsNext = run + 2 < runs.length && runs[run + 2] == x + 1;
+		if (joinsPrevious && joinsNext) {
+			// Merge the two runs on either side
+			int[] merged = new int[runs.length - 2];
+			System.arraycopy(runs, 0, merged, 0, run + 1);
+			merged[run + 1] = runs[run + 3];
+			System.arraycopy(runs, run + 4, merged, run + 2, runs.length - run - 4);
+			setRow(y, merged);
+		}
+		else if (joinsPrevious) {
+			runs[run + 1] = x + 1;
+		}
+		else if (joinsNext) {
+			runs[run + 2] = x;
+		}
+		else {
+			int[] inserted = new int[runs.length + 2];
+			System.arraycopy(runs, 0, inserted, 0, run + 2);
+			inserted[run + 2] = x;
+			inserted[run + 3] = x + 1;
+			System.arraycopy(runs, run + 2, inserted, run + 4, runs.length - run - 2);
+			setRow(y, inserted);
+		}
+
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean add(Point point) {
+		return add(point.x, point.y);
+	}
+
+	/**
+	 * Returns true if the tile (x,y) is in the set
+	 */
+	public boolean contains(int x, int y) {
+		int[] runs = getRow(y, false);
+		int run = findRun(runs, x);
+		return run >= 0 && x < runs[run + 1];
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		if (!(object instanceof Point)) {
+			return false;
+		}
+		Point point = (Point) object;
+		return contains(point.x, point.y);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory used by this set, in bytes
+	 */
+	public long estimateSize() {
+		long result = 32 + rows.length * 4L;
+		for (int[] runs : rows) {
+			if (runs != null) {
+				result += 16 + runs.length * 4L;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<Point> iterator() {
+		return new Iterator<Point>() {
+			private int row = 0;
+			private int run = 0;
+			private int x = Integer.MIN_VALUE;
+
+			@Override
+			public boolean hasNext() {
+				advance();
+				return row < rowCount;
+			}
+
+			@Override
+			public Point next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return new Point(x++, minY + row);
+			}
+
+			/**
+			 * Moves to the next tile in the set, if the current one has
+			 * already been returned
+			 */
+			private void advance() {
+				while (row < rowCount) {
+					int[] runs = rows[row] == null ? NO_RUNS : rows[row];
+					if (run < runs.length) {
+						if (x < runs[run]) {
+							x = runs[run];
+						}
+						if (x < runs[run + 1]) {
+							return;
+						}
+						run += 2;
+					}
+					else {
+						row++;
+						run = 0;
+						x = Integer.MIN_VALUE;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the index of the last run in the row starting at or before x, or
+	 * -2 if there is none
+	 */
+	private static int findRun(int[] runs, int x) {
+		int low = 0;
+		int high = runs.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (runs[middle * 2] <= x) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return high * 2;
+	}
+
+	/**
+	 * Returns the runs in row y, optionally growing (rows) to include it
+	 */
+	private int[] getRow(int y, boolean create) {
+		if (rowCount == 0 && create) {
+			minY = y;
+		}
+
+		int index = y - minY;
+		if (index >= 0 && index < rowCount) {
+			return rows[index] == null ? NO_RUNS : rows[index];
+		}
+		else if (!create) {
+			return NO_RUNS;
+		}
+
+		if (index < 0) {
+			int[][] grown = new int[rowCount - index][];
+			System.arraycopy(rows, 0, grown, -index, rowCount);
+			rows = grown;
+			rowCount -= index;
+			minY = y;
+		}
+		else {
+			// Rows are usually added in order, so grow geometrically
+			if (index >= rows.length) {
+				rows = Arrays.copyOf(rows, Math.max(index + 1, rows.length * 2));
+			}
+			rowCount = index + 1;
+		}
+		return NO_RUNS;
+	}
+
+	private void setRow(int y, int[] runs) {
+		rows[y - minY] = runs;
+	}
+}
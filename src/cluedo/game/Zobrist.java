@@ -0,0 +1,46 @@
+package cluedo.game;
+
+/**
+ * Keys for Zobrist hashing of game positions. A position's hash is the XOR of
+ * one key per feature (each player's tile or room, their remaining moves,
+ * each weapon's room and whose turn it is), so a change to one feature
+ * updates the hash in constant time by XORing out the old key and XORing in
+ * the new one.
+ *
+ * Keys are derived from their feature by a mixing function instead of being
+ * stored in a table, so huge boards don't need a key per tile per player.
+ */
+public final class Zobrist {
+	/** Key for a player (a) standing on a corridor tile (b, a tile index) */
+	public static final int TILE = 1;
+	/** Key for a player (a) in a room (b, a room index) */
+	public static final int ROOM = 2;
+	/** Key for a player (a) having some moves left (b) */
+	public static final int MOVES = 3;
+	/** Key for a weapon (a, a weapon index) being in a room (b) */
+	public static final int WEAPON = 4;
+	/** Key for it being a player's (a) turn */
+	public static final int TURN = 5;
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Returns the key for a feature
+	 *
+	 * @param kind
+	 *            kind of feature (TILE, ROOM, MOVES, WEAPON or TURN)
+	 * @param a
+	 *            first value of the feature
+	 * @param b
+	 *            second value of the feature (0 if it only has one)
+	 */
+	public static long key(int kind, int a, int b) {
+		// The finalizer of SplitMix64, which gives unrelated keys for
+		// neighbouring inputs
+		long z = ((long) kind << 58 ^ (long) a << 32 ^ (b & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -3,15 +3,18 @@ package cluedo.game.objects;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import cluedo.game.Door;
+import cluedo.game.TileSet;
 
 /**
  * Represents a room on the board. This class encapsulates the location of the
- * room on the board, its properties and its current contents.
+ * room on the board and its properties. Rooms are populated while loading and
+ * not changed afterwards, so they can be shared between games; the weapon
+ * currently in a room is tracked by Game.
  */
 public class Room implements Card {
 	/**
@@ -42,11 +45,10 @@ public class Room implements Card {
 	}
 
 	private final String name;
-	private Weapon weapon;
 	private Room passageExit;
 	private List<Door> doors = new ArrayList<Door>();
 
-	private Set<Point> points = new HashSet<Point>();
+	private TileSet points = new TileSet();
 	private BoundingBox boundingBox = new BoundingBox();
 
 	/**
@@ -67,20 +69,6 @@ public class Room implements Card {
 		return name;
 	}
 
-	/**
-	 * Returns the weapon currently in the room, or null if there isn't one
-	 */
-	public Weapon getWeapon() {
-		return this.weapon;
-	}
-
-	/**
-	 * Sets the weapon in the room to the specified weapon
-	 */
-	public void setWeapon(Weapon weapon) {
-		this.weapon = weapon;
-	}
-
 	/**
 	 * Gets the endpoint of the secret passage leading from this room, or null
 	 * if this room has no passage
@@ -100,14 +88,22 @@ public class Room implements Card {
 	 * Returns the collection of doors which lead to this room
 	 */
 	public List<Door> getDoors() {
-		return this.doors;
+		return Collections.unmodifiableList(this.doors);
 	}
 
 	/**
-	 * Returns a set of all points contained in the room
+	 * Returns a set of all points contained in the room, which iterates in
+	 * row-major order
 	 */
 	public Set<Point> getPoints() {
-		return this.points;
+		return Collections.unmodifiableSet(this.points);
+	}
+
+	/**
+	 * Returns true if the room contains the tile (x,y), including its doors
+	 */
+	public boolean contains(int x, int y) {
+		return points.contains(x, y);
 	}
 
 	/**
@@ -143,28 +139,6 @@ public class Room implements Card {
 		return doors.get(index);
 	}
 
-	/**
-	 * Returns the door closest to the given point
-	 *
-	 * @param location
-	 * 			  the location to check
-	 */
-	public Door getClosestDoor(Point location) {
-		double closestDistance = Double.MAX_VALUE;
-		Door closestDoor = null;
-		for (Door door : doors) {
-			int xDistance = door.getLocation().x - location.x;
-			int yDistance = door.getLocation().y - location.y;
-			double distance = Math.sqrt(xDistance * xDistance + yDistance * yDistance);
-
-			if (distance < closestDistance) {
-				closestDistance = distance;
-				closestDoor = door;
-			}
-		}
-		return closestDoor;
-	}
-
 	/**
 	 * Adds the point (x, y) to the collection of points this room contains. x
 	 * and y should be in board (tile) coordinates
@@ -175,7 +149,7 @@ public class Room implements Card {
 	 *            y-coordinate of the point to addToLayout
 	 */
 	public void addPoint(int x, int y) {
-		points.add(new Point(x, y));
+		points.add(x, y);
 
 		if (x < boundingBox.minX) {
 			boundingBox.minX = x;
@@ -191,6 +165,13 @@ public class Room implements Card {
 		}
 	}
 
+	/**
+	 * Returns a rough estimate of the memory used by the room, in bytes
+	 */
+	public long estimateSize() {
+		return 128 + doors.size() * 64L + points.estimateSize();
+	}
+
 	/**
 	 * Returns the point at the center of the room's bounding box
 	 */
@@ -0,0 +1,375 @@
+package cluedo.loader;
+
+import java.awt.Point;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import cluedo.game.Door;
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * Compiles loaded scenarios into a binary file, and loads them back by mapping
+ * the file into memory. Loading a compiled scenario skips text parsing
+ * entirely, and lets every process on a machine share the file through the
+ * page cache.
+ *
+ * The file layout (big-endian) is:
+ * <pre>
+ * int     magic ("CLUE") and version
+ * int     board width, board height
+ * suspects: count, then (char id, string name, int rgb, int startX, int startY)
+ * rooms:    count, then (char id, string name, spans, doors) where spans are
+ *           (count, then int y, int x, int length) and doors are
+ *           (count, then int x, int y, byte vertical)
+ * passages: count, then (int fromRoom, int toRoom) as indices into the rooms
+ * weapons:  count, then string name
+ * int     number of corridor words, then the words of the corridor bit set
+ * </pre>
+ * Strings are stored as an int byte count followed by UTF-8.
+ */
+public class CompiledScenario {
+	/** Magic number at the start of every compiled file ("CLUE") */
+	public static final int MAGIC = 0x434C5545;
+	/** Current version of the file layout */
+	public static final int VERSION = 1;
+
+	/**
+	 * Writes the scenario held by a loader to a compiled file
+	 *
+	 * @param loader
+	 *            loaded scenario
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 */
+	public static void compile(Loader loader, File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(loader.getBoardWidth());
+			out.writeInt(loader.getBoardHeight());
+
+			out.writeInt(loader.getSuspectsById().size());
+			for (Map.Entry<Character, Suspect> entry : loader.getSuspectsById().entrySet()) {
+				Suspect suspect = entry.getValue();
+				Point start = suspect.getStartLocation();
+				out.writeChar(entry.getKey());
+				writeString(out, suspect.getName());
+				out.writeInt(suspect.getColor().getRGB());
+				out.writeInt(start == null ? -1 : start.x);
+				out.writeInt(start == null ? -1 : start.y);
+			}
+
+			List<Room> rooms = new ArrayList<Room>();
+			out.writeInt(loader.getRoomsById().size());
+			for (Map.Entry<Character, Room> entry : loader.getRoomsById().entrySet()) {
+				rooms.add(entry.getValue());
+				out.writeChar(entry.getKey());
+				writeString(out, entry.getValue().getName());
+				writeSpans(out, entry.getValue());
+				writeDoors(out, entry.getValue());
+			}
+
+			List<Room> passageRooms = new ArrayList<Room>();
+			for (Room room : rooms) {
+				if (room.getPassageExit() != null) {
+					passageRooms.add(room);
+				}
+			}
+			out.writeInt(passageRooms.size());
+			for (Room room : passageRooms) {
+				out.writeInt(rooms.indexOf(room));
+				out.writeInt(rooms.indexOf(room.getPassageExit()));
+			}
+
+			out.writeInt(loader.getWeapons().size());
+			for (String name : loader.getWeapons().keySet()) {
+				writeString(out, name);
+			}
+
+			long[] words = loader.getCorridors().toLongArray();
+			out.writeInt(words.length);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads a compiled file by mapping it into memory
+	 *
+	 * @param file
+	 *            file written by compile()
+	 * @return a loader containing the compiled scenario
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if the file is not a compiled scenario, or was written by an
+	 *             unsupported version
+	 */
+	public static Loader load(File file) throws IOException, SyntaxException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+		return load(buffer);
+	}
+
+	/**
+	 * Loads a compiled scenario from a buffer (usually a mapped file)
+	 *
+	 * @param buffer
+	 *            buffer positioned at the start of the compiled data
+	 * @return a loader containing the compiled scenario
+	 * @throws SyntaxException
+	 *             if the buffer does not contain a supported compiled
+	 *             scenario, or is truncated or corrupt
+	 */
+	public static Loader load(ByteBuffer buffer) throws SyntaxException {
+		Loader loader = new Loader();
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			loader.fail("Not a compiled scenario file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			loader.fail("Unsupported compiled scenario version: " + version);
+		}
+
+		require(loader, buffer, 8);
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+			loader.fail("Invalid board size in compiled scenario: " + width + "x" + height);
+		}
+
+		List<Suspect> suspects = new ArrayList<Suspect>();
+		loader.startGroup("suspects");
+		for (int i = readCount(loader, buffer, 18); i > 0; i--) {
+			require(loader, buffer, 2);
+			char id = buffer.getChar();
+			String name = readString(loader, buffer);
+			require(loader, buffer, 12);
+			loader.addSuspect(id, name, String.format("#%06X", buffer.getInt() & 0xFFFFFF));
+			int startX = buffer.getInt();
+			int startY = buffer.getInt();
+			Suspect suspect = loader.getSuspectsById().get(id);
+			if (startX >= 0) {
+				checkPoint(loader, width, height, startX, startY);
+				suspect.setStartLocation(startX, startY);
+			}
+			suspects.add(suspect);
+		}
+
+		List<Room> rooms = new ArrayList<Room>();
+		loader.startGroup("rooms");
+		for (int i = readCount(loader, buffer, 14); i > 0; i--) {
+			require(loader, buffer, 2);
+			char id = buffer.getChar();
+			loader.addRoom(id, readString(loader, buffer));
+			Room room = loader.getRoomsById().get(id);
+			readSpans(loader, buffer, room, width, height);
+			readDoors(loader, buffer, room, width, height);
+			rooms.add(room);
+		}
+
+		for (int i = readCount(loader, buffer, 8); i > 0; i--) {
+			Room from = rooms.get(readIndex(loader, buffer, rooms.size()));
+			from.setPassageExit(rooms.get(readIndex(loader, buffer, rooms.size())));
+		}
+
+		loader.startGroup("weapons");
+		for (int i = readCount(loader, buffer, 4); i > 0; i--) {
+			loader.addWeapon(readString(loader, buffer));
+		}
+
+		int wordCount = readCount(loader, buffer, 8);
+		LongBuffer words = buffer.asLongBuffer();
+		words.limit(wordCount);
+		loader.setBoard(width, height, BitSet.valueOf(words));
+
+		loader.checkComplete();
+		return loader;
+	}
+
+	/**
+	 * Returns true if the file starts with the compiled scenario magic number
+	 *
+	 * @param file
+	 *            file to check
+	 */
+	public static boolean isCompiled(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] header = new byte[4];
+			int read = 0;
+			while (read < header.length) {
+				int count = in.read(header, read, header.length - read);
+				if (count < 0) {
+					return false;
+				}
+				read += count;
+			}
+			return ByteBuffer.wrap(header).getInt() == MAGIC;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the room's tiles as horizontal spans, in row-major order (the
+	 * order Room.getPoints() iterates in)
+	 */
+	private static void writeSpans(DataOutputStream out, Room room) throws IOException {
+		List<int[]> spans = new ArrayList<int[]>();
+		int[] span = null;
+		for (Point point : room.getPoints()) {
+			if (span != null && span[0] == point.y && span[1] + span[2] == point.x) {
+				span[2]++;
+			}
+			else {
+				span = new int[] { point.y, point.x, 1 };
+				spans.add(span);
+			}
+		}
+
+		out.writeInt(spans.size());
+		for (int[] s : spans) {
+			out.writeInt(s[0]);
+			out.writeInt(s[1]);
+			out.writeInt(s[2]);
+		}
+	}
+
+	/**
+	 * Writes the room's doors, in the order the room lists them
+	 */
+	private static void writeDoors(DataOutputStream out, Room room) throws IOException {
+		out.writeInt(room.getDoors().size());
+		for (Door door : room.getDoors()) {
+			out.writeInt(door.getLocation().x);
+			out.writeInt(door.getLocation().y);
+			out.writeByte(door.isVertical() ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Reads spans written by writeSpans() into the room
+	 */
+	private static void readSpans(Loader loader, ByteBuffer buffer, Room room, int width, int height)
+			throws SyntaxException {
+		for (int i = readCount(loader, buffer, 12); i > 0; i--) {
+			int y = buffer.getInt();
+			int x = buffer.getInt();
+			int length = buffer.getInt();
+			checkPoint(loader, width, height, x, y);
+			if (length < 0 || length > width - x) {
+				loader.fail("Room '" + room.getName() + "' extends past the edge of the board");
+			}
+			for (int end = x + length; x < end; x++) {
+				room.addPoint(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Reads doors written by writeDoors() into the room
+	 */
+	private static void readDoors(Loader loader, ByteBuffer buffer, Room room, int width, int height)
+			throws SyntaxException {
+		for (int i = readCount(loader, buffer, 9); i > 0; i--) {
+			int x = buffer.getInt();
+			int y = buffer.getInt();
+			checkPoint(loader, width, height, x, y);
+			room.addDoor(new Point(x, y), buffer.get() != 0);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(Loader loader, ByteBuffer buffer) throws SyntaxException {
+		byte[] bytes = new byte[readCount(loader, buffer, 1)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a count of items from the buffer, checking that the rest of the
+	 * buffer is long enough to hold that many items
+	 *
+	 * @param size
+	 *            the fewest bytes each item can take up
+	 * @throws SyntaxException
+	 *             if the count is negative or the buffer is too short
+	 */
+	private static int readCount(Loader loader, ByteBuffer buffer, int size) throws SyntaxException {
+		require(loader, buffer, 4);
+		int count = buffer.getInt();
+		if (count < 0) {
+			loader.fail("Invalid count in compiled scenario: " + count);
+		}
+		require(loader, buffer, (long) count * size);
+		return count;
+	}
+
+	/**
+	 * Reads an index into a list of the given size from the buffer
+	 *
+	 * @throws SyntaxException
+	 *             if the index is outside the list
+	 */
+	private static int readIndex(Loader loader, ByteBuffer buffer, int size) throws SyntaxException {
+		require(loader, buffer, 4);
+		int index = buffer.getInt();
+		if (index < 0 || index >= size) {
+			loader.fail("Invalid room index in compiled scenario: " + index);
+		}
+		return index;
+	}
+
+	/**
+	 * Checks that the buffer has at least the given number of bytes left
+	 *
+	 * @throws SyntaxException
+	 *             if the file ends too soon
+	 */
+	private static void require(Loader loader, ByteBuffer buffer, long bytes) throws SyntaxException {
+		if (buffer.remaining() < bytes) {
+			loader.fail("Compiled scenario file is truncated");
+		}
+	}
+
+	private static void checkPoint(Loader loader, int width, int height, int x, int y) throws SyntaxException {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			loader.fail("Point (" + x + "," + y + ") is outside the board in compiled scenario");
+		}
+	}
+}
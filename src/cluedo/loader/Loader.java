@@ -2,9 +2,19 @@ package cluedo.loader;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
@@ -12,7 +22,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
+import cluedo.game.ChunkedBitmap;
+import cluedo.game.FlatBitmap;
+import cluedo.game.TileBitmap;
 import cluedo.game.objects.Room;
 import cluedo.game.objects.Suspect;
 import cluedo.game.objects.Weapon;
@@ -33,6 +47,32 @@ public class Loader {
 		}
 	}
 
+	/**
+	 * The parser used to read a file. Both understand exactly the same syntax;
+	 * SCANNER reads the file in a single forward pass without regular
+	 * expressions, while PATTERN is the original line-by-line regex parser.
+	 */
+	public enum Parser {
+		PATTERN, SCANNER
+	}
+
+	/**
+	 * Receives progress updates while a scenario is read. Updates are sent
+	 * from the thread doing the loading, which may not be the event dispatch
+	 * thread.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Called each time more of the scenario has been read
+		 *
+		 * @param bytesRead
+		 *            number of bytes read so far
+		 * @param totalBytes
+		 *            total number of bytes to read
+		 */
+		void progress(long bytesRead, long totalBytes);
+	}
+
 	private static final int MAX_LINE_LENGTH = 1000;
 
 	// Matches group headers like "suspects:" or "rooms:"
@@ -52,6 +92,16 @@ public class Loader {
 	// whitespace before it
 	private static final Pattern COMMENT = Pattern.compile("^\\s*#");
 
+	/**
+	 * Boards with more tiles than this are stored in chunks (see
+	 * ChunkedBitmap), so that large areas of wall or corridor take almost no
+	 * memory
+	 */
+	public static final int HUGE_BOARD_TILES = 1 << 20;
+
+	// The first two bytes of a gzip stream
+	private static final int GZIP_MAGIC = 0x1F8B;
+
 	private Map<String, Room> rooms;
 	private Map<Character, Room> roomsById;
 	private Map<String, Suspect> suspects;
@@ -60,7 +110,153 @@ public class Loader {
 
 	private int boardWidth;
 	private int boardHeight;
-	private BitSet corridors;
+	private TileBitmap corridors;
+	// Corridors of the board currently being loaded
+	private ChunkedBitmap boardCorridors;
+
+	/**
+	 * Loads a scenario from either a text file or a file written by
+	 * CompiledScenario, depending on the file's contents. Text files may be
+	 * gzip-compressed.
+	 *
+	 * @param filename
+	 *            file to load data from
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public static Loader load(String filename) throws IOException, SyntaxException {
+		File file = new File(filename);
+		if (CompiledScenario.isCompiled(file)) {
+			return CompiledScenario.load(file);
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			return load(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads a scenario from a stream, which is not closed afterwards. The
+	 * stream may contain UTF-8 text, gzip-compressed text or a compiled
+	 * scenario.
+	 *
+	 * @param in
+	 *            stream to load data from
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public static Loader load(InputStream in) throws IOException, SyntaxException {
+		in = new BufferedInputStream(in);
+		in.mark(4);
+		int header = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = in.read();
+			header = (header << 8) | (b < 0 ? 0 : b);
+		}
+		in.reset();
+
+		if ((header >>> 16) == GZIP_MAGIC) {
+			return load(new GZIPInputStream(in));
+		}
+		else if (header == CompiledScenario.MAGIC) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			for (int count; (count = in.read(chunk)) >= 0;) {
+				out.write(chunk, 0, count);
+			}
+			return CompiledScenario.load(ByteBuffer.wrap(out.toByteArray()));
+		}
+		return new Loader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Loads a scenario from the remaining content of a buffer (eg. a file
+	 * mapped into memory, or data fetched over the network). The buffer may
+	 * contain UTF-8 text, gzip-compressed text or a compiled scenario;
+	 * compiled scenarios are read directly from the buffer without copying.
+	 *
+	 * @param buffer
+	 *            buffer to load data from
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public static Loader load(ByteBuffer buffer) throws IOException, SyntaxException {
+		return load(buffer, null);
+	}
+
+	/**
+	 * Loads a scenario from the remaining content of a buffer, as
+	 * load(ByteBuffer), reporting how much of the buffer has been read.
+	 * Loading can be cancelled by interrupting the thread, in which case an
+	 * InterruptedIOException is thrown.
+	 *
+	 * @param buffer
+	 *            buffer to load data from
+	 * @param listener
+	 *            listener to send progress updates to, or null
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public static Loader load(ByteBuffer buffer, ProgressListener listener) throws IOException,
+			SyntaxException {
+		buffer = buffer.duplicate();
+		int total = buffer.remaining();
+		if (total >= 4 && buffer.getInt(buffer.position()) == CompiledScenario.MAGIC) {
+			Loader loader = CompiledScenario.load(buffer);
+			if (listener != null) {
+				listener.progress(total, total);
+			}
+			return loader;
+		}
+
+		InputStream in = new ByteBufferInputStream(buffer);
+		if (listener != null) {
+			in = new ProgressInputStream(in, total, listener);
+		}
+		return load(in);
+	}
+
+	/**
+	 * Loads a scenario from a classpath resource (eg. a file embedded in the
+	 * application's jar)
+	 *
+	 * @param name
+	 *            name of the resource, as passed to
+	 *            ClassLoader.getResourceAsStream()
+	 * @throws FileNotFoundException
+	 *             if there is no resource with that name
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public static Loader loadResource(String name) throws IOException, SyntaxException {
+		InputStream in = Loader.class.getClassLoader().getResourceAsStream(name);
+		if (in == null) {
+			throw new FileNotFoundException("Resource not found: " + name);
+		}
+
+		try {
+			return load(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Constructs an empty object, to be populated by another class in this
+	 * package (eg. CompiledScenario)
+	 */
+	Loader() {
+	}
 
 	/**
 	 * Constructs a new object by loading data from the specified file
@@ -72,7 +268,53 @@ public class Loader {
 	 *             if unknown syntax is encountered while loading
 	 */
 	public Loader(String filename) throws IOException, SyntaxException {
-		loadData(filename);
+		this(filename, Parser.SCANNER);
+	}
+
+	/**
+	 * Constructs a new object by loading data from the specified file, using
+	 * a particular parser
+	 *
+	 * @param filename
+	 *            file to load data from
+	 * @param parser
+	 *            parser to read the file with
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public Loader(String filename, Parser parser) throws IOException, SyntaxException {
+		loadData(filename, parser);
+	}
+
+	/**
+	 * Constructs a new object by loading text from a reader, which is not
+	 * closed afterwards
+	 *
+	 * @param reader
+	 *            reader to load data from
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public Loader(Reader reader) throws IOException, SyntaxException {
+		this(reader, Parser.SCANNER);
+	}
+
+	/**
+	 * Constructs a new object by loading text from a reader, which is not
+	 * closed afterwards, using a particular parser
+	 *
+	 * @param reader
+	 *            reader to load data from
+	 * @param parser
+	 *            parser to read the data with
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public Loader(Reader reader, Parser parser) throws IOException, SyntaxException {
+		loadData(reader, parser);
 	}
 
 	/**
@@ -103,6 +345,13 @@ public class Loader {
 		return suspectsById;
 	}
 
+	/**
+	 * Returns all room ids in the file, mapped to the corresponding Room
+	 */
+	Map<Character, Room> getRoomsById() {
+		return roomsById;
+	}
+
 	/**
 	 * Returns all weapons loaded from the file
 	 *
@@ -129,13 +378,24 @@ public class Loader {
 	}
 
 	/**
-	 * Returns a representation of the corridors on the file's board
+	 * Returns a representation of the corridors on the file's board. For huge
+	 * boards this is expensive, as every tile is copied into the bit set; use
+	 * getCorridorMap() instead.
 	 *
 	 * @return A bit set containing (boardSize * boardSize) bits in 'blocks' of
 	 *         (size), such that the bit at (x + boardSize * y) is true if the
 	 *         point (x,y) is a corridor
 	 */
 	public BitSet getCorridors() {
+		return corridors.toBitSet();
+	}
+
+	/**
+	 * Returns the corridors on the file's board. Boards with more than
+	 * HUGE_BOARD_TILES tiles are stored as a ChunkedBitmap, smaller boards as
+	 * a FlatBitmap.
+	 */
+	public TileBitmap getCorridorMap() {
 		return corridors;
 	}
 
@@ -143,39 +403,46 @@ public class Loader {
 	 * Loads data from the file(name) passed to the constructor into the fields
 	 * of this object
 	 */
-	private void loadData(String filename) throws IOException, SyntaxException {
-		BufferedReader br = new BufferedReader(new FileReader(filename));
+	private void loadData(String filename, Parser parser) throws IOException, SyntaxException {
+		Reader reader = new FileReader(filename);
 
 		try {
-			String line = readDataLine(br);
-			if (line == null || !line.equals("---")) {
-				fail("YAML header not found");
-			}
-			loadGroups(br);
+			loadData(reader, parser);
 		}
 		finally {
-			br.close();
+			reader.close();
 		}
 	}
 
+	/**
+	 * Loads data from the given reader into the fields of this object
+	 */
+	private void loadData(Reader reader, Parser parser) throws IOException, SyntaxException {
+		if (parser == Parser.SCANNER) {
+			new ScenarioScanner(this, reader).scan();
+		}
+		else {
+			loadData(new BufferedReader(reader));
+		}
+	}
+
+	/**
+	 * Loads data from the given reader using the PATTERN parser
+	 */
+	private void loadData(BufferedReader br) throws IOException, SyntaxException {
+		String line = readDataLine(br);
+		if (line == null || !line.equals("---")) {
+			fail("YAML header not found");
+		}
+		loadGroups(br);
+	}
+
 	private void loadGroups(BufferedReader br) throws IOException,
 			SyntaxException {
 		while (loadGroup(br)) {
 			continue;
 		}
-
-		if (rooms == null) {
-			fail("No rooms definition found");
-		}
-		else if (suspects == null) {
-			fail("No suspects definition found");
-		}
-		else if (weapons == null) {
-			fail("No weapons definition found");
-		}
-		else if (corridors == null) {
-			fail("No board definition found");
-		}
+		checkComplete();
 	}
 
 	/**
@@ -192,28 +459,24 @@ public class Loader {
 		}
 		else if ((matcher = GROUP_HEADER.matcher(line)).find()) {
 			String title = matcher.group(1);
+			startGroup(title);
 			switch (title) {
 			case "suspects":
 				loadSuspects(br);
-				return true;
+				break;
 			case "rooms":
 				loadRooms(br);
-				return true;
+				break;
 			case "passages":
 				loadPassages(br);
-				return true;
+				break;
 			case "weapons":
 				loadWeapons(br);
-				return true;
-			default:
-				fail("Unrecognized group: " + title);
-				return false;
+				break;
 			}
+			return true;
 		}
 		else if (Pattern.matches("^---+$", line)) {
-			if (suspects == null || rooms == null || weapons == null) {
-				fail("All groups must come before the start of the board");
-			}
 			loadBoard(br, line.length());
 			return true;
 		}
@@ -224,79 +487,56 @@ public class Loader {
 	}
 
 	/**
-	 * Loads entries in the 'suspects' group, populating the (suspects) and
-	 * (suspectsById) fields. Assumes the group title has already been read.
+	 * Loads entries in the 'suspects' group. Assumes the group title has
+	 * already been read.
 	 */
 	private void loadSuspects(BufferedReader br) throws IOException,
 			SyntaxException {
-		suspects = new HashMap<String, Suspect>();
-		suspectsById = new HashMap<Character, Suspect>();
 		for (Matcher match : loadEntries(br, SUSPECT_ENTRY, "suspect")) {
-			char id = match.group(1).charAt(0);
-			String name = match.group(2).trim();
-			Color color = Color.decode(match.group(3));
-			Suspect suspect = new Suspect(id, name, color);
-			suspects.put(name, suspect);
-			suspectsById.put(id, suspect);
+			addSuspect(match.group(1).charAt(0), match.group(2).trim(), match.group(3));
 		}
 	}
 
 	/**
-	 * Loads entries in the 'rooms' group, populating the (rooms) and
-	 * (roomsById) fields. Assumes the group title has already been read.
+	 * Loads entries in the 'rooms' group. Assumes the group title has already
+	 * been read.
 	 */
 	private void loadRooms(BufferedReader br) throws IOException,
 			SyntaxException {
-		rooms = new HashMap<String, Room>();
-		roomsById = new HashMap<Character, Room>();
 		for (Matcher match : loadEntries(br, ROOM_ENTRY, "room")) {
-			char id = match.group(1).charAt(0);
-			String name = match.group(2);
-			Room room = new Room(name);
-			rooms.put(name, room);
-			roomsById.put(id, room);
+			addRoom(match.group(1).charAt(0), match.group(2));
 		}
 	}
 
 	/**
-	 * Loads entries in the 'passages' group, updating (rooms) with their links.
-	 * Assumes the group title has already been read.
+	 * Loads entries in the 'passages' group. Assumes the group title has
+	 * already been read.
 	 */
 	private void loadPassages(BufferedReader br) throws IOException,
 			SyntaxException {
 		for (Matcher match : loadEntries(br, PASSAGE_ENTRY, "passage")) {
-			String from = match.group(1);
-			String to = match.group(2);
-			if (!rooms.containsKey(from) || !rooms.containsKey(to)) {
-				fail("Cannot find room(s) for passage '" + from + "' -> '" + to + "'");
-			}
-			rooms.get(from).setPassageExit(rooms.get(to));
+			addPassage(match.group(1), match.group(2));
 		}
 	}
 
 	/**
-	 * Loads entries in the 'weapons' group, populating the (weapons) field.
-	 * Assumes the group title has already been read.
+	 * Loads entries in the 'weapons' group. Assumes the group title has
+	 * already been read.
 	 */
 	private void loadWeapons(BufferedReader br) throws IOException,
 			SyntaxException {
-		weapons = new HashMap<String, Weapon>();
 		for (Matcher match : loadEntries(br, WEAPON_ENTRY, "weapon")) {
-			String name = match.group(1);
-			weapons.put(name, new Weapon(name));
+			addWeapon(match.group(1));
 		}
 	}
 
 	/**
-	 * Attempts to load a board of the specified size, populating the
-	 * (corridors) field and adding information to other fields as necessary.
-	 * Assumes the opening line of dashes has been read, but reads the closing
-	 * line.
+	 * Attempts to load a board of the specified size. Assumes the opening line
+	 * of dashes has been read, but reads the closing line.
 	 */
 	private void loadBoard(BufferedReader br, int width) throws IOException,
 			SyntaxException {
-		boardWidth = width;
-		corridors = new BitSet();
+		startBoard(width);
 		Pattern endRow = Pattern.compile("^-{" + width + "}$");
 
 		int y;
@@ -309,21 +549,183 @@ public class Loader {
 			else if (endRow.matcher(line).find()) {
 				break;
 			}
-			else if (line.charAt(line.length() - 1) != '|') {
-				fail("Each row of the board must end with a '|'");
-			}
+			addBoardRow(line, y);
+		}
 
-			line = line.substring(0, line.length() - 1);
-			if (line.length() != width) {
-				fail("Each row of the board must be exactly " + width
-						+ " characters long (excluding the final '|')");
-			}
-			for (int x = 0; x < width; x++) {
-				parseBoardCharacter(line.charAt(x), x, y, width, line);
-			}
+		finishBoard(y);
+	}
+
+	// Methods shared by both parsers to populate this object
+
+	/**
+	 * Starts a new group with the given title, resetting any data previously
+	 * loaded for that group
+	 *
+	 * @param title
+	 *            group title, eg. "suspects"
+	 * @throws SyntaxException
+	 *             if the group is not recognized
+	 */
+	void startGroup(String title) throws SyntaxException {
+		switch (title) {
+		case "suspects":
+			suspects = new HashMap<String, Suspect>();
+			suspectsById = new HashMap<Character, Suspect>();
+			break;
+		case "rooms":
+			rooms = new HashMap<String, Room>();
+			roomsById = new HashMap<Character, Room>();
+			break;
+		case "passages":
+			break;
+		case "weapons":
+			weapons = new HashMap<String, Weapon>();
+			break;
+		default:
+			fail("Unrecognized group: " + title);
+		}
+	}
+
+	/**
+	 * Adds a suspect, populating the (suspects) and (suspectsById) fields
+	 *
+	 * @param id
+	 *            character identifying the suspect on the board
+	 * @param name
+	 *            full name of the suspect
+	 * @param color
+	 *            colour in the form "#RRGGBB"
+	 */
+	void addSuspect(char id, String name, String color) {
+		Suspect suspect = new Suspect(id, name, Color.decode(color));
+		suspects.put(name, suspect);
+		suspectsById.put(id, suspect);
+	}
+
+	/**
+	 * Adds a room, populating the (rooms) and (roomsById) fields
+	 *
+	 * @param id
+	 *            character identifying the room on the board
+	 * @param name
+	 *            name of the room
+	 */
+	void addRoom(char id, String name) {
+		Room room = new Room(name);
+		rooms.put(name, room);
+		roomsById.put(id, room);
+	}
+
+	/**
+	 * Links two rooms with a (one-way) secret passage
+	 *
+	 * @throws SyntaxException
+	 *             if either room has not been defined
+	 */
+	void addPassage(String from, String to) throws SyntaxException {
+		if (rooms == null || !rooms.containsKey(from) || !rooms.containsKey(to)) {
+			fail("Cannot find room(s) for passage '" + from + "' -> '" + to + "'");
+		}
+		rooms.get(from).setPassageExit(rooms.get(to));
+	}
+
+	/**
+	 * Adds a weapon, populating the (weapons) field
+	 */
+	void addWeapon(String name) {
+		weapons.put(name, new Weapon(name));
+	}
+
+	/**
+	 * Starts loading a board of the given width, populating the (corridors)
+	 * field
+	 *
+	 * @throws SyntaxException
+	 *             if the suspects, rooms and weapons have not been loaded yet
+	 */
+	void startBoard(int width) throws SyntaxException {
+		if (suspects == null || rooms == null || weapons == null) {
+			fail("All groups must come before the start of the board");
+		}
+		boardWidth = width;
+		boardCorridors = new ChunkedBitmap(width);
+	}
+
+	/**
+	 * Parses one row of the board (including the final '|')
+	 *
+	 * @param line
+	 *            the row as it appears in the file
+	 * @param y
+	 *            index of the row on the board
+	 */
+	void addBoardRow(CharSequence line, int y) throws SyntaxException {
+		int width = boardWidth;
+		if (line.charAt(line.length() - 1) != '|') {
+			fail("Each row of the board must end with a '|'");
+		}
+		else if (line.length() - 1 != width) {
+			fail("Each row of the board must be exactly " + width
+					+ " characters long (excluding the final '|')");
+		}
+		for (int x = 0; x < width; x++) {
+			parseBoardCharacter(line.charAt(x), x, y, width, line);
+		}
+		boardCorridors.finishRow(y);
+	}
+
+	/**
+	 * Finishes loading the board, given the number of rows read
+	 */
+	void finishBoard(int rows) {
+		boardHeight = rows + 1;
+		boardCorridors.finish(rows);
+		if ((long) boardWidth * rows > HUGE_BOARD_TILES) {
+			corridors = boardCorridors;
+		}
+		else {
+			corridors = new FlatBitmap(boardWidth, rows, boardCorridors.toBitSet());
 		}
+		boardCorridors = null;
+	}
+
+	/**
+	 * Sets the whole board at once (used when loading compiled scenarios)
+	 *
+	 * @param width
+	 *            width of the board
+	 * @param height
+	 *            height of the board
+	 * @param corridors
+	 *            corridor bit set, in the format returned by getCorridors()
+	 */
+	void setBoard(int width, int height, BitSet corridors) {
+		this.boardWidth = width;
+		this.boardHeight = height;
+		if ((long) width * height > HUGE_BOARD_TILES) {
+			this.corridors = ChunkedBitmap.fromBitSet(width, height, corridors);
+		}
+		else {
+			this.corridors = new FlatBitmap(width, height, corridors);
+		}
+	}
 
-		boardHeight = y + 1;
+	/**
+	 * Checks that all required groups and the board have been loaded
+	 */
+	void checkComplete() throws SyntaxException {
+		if (rooms == null) {
+			fail("No rooms definition found");
+		}
+		else if (suspects == null) {
+			fail("No suspects definition found");
+		}
+		else if (weapons == null) {
+			fail("No weapons definition found");
+		}
+		else if (corridors == null) {
+			fail("No board definition found");
+		}
 	}
 
 	/**
@@ -342,12 +744,12 @@ public class Loader {
 	 *            the row that this character is part of
 	 */
 	private void parseBoardCharacter(char chr, int x, int y, int width,
-			String line) throws SyntaxException {
+			CharSequence line) throws SyntaxException {
 		if (chr == ' ') {
 			return;
 		}
 		else if (chr == '.') {
-			corridors.set(x + (y * width));
+			boardCorridors.set(x, y);
 		}
 		else if (chr == '_' || chr == '/') {
 			addDoor(chr, x, y, line);
@@ -357,7 +759,7 @@ public class Loader {
 		}
 		else if (suspectsById.containsKey(chr)) {
 			suspectsById.get(chr).setStartLocation(x, y);
-			corridors.set(x + (y * width));
+			boardCorridors.set(x, y);
 		}
 		else {
 			fail("Unknown character on board at (" + x + "," + y + "): " + chr);
@@ -378,7 +780,7 @@ public class Loader {
 	 *            the door is part of)
 	 * @throws SyntaxException
 	 */
-	private void addDoor(char chr, int x, int y, String line)
+	private void addDoor(char chr, int x, int y, CharSequence line)
 			throws SyntaxException {
 		char beside = x == 0 ? line.charAt(x + 1) : line.charAt(x - 1);
 		if (!roomsById.containsKey(beside) && x < line.length() - 1) {
@@ -447,7 +849,7 @@ public class Loader {
 	/**
 	 * Throws a syntax error with the given message
 	 */
-	private void fail(String message) throws SyntaxException {
+	void fail(String message) throws SyntaxException {
 		throw new SyntaxException(message);
 	}
 }
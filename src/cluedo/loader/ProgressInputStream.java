@@ -0,0 +1,95 @@
+package cluedo.loader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import cluedo.loader.Loader.ProgressListener;
+
+/**
+ * An input stream which counts the bytes read through it, sending the count
+ * to a listener. Reading stops with an InterruptedIOException once the
+ * reading thread has been interrupted, so that a load can be cancelled.
+ */
+class ProgressInputStream extends FilterInputStream {
+	// Send an update at most once per this many bytes
+	private static final int UPDATE_INTERVAL = 64 * 1024;
+
+	private final long total;
+	private final ProgressListener listener;
+	private long read;
+	private long lastUpdate;
+
+	/**
+	 * Construct a new stream
+	 *
+	 * @param in
+	 *            stream to read
+	 * @param total
+	 *            number of bytes in the stream
+	 * @param listener
+	 *            listener to send progress updates to
+	 */
+	ProgressInputStream(InputStream in, long total, ProgressListener listener) {
+		super(in);
+		this.total = total;
+		this.listener = listener;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkInterrupted();
+		int b = super.read();
+		count(b < 0 ? -1 : 1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		checkInterrupted();
+		int count = super.read(bytes, offset, length);
+		count(count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkInterrupted();
+		long count = super.skip(n);
+		count(count);
+		return count;
+	}
+
+	@Override
+	public boolean markSupported() {
+		// Bytes read again after a reset would be counted twice
+		return false;
+	}
+
+	private void checkInterrupted() throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Loading cancelled");
+		}
+	}
+
+	/**
+	 * Adds to the number of bytes read, or reports the end of the stream if
+	 * count is negative
+	 */
+	private void count(long count) {
+		if (count < 0) {
+			if (lastUpdate != read || read == 0) {
+				lastUpdate = read;
+				listener.progress(read, total);
+			}
+			return;
+		}
+
+		read += count;
+		if (read - lastUpdate >= UPDATE_INTERVAL || read == total) {
+			lastUpdate = read;
+			listener.progress(read, total);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package cluedo.loader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * Generates random scenarios of any size, for stress and scaling tests. The
+ * board is divided into a grid of cells, each containing at most one
+ * rectangular room surrounded by corridor, so every room is reachable from
+ * every start tile. Rooms have one to four doors, each facing the corridor.
+ * The same seed and settings always produce the same scenario.
+ *
+ * Beyond the 26 letters, rooms and suspects are identified by CJK characters,
+ * so generated files must be read as UTF-8 (as Loader.load() does).
+ */
+public class ScenarioGenerator {
+	// Identifiers beyond 'A'-'Z' (rooms) and 'a'-'z' (suspects)
+	private static final char ROOM_ID_START = '\u4E00';
+	private static final char ROOM_ID_END = '\u9FA5';
+	private static final char SUSPECT_ID_START = '\u3400';
+	private static final char SUSPECT_ID_END = '\u4DB5';
+
+	/** Maximum number of rooms in a generated scenario */
+	public static final int MAX_ROOMS = 26 + (ROOM_ID_END - ROOM_ID_START + 1);
+	/** Maximum number of suspects in a generated scenario */
+	public static final int MAX_SUSPECTS = 26 + (SUSPECT_ID_END - SUSPECT_ID_START + 1);
+
+	// Width of the corridor around each room, and the smallest room size
+	private static final int CORRIDOR_WIDTH = 2;
+	private static final int MIN_ROOM_SIZE = 3;
+	private static final int MIN_CELL_SIZE = CORRIDOR_WIDTH + MIN_ROOM_SIZE;
+
+	private final int width;
+	private final int height;
+	private final long seed;
+
+	private int roomCount;
+	private int suspectCount = 6;
+	private int weaponCount = 6;
+	private int passageCount = 2;
+
+	/**
+	 * Construct a new generator. By default the board is filled with as many
+	 * rooms as fit in cells of about 12x12 tiles, with six suspects, six
+	 * weapons and two two-way passages.
+	 *
+	 * @param width
+	 *            width of the board (in tiles)
+	 * @param height
+	 *            height of the board (in tiles)
+	 * @param seed
+	 *            seed for the random layout
+	 */
+	public ScenarioGenerator(int width, int height, long seed) {
+		if (width < MIN_CELL_SIZE + CORRIDOR_WIDTH || height < MIN_CELL_SIZE + CORRIDOR_WIDTH) {
+			throw new IllegalArgumentException("Board must be at least " + (MIN_CELL_SIZE + CORRIDOR_WIDTH)
+					+ " tiles in each direction");
+		}
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		this.roomCount = Math.max(1, Math.min(MAX_ROOMS, (width / 12) * (height / 12)));
+	}
+
+	/**
+	 * Sets the number of rooms on the board
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the rooms would not fit on the board
+	 */
+	public void setRoomCount(int roomCount) {
+		if (roomCount < 1 || roomCount > MAX_ROOMS) {
+			throw new IllegalArgumentException("Room count must be between 1 and " + MAX_ROOMS);
+		}
+		this.roomCount = roomCount;
+		getColumns();
+	}
+
+	/**
+	 * Sets the number of suspects, each of which has a start tile on the board
+	 */
+	public void setSuspectCount(int suspectCount) {
+		if (suspectCount < 1 || suspectCount > MAX_SUSPECTS) {
+			throw new IllegalArgumentException("Suspect count must be between 1 and " + MAX_SUSPECTS);
+		}
+		this.suspectCount = suspectCount;
+	}
+
+	/**
+	 * Sets the number of weapons. Each weapon starts in a different room, so
+	 * there can be at most as many weapons as rooms.
+	 */
+	public void setWeaponCount(int weaponCount) {
+		if (weaponCount < 1) {
+			throw new IllegalArgumentException("There must be at least one weapon");
+		}
+		this.weaponCount = weaponCount;
+	}
+
+	/**
+	 * Sets the number of two-way passages. Each room has at most one passage,
+	 * so there can be at most half as many passages as rooms.
+	 */
+	public void setPassageCount(int passageCount) {
+		if (passageCount < 0) {
+			throw new IllegalArgumentException("Passage count can't be negative");
+		}
+		this.passageCount = passageCount;
+	}
+
+	/**
+	 * Writes the generated scenario to a writer, in the syntax described in
+	 * "data/standard.txt"
+	 *
+	 * @param out
+	 *            writer to write to (not closed afterwards)
+	 * @throws IOException
+	 */
+	public void write(Writer out) throws IOException {
+		if (weaponCount > roomCount) {
+			throw new IllegalStateException("Can't have more weapons (" + weaponCount + ") than rooms ("
+					+ roomCount + ")");
+		}
+		Random random = new Random(seed);
+		char[][] board = generateBoard(random);
+
+		out.write("---\n");
+		out.write("suspects:\n");
+		for (int i = 0; i < suspectCount; i++) {
+			out.write("  " + suspectId(i) + ": Suspect " + (i + 1)
+					+ String.format(" #%06X\n", random.nextInt(0x1000000)));
+		}
+		out.write("rooms:\n");
+		for (int i = 0; i < roomCount; i++) {
+			out.write("  " + roomId(i) + ": " + roomName(i) + "\n");
+		}
+		out.write("passages:\n");
+		List<Integer> rooms = shuffledIndices(roomCount, random);
+		for (int i = 0; i < Math.min(passageCount, roomCount / 2); i++) {
+			String from = roomName(rooms.get(i * 2));
+			String to = roomName(rooms.get(i * 2 + 1));
+			out.write("  " + from + ": " + to + "\n");
+			out.write("  " + to + ": " + from + "\n");
+		}
+		out.write("weapons:\n");
+		for (int i = 0; i < weaponCount; i++) {
+			out.write("  - Weapon " + letters(i) + "\n");
+		}
+
+		char[] dashes = new char[width];
+		for (int x = 0; x < width; x++) {
+			dashes[x] = '-';
+		}
+		out.write(dashes);
+		out.write('\n');
+		for (char[] row : board) {
+			out.write(row);
+			out.write("|\n");
+		}
+		out.write(dashes);
+		out.write('\n');
+	}
+
+	/**
+	 * Writes the generated scenario to a file, encoded as UTF-8
+	 *
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			write(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Generates the scenario and loads it, without writing it to disk
+	 *
+	 * @throws SyntaxException
+	 *             never, unless the generator has a bug
+	 */
+	public Loader toLoader() throws SyntaxException {
+		StringWriter out = new StringWriter();
+		try {
+			write(out);
+			return new Loader(new StringReader(out.toString()));
+		}
+		catch (IOException e) {
+			// Reading and writing strings doesn't throw
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the name of the room with the given index
+	 */
+	public static String roomName(int index) {
+		return "Room " + letters(index);
+	}
+
+	/**
+	 * Lays out rooms, doors and start tiles
+	 */
+	private char[][] generateBoard(Random random) {
+		char[][] board = new char[height][width];
+		for (char[] row : board) {
+			for (int x = 0; x < width; x++) {
+				row[x] = '.';
+			}
+		}
+
+		// Each cell has corridor along its top and left edges, and the board
+		// has corridor along its bottom and right edges
+		int columns = getColumns();
+		int rows = (roomCount + columns - 1) / columns;
+		int cellWidth = (width - CORRIDOR_WIDTH) / columns;
+		int cellHeight = (height - CORRIDOR_WIDTH) / rows;
+
+		List<Integer> cells = shuffledIndices(columns * rows, random);
+		for (int i = 0; i < roomCount; i++) {
+			int cell = cells.get(i);
+			int roomWidth = MIN_ROOM_SIZE + random.nextInt(cellWidth - MIN_CELL_SIZE + 1);
+			int roomHeight = MIN_ROOM_SIZE + random.nextInt(cellHeight - MIN_CELL_SIZE + 1);
+			int left = (cell % columns) * cellWidth + CORRIDOR_WIDTH
+					+ random.nextInt(cellWidth - CORRIDOR_WIDTH - roomWidth + 1);
+			int top = (cell / columns) * cellHeight + CORRIDOR_WIDTH
+					+ random.nextInt(cellHeight - CORRIDOR_WIDTH - roomHeight + 1);
+			addRoom(board, roomId(i), left, top, roomWidth, roomHeight, random);
+		}
+
+		// Start tiles are on distinct corridor tiles
+		int corridors = 0;
+		for (char[] row : board) {
+			for (char chr : row) {
+				if (chr == '.') {
+					corridors++;
+				}
+			}
+		}
+		if (suspectCount > corridors) {
+			throw new IllegalStateException("Not enough corridor tiles for " + suspectCount + " suspects");
+		}
+		for (int i = 0; i < suspectCount; i++) {
+			while (true) {
+				int x = random.nextInt(width);
+				int y = random.nextInt(height);
+				if (board[y][x] == '.') {
+					board[y][x] = suspectId(i);
+					break;
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Fills a rectangle with a room, and adds doors to between one and four of
+	 * its sides. Doors are never on corners, so the loader can always find the
+	 * room beside them.
+	 */
+	private static void addRoom(char[][] board, char id, int left, int top, int roomWidth, int roomHeight,
+			Random random) {
+		int right = left + roomWidth - 1;
+		int bottom = top + roomHeight - 1;
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				board[y][x] = id;
+			}
+		}
+
+		// Sides are top, right, bottom, left; start at a random side so every
+		// room has at least one door
+		int first = random.nextInt(4);
+		for (int side = 0; side < 4; side++) {
+			if (side != first && !random.nextBoolean()) {
+				continue;
+			}
+			int x = left + 1 + random.nextInt(roomWidth - 2);
+			int y = top + 1 + random.nextInt(roomHeight - 2);
+			switch (side) {
+			case 0:
+				board[top][x] = '_';
+				break;
+			case 1:
+				board[y][right] = '/';
+				break;
+			case 2:
+				board[bottom][x] = '_';
+				break;
+			case 3:
+				board[y][left] = '/';
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of cell columns, chosen so that cells are roughly
+	 * square
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the rooms don't fit on the board
+	 */
+	private int getColumns() {
+		int usableWidth = width - CORRIDOR_WIDTH;
+		int usableHeight = height - CORRIDOR_WIDTH;
+		int columns = (int) Math.round(Math.sqrt((double) roomCount * usableWidth / usableHeight));
+		columns = Math.max(1, Math.min(roomCount, columns));
+		int rows = (roomCount + columns - 1) / columns;
+
+		if (usableWidth / columns < MIN_CELL_SIZE || usableHeight / rows < MIN_CELL_SIZE) {
+			throw new IllegalArgumentException(roomCount + " rooms don't fit on a " + width + "x" + height
+					+ " board");
+		}
+		return columns;
+	}
+
+	private static List<Integer> shuffledIndices(int count, Random random) {
+		List<Integer> indices = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++) {
+			indices.add(i);
+		}
+		Collections.shuffle(indices, random);
+		return indices;
+	}
+
+	private static char roomId(int index) {
+		return index < 26 ? (char) ('A' + index) : (char) (ROOM_ID_START + index - 26);
+	}
+
+	private static char suspectId(int index) {
+		return index < 26 ? (char) ('a' + index) : (char) (SUSPECT_ID_START + index - 26);
+	}
+
+	/**
+	 * Returns a unique string of letters for an index (A, B, ..., Z, AA, AB,
+	 * ...), since room and weapon names can't contain digits
+	 */
+	private static String letters(int index) {
+		StringBuilder result = new StringBuilder();
+		for (index++; index > 0; index = (index - 1) / 26) {
+			result.append((char) ('A' + (index - 1) % 26));
+		}
+		return result.reverse().toString();
+	}
+}
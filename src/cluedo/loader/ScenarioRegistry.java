@@ -0,0 +1,400 @@
+package cluedo.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import cluedo.game.Scenario;
+import cluedo.loader.Loader.ProgressListener;
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * A cache of loaded scenarios, so that switching between scenarios does not
+ * parse the same file again. Files may be text (optionally gzip-compressed)
+ * or compiled scenarios. Files are looked up by path and modification
+ * time first, which costs a single file system check; if the file has changed
+ * its content hash is checked instead, so touched or copied files still share
+ * one Scenario. The least recently used scenarios are evicted once the
+ * estimated size of the cache exceeds its limit.
+ */
+public class ScenarioRegistry {
+	/** Default limit on the estimated size of cached scenarios, in bytes */
+	public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+	/** Extension added to a scenario's filename to get its distance matrix file */
+	public static final String DISTANCE_EXTENSION = ".dist";
+
+	private static final ScenarioRegistry DEFAULT = new ScenarioRegistry(DEFAULT_CAPACITY);
+
+	/**
+	 * The content of a file at the time it was last loaded
+	 */
+	private static class FileState {
+		final long modified;
+		final long length;
+		final String hash;
+
+		FileState(long modified, long length, String hash) {
+			this.modified = modified;
+			this.length = length;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * A cached scenario, with its estimated size. Scenarios grow as their
+	 * lookup tables are built, so the size is estimated again before evicting.
+	 */
+	private static class Entry {
+		final Scenario scenario;
+		long size;
+
+		Entry(Scenario scenario) {
+			this.scenario = scenario;
+			this.size = scenario.estimateSize();
+		}
+	}
+
+	private final long capacity;
+	private long size;
+
+	// File states by canonical path, and scenarios by content hash in access
+	// order (least recently used first)
+	private final Map<String, FileState> files = new HashMap<String, FileState>();
+	private final LinkedHashMap<String, Entry> scenarios = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	// Loads in progress by canonical path, so concurrent requests for the same
+	// file only parse it once
+	private final Map<String, FutureTask<Scenario>> loading = new HashMap<String, FutureTask<Scenario>>();
+
+	private ExecutorService preloader;
+
+	/**
+	 * Construct a new registry
+	 *
+	 * @param capacity
+	 *            limit on the estimated size of cached scenarios, in bytes. The
+	 *            most recently used scenario is always kept, even if it is
+	 *            larger than this.
+	 */
+	public ScenarioRegistry(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the registry shared by the whole application
+	 */
+	public static ScenarioRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the scenario defined by a file (either a text or compiled
+	 * scenario), loading it if it is not cached or has changed since it was
+	 * cached
+	 *
+	 * @param filename
+	 *            file to load
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public Scenario get(String filename) throws IOException, SyntaxException {
+		return get(filename, null);
+	}
+
+	/**
+	 * Returns the scenario defined by a file, as get(String), reporting
+	 * progress if the file has to be parsed. Nothing is reported for cached
+	 * scenarios, or if another thread is already loading the same file.
+	 * Loading can be cancelled by interrupting the thread, in which case an
+	 * InterruptedIOException is thrown.
+	 *
+	 * @param filename
+	 *            file to load
+	 * @param listener
+	 *            listener to send progress updates to, or null
+	 * @throws IOException
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered while loading
+	 */
+	public Scenario get(String filename, final ProgressListener listener) throws IOException,
+			SyntaxException {
+		final File file = new File(filename).getCanonicalFile();
+		final long modified = file.lastModified();
+		final long length = file.length();
+		final String path = file.getPath();
+
+		FutureTask<Scenario> task;
+		boolean owner = false;
+		synchronized (this) {
+			FileState state = files.get(path);
+			if (state != null && state.modified == modified && state.length == length) {
+				Entry entry = scenarios.get(state.hash);
+				if (entry != null) {
+					return entry.scenario;
+				}
+			}
+
+			task = loading.get(path);
+			if (task == null) {
+				task = new FutureTask<Scenario>(new Callable<Scenario>() {
+					@Override
+					public Scenario call() throws Exception {
+						return load(file, path, modified, length, listener);
+					}
+				});
+				loading.put(path, task);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			try {
+				task.run();
+			}
+			finally {
+				synchronized (this) {
+					loading.remove(path);
+				}
+			}
+		}
+		return result(task);
+	}
+
+	/**
+	 * Starts loading every file in a directory (and its subdirectories) in the
+	 * background, using one thread per processor. Files which fail to load are
+	 * ignored here; the error is reported again when they are requested with
+	 * get().
+	 *
+	 * @param directory
+	 *            directory to preload
+	 */
+	public void preload(File directory) {
+		File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+
+		for (File child : children) {
+			if (child.isDirectory()) {
+				preload(child);
+				continue;
+			}
+			else if (!isScenarioFile(child)) {
+				continue;
+			}
+
+			final String filename = child.getPath();
+			getPreloader().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						get(filename);
+					}
+					catch (IOException | SyntaxException e) {
+						// Not a valid scenario; get() will report it if needed
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns false for files in a scenario directory which are not
+	 * scenarios: saved distance matrices, hidden files, editor backups ending
+	 * in '~' and temporary files ending in ".tmp", such as a file which is
+	 * still being copied or a distance matrix which is still being written
+	 *
+	 * @param file
+	 *            file to check
+	 */
+	static boolean isScenarioFile(File file) {
+		String name = file.getName();
+		return !name.endsWith(DISTANCE_EXTENSION) && !name.startsWith(".") && !name.endsWith("~")
+				&& !name.endsWith(".tmp");
+	}
+
+	/**
+	 * Returns the estimated size of all cached scenarios, in bytes
+	 */
+	public synchronized long getSize() {
+		measure();
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct scenarios in the cache
+	 */
+	public synchronized int getScenarioCount() {
+		return scenarios.size();
+	}
+
+	/**
+	 * Removes all cached scenarios
+	 */
+	public synchronized void clear() {
+		files.clear();
+		scenarios.clear();
+		size = 0;
+	}
+
+	/**
+	 * Reads and hashes a file, then parses it unless a file with the same
+	 * content is already cached
+	 */
+	private Scenario load(File file, String path, long modified, long length, ProgressListener listener)
+			throws IOException, SyntaxException {
+		ByteBuffer content = map(file);
+		String hash = hash(content.duplicate());
+
+		synchronized (this) {
+			Entry entry = scenarios.get(hash);
+			if (entry != null) {
+				files.put(path, new FileState(modified, length, hash));
+				return entry.scenario;
+			}
+		}
+
+		// Files with the same content share this scenario, and so share the
+		// distance file beside this one. If this file is edited later, the
+		// saved matrix no longer matches and is computed again.
+		Scenario scenario = new Scenario(Loader.load(content, listener));
+		scenario.setDistanceFile(new File(path + DISTANCE_EXTENSION));
+		Entry entry = new Entry(scenario);
+		synchronized (this) {
+			files.put(path, new FileState(modified, length, hash));
+			Entry existing = scenarios.get(hash);
+			if (existing != null) {
+				return existing.scenario;
+			}
+
+			scenarios.put(hash, entry);
+			size += entry.size;
+			evict();
+		}
+		return entry.scenario;
+	}
+
+	/**
+	 * Removes the least recently used scenarios until the cache fits in its
+	 * capacity, always keeping the most recently used one
+	 */
+	private void evict() {
+		measure();
+		Iterator<Entry> iterator = scenarios.values().iterator();
+		while (size > capacity && scenarios.size() > 1) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Estimates the size of every cached scenario again, including the tables
+	 * they have built since they were last measured
+	 */
+	private void measure() {
+		size = 0;
+		for (Entry entry : scenarios.values()) {
+			entry.size = entry.scenario.estimateSize();
+			size += entry.size;
+		}
+	}
+
+	/**
+	 * Returns the result of a load, unwrapping the exception it threw
+	 */
+	private static Scenario result(FutureTask<Scenario> task) throws IOException, SyntaxException {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading scenario");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			else if (cause instanceof SyntaxException) {
+				throw (SyntaxException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Maps a file into memory
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the remaining content of a buffer, as a hex
+	 * string
+	 */
+	private static String hash(ByteBuffer content) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new RuntimeException(e);
+		}
+
+		digest.update(content);
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest()) {
+			result.append(String.format("%02x", b));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Returns the executor used to preload files, creating it if needed. Its
+	 * threads are daemons, so preloading never keeps the application running.
+	 */
+	private synchronized ExecutorService getPreloader() {
+		if (preloader == null) {
+			preloader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "scenario-preload");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return preloader;
+	}
+}
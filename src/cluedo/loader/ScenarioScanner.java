@@ -0,0 +1,416 @@
+package cluedo.loader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * A hand-written parser for the syntax described in "data/standard.txt". It
+ * reads the input in a single forward pass, one line at a time, without
+ * regular expressions or mark/reset. Parsed data is passed to a Loader, so the
+ * result is identical to loading with the PATTERN parser.
+ */
+class ScenarioScanner {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Loader loader;
+	private final Reader reader;
+
+	// Raw input, refilled from the reader as it is consumed
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int bufferPosition;
+	private int bufferLength;
+	private boolean skipLineFeed;
+
+	// The current line, without its line terminator
+	private char[] line = new char[256];
+	private int lineLength;
+	private CharBuffer lineView = CharBuffer.wrap(line);
+
+	// Passages in the current group, as alternating (from, to) room names
+	private List<String> passages = new ArrayList<String>();
+
+	/**
+	 * Construct a new scanner
+	 *
+	 * @param loader
+	 *            loader to populate
+	 * @param reader
+	 *            reader to scan (not closed by the scanner)
+	 */
+	ScenarioScanner(Loader loader, Reader reader) {
+		this.loader = loader;
+		this.reader = reader;
+	}
+
+	/**
+	 * Scans the whole input, populating the loader
+	 *
+	 * @throws SyntaxException
+	 *             if unknown syntax is encountered
+	 */
+	void scan() throws IOException, SyntaxException {
+		if (!nextDataLine() || !isLine("---")) {
+			loader.fail("YAML header not found");
+		}
+
+		boolean hasLine = nextDataLine();
+		while (hasLine) {
+			String title = groupTitle();
+			if (title != null) {
+				loader.startGroup(title);
+				hasLine = scanEntries(title);
+			}
+			else if (isDashes(3)) {
+				scanBoard(lineLength);
+				hasLine = nextDataLine();
+			}
+			else {
+				loader.fail("Expected group header or start of board");
+			}
+		}
+		loader.checkComplete();
+	}
+
+	/**
+	 * Scans the indented entries following a group header
+	 *
+	 * @return true if there is an unconsumed line after the entries, false if
+	 *         the end of the input was reached
+	 */
+	private boolean scanEntries(String group) throws IOException,
+			SyntaxException {
+		boolean hasLine = false;
+		while (nextDataLine()) {
+			if (line[0] != ' ' && line[0] != '\t') {
+				hasLine = true;
+				break;
+			}
+
+			switch (group) {
+			case "suspects":
+				scanSuspect();
+				break;
+			case "rooms":
+				scanRoom();
+				break;
+			case "passages":
+				scanPassage();
+				break;
+			case "weapons":
+				scanWeapon();
+				break;
+			}
+		}
+
+		// Passages are linked once the whole group has been read, so that
+		// syntax errors are reported before missing rooms
+		for (int i = 0; i < passages.size(); i += 2) {
+			loader.addPassage(passages.get(i), passages.get(i + 1));
+		}
+		passages.clear();
+		return hasLine;
+	}
+
+	/**
+	 * Scans a suspect entry of the form "  b: Mr. Black #292329"
+	 */
+	private void scanSuspect() throws SyntaxException {
+		int id = findIdentifier();
+		int colon = skipWhitespace(id + 1);
+		int hash = lineLength - 7;
+		if (id == 0 || colon >= lineLength || line[colon] != ':' || hash <= colon + 1
+				|| line[hash] != '#' || !isHexDigits(hash + 1, lineLength)
+				|| !isNameCharacters(colon + 1, hash, true)) {
+			loader.fail("Couldn't parse suspect entry");
+		}
+		loader.addSuspect(line[id], new String(line, colon + 1, hash - colon - 1).trim(),
+				new String(line, hash, 7));
+	}
+
+	/**
+	 * Scans a room entry of the form "  S: Sitting Room"
+	 */
+	private void scanRoom() throws SyntaxException {
+		int id = findIdentifier();
+		int colon = skipWhitespace(id + 1);
+		if (id == 0 || colon >= lineLength || line[colon] != ':'
+				|| !isNameCharacters(colon + 1, lineLength, false)) {
+			loader.fail("Couldn't parse room entry");
+		}
+		loader.addRoom(line[id], nameFrom(colon + 1));
+	}
+
+	/**
+	 * Scans a passage entry of the form "  Sitting Room: Bathroom"
+	 */
+	private void scanPassage() throws SyntaxException {
+		int colon = indexOf(':', 0);
+		if (colon < 2 || !isWhitespace(line[0])
+				|| !isNameCharacters(0, colon, false)
+				|| !isNameCharacters(colon + 1, lineLength, false)) {
+			loader.fail("Couldn't parse passage entry");
+		}
+
+		int fromStart = skipWhitespace(0);
+		if (fromStart == colon) {
+			fromStart = colon - 1;
+		}
+		passages.add(new String(line, fromStart, colon - fromStart));
+		passages.add(nameFrom(colon + 1));
+	}
+
+	/**
+	 * Scans a weapon entry of the form "  - Candlestick"
+	 */
+	private void scanWeapon() throws SyntaxException {
+		int dash = skipWhitespace(0);
+		if (dash == 0 || dash >= lineLength - 2 || line[dash] != '-'
+				|| !isWhitespace(line[dash + 1])
+				|| !isNameCharacters(dash + 2, lineLength, false)) {
+			loader.fail("Couldn't parse weapon entry");
+		}
+		loader.addWeapon(nameFrom(dash + 1));
+	}
+
+	/**
+	 * Scans the rows of a board of the given width. Assumes the opening line of
+	 * dashes is the current line, and consumes the closing line.
+	 */
+	private void scanBoard(int width) throws IOException, SyntaxException {
+		loader.startBoard(width);
+
+		int y;
+		for (y = 0;; y++) {
+			if (!nextDataLine()) {
+				loader.fail("Board definition must end with a sequence of " + width + " dashes");
+			}
+			else if (lineLength == width && isDashes(width)) {
+				break;
+			}
+
+			lineView.limit(lineLength);
+			loader.addBoardRow(lineView, y);
+		}
+
+		loader.finishBoard(y);
+	}
+
+	// Line reading
+
+	/**
+	 * Advances to the next line which is not empty and not a comment
+	 *
+	 * @return false if the end of the input was reached
+	 */
+	private boolean nextDataLine() throws IOException {
+		while (nextLine()) {
+			if (lineLength > 0 && !isComment()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next line into (line), treating "\n", "\r" and "\r\n" as line
+	 * terminators
+	 *
+	 * @return false if the end of the input was reached
+	 */
+	private boolean nextLine() throws IOException {
+		lineLength = 0;
+		boolean readAny = false;
+
+		while (true) {
+			if (bufferPosition == bufferLength) {
+				bufferLength = reader.read(buffer, 0, buffer.length);
+				bufferPosition = 0;
+				if (bufferLength <= 0) {
+					bufferLength = 0;
+					return readAny;
+				}
+			}
+
+			char chr = buffer[bufferPosition++];
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (chr == '\n') {
+					continue;
+				}
+			}
+			if (chr == '\n') {
+				return true;
+			}
+			else if (chr == '\r') {
+				skipLineFeed = true;
+				return true;
+			}
+
+			readAny = true;
+			if (lineLength == line.length) {
+				char[] larger = new char[line.length * 2];
+				System.arraycopy(line, 0, larger, 0, lineLength);
+				line = larger;
+				lineView = CharBuffer.wrap(line);
+			}
+			line[lineLength++] = chr;
+		}
+	}
+
+	// Line inspection
+
+	/**
+	 * Returns true if the first non-whitespace character of the line is '#'
+	 */
+	private boolean isComment() {
+		int start = skipWhitespace(0);
+		return start < lineLength && line[start] == '#';
+	}
+
+	/**
+	 * Returns true if the current line is exactly the given string
+	 */
+	private boolean isLine(String expected) {
+		if (lineLength != expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < lineLength; i++) {
+			if (line[i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the line consists only of at least (minimum) dashes
+	 */
+	private boolean isDashes(int minimum) {
+		if (lineLength < minimum) {
+			return false;
+		}
+		for (int i = 0; i < lineLength; i++) {
+			if (line[i] != '-') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the title of a group header (a line ending with lowercase
+	 * letters followed by a colon), or null if the line is not a group header
+	 */
+	private String groupTitle() {
+		int end = lineLength - 1;
+		if (end < 1 || line[end] != ':') {
+			return null;
+		}
+
+		int start = end;
+		while (start > 0 && line[start - 1] >= 'a' && line[start - 1] <= 'z') {
+			start--;
+		}
+		return start == end ? null : new String(line, start, end - start);
+	}
+
+	/**
+	 * Returns the index of the single-character ID at the start of a suspect or
+	 * room entry. This is normally the first non-whitespace character, but if
+	 * that is the colon then the ID is the whitespace character before it (as
+	 * with the PATTERN parser).
+	 */
+	private int findIdentifier() {
+		int id = skipWhitespace(0);
+		if (id > 1 && id < lineLength && line[id] == ':') {
+			int next = skipWhitespace(id + 1);
+			if (next >= lineLength || line[next] != ':') {
+				id--;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the name starting at (start) and running to the end of the line,
+	 * with leading whitespace removed. If the name is entirely whitespace, its
+	 * final character is kept (as with the PATTERN parser).
+	 */
+	private String nameFrom(int start) {
+		int nameStart = skipWhitespace(start);
+		if (nameStart == lineLength) {
+			nameStart = lineLength - 1;
+		}
+		return new String(line, nameStart, lineLength - nameStart);
+	}
+
+	/**
+	 * Returns true if the range [start, end) is not empty and only contains
+	 * letters, '.', '-', whitespace, and optionally digits
+	 */
+	private boolean isNameCharacters(int start, int end, boolean allowDigits) {
+		if (start >= end) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			char chr = line[i];
+			boolean valid = (chr >= 'a' && chr <= 'z') || (chr >= 'A' && chr <= 'Z')
+					|| chr == '.' || chr == '-' || isWhitespace(chr)
+					|| (allowDigits && chr >= '0' && chr <= '9');
+			if (!valid) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the range [start, end) only contains hexadecimal digits
+	 */
+	private boolean isHexDigits(int start, int end) {
+		for (int i = start; i < end; i++) {
+			char chr = line[i];
+			if (!((chr >= '0' && chr <= '9') || (chr >= 'a' && chr <= 'f') || (chr >= 'A' && chr <= 'F'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first non-whitespace character at or after
+	 * (start), or the line length if there is none
+	 */
+	private int skipWhitespace(int start) {
+		while (start < lineLength && isWhitespace(line[start])) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of (chr) at or after (start),
+	 * or -1 if it does not occur
+	 */
+	private int indexOf(char chr, int start) {
+		for (int i = start; i < lineLength; i++) {
+			if (line[i] == chr) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the character is whitespace (as matched by "\s" in a
+	 * regular expression)
+	 */
+	private static boolean isWhitespace(char chr) {
+		return chr == ' ' || chr == '\t' || chr == '\u000B' || chr == '\f';
+	}
+}
@@ -0,0 +1,420 @@
+package cluedo.loader;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cluedo.game.ConnectedComponents;
+import cluedo.game.Scenario;
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * Validates many scenario files in parallel. Each file is loaded with Loader
+ * (so all of its syntax rules apply), then checked for problems which only
+ * show up during a game: suspects without a start tile, start tiles shared by
+ * two suspects, and rooms which can't be reached from a start tile (even
+ * using secret passages).
+ */
+public class ScenarioValidator {
+	/**
+	 * The outcome of validating one file
+	 */
+	public static class Result {
+		private final String filename;
+		private final long bytes;
+		private final long nanos;
+		private final List<String> errors;
+		private final List<String> warnings;
+
+		Result(String filename, long bytes, long nanos, List<String> errors, List<String> warnings) {
+			this.filename = filename;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.errors = Collections.unmodifiableList(errors);
+			this.warnings = Collections.unmodifiableList(warnings);
+		}
+
+		/**
+		 * Returns the path of the file, as found in the directory
+		 */
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * Returns the size of the file in bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the time taken to load and check the file, in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the problems which make the scenario unplayable
+		 */
+		public List<String> getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Returns problems which don't stop the scenario being played, such as
+		 * unreachable areas of corridor
+		 */
+		public List<String> getWarnings() {
+			return warnings;
+		}
+
+		/**
+		 * Returns true if there are no errors
+		 */
+		public boolean isValid() {
+			return errors.isEmpty();
+		}
+	}
+
+	/**
+	 * The outcome of validating a directory
+	 */
+	public static class Summary {
+		private final List<Result> results;
+		private final long nanos;
+		private final int threads;
+
+		Summary(List<Result> results, long nanos, int threads) {
+			this.results = Collections.unmodifiableList(results);
+			this.nanos = nanos;
+			this.threads = threads;
+		}
+
+		/**
+		 * Returns the result for each file, in path order
+		 */
+		public List<Result> getResults() {
+			return results;
+		}
+
+		/**
+		 * Returns the wall-clock time taken to validate every file, in
+		 * nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the number of files with no errors
+		 */
+		public int getValidCount() {
+			int count = 0;
+			for (Result result : results) {
+				if (result.isValid()) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the total size of all files, in bytes
+		 */
+		public long getBytes() {
+			long bytes = 0;
+			for (Result result : results) {
+				bytes += result.getBytes();
+			}
+			return bytes;
+		}
+
+		/**
+		 * Returns the number of files validated per second
+		 */
+		public double getFilesPerSecond() {
+			return nanos == 0 ? 0 : results.size() / (nanos / 1e9);
+		}
+
+		/**
+		 * Returns the number of bytes validated per second
+		 */
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : getBytes() / (nanos / 1e9);
+		}
+
+		/**
+		 * Returns the summary as a JSON object, including the result for each
+		 * file
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append("{\n");
+			json.append("  \"files\": ").append(results.size()).append(",\n");
+			json.append("  \"valid\": ").append(getValidCount()).append(",\n");
+			json.append("  \"invalid\": ").append(results.size() - getValidCount()).append(",\n");
+			json.append("  \"bytes\": ").append(getBytes()).append(",\n");
+			json.append("  \"threads\": ").append(threads).append(",\n");
+			json.append(String.format(Locale.ROOT, "  \"wallMillis\": %.3f,\n", nanos / 1e6));
+			json.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.1f,\n", getFilesPerSecond()));
+			json.append(String.format(Locale.ROOT, "  \"bytesPerSecond\": %.0f,\n", getBytesPerSecond()));
+			json.append("  \"results\": [");
+			for (int i = 0; i < results.size(); i++) {
+				Result result = results.get(i);
+				json.append(i == 0 ? "\n" : ",\n");
+				json.append("    {\"file\": ").append(quote(result.getFilename()));
+				json.append(", \"bytes\": ").append(result.getBytes());
+				json.append(String.format(Locale.ROOT, ", \"millis\": %.3f", result.getNanos() / 1e6));
+				json.append(", \"valid\": ").append(result.isValid());
+				json.append(", \"errors\": ").append(quote(result.getErrors()));
+				json.append(", \"warnings\": ").append(quote(result.getWarnings()));
+				json.append('}');
+			}
+			json.append(results.isEmpty() ? "]\n" : "\n  ]\n");
+			return json.append("}\n").toString();
+		}
+	}
+
+	/**
+	 * Validates a range of files, splitting the range until each task has a
+	 * single file
+	 */
+	@SuppressWarnings("serial")
+	private class ValidateTask extends RecursiveAction {
+		private final File[] files;
+		private final Result[] results;
+		private final int start;
+		private final int end;
+
+		ValidateTask(File[] files, Result[] results, int start, int end) {
+			this.files = files;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				results[start] = validateFile(files[start]);
+			}
+			else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ValidateTask(files, results, start, middle),
+						new ValidateTask(files, results, middle, end));
+			}
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Construct a new validator using one thread per processor
+	 */
+	public ScenarioValidator() {
+		this(new ForkJoinPool());
+	}
+
+	/**
+	 * Construct a new validator using the given pool
+	 *
+	 * @param pool
+	 *            pool to run validation tasks on
+	 */
+	public ScenarioValidator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Validates every file in a directory and its subdirectories, except
+	 * hidden, backup and temporary files (see ScenarioRegistry.isScenarioFile())
+	 *
+	 * @param directory
+	 *            directory to validate
+	 * @throws IOException
+	 *             if the directory can't be read
+	 */
+	public Summary validateDirectory(File directory) throws IOException {
+		List<File> fileList = new ArrayList<File>();
+		listFiles(directory, fileList);
+		File[] files = fileList.toArray(new File[fileList.size()]);
+		Arrays.sort(files);
+
+		Result[] results = new Result[files.length];
+		long start = System.nanoTime();
+		if (files.length > 0) {
+			pool.invoke(new ValidateTask(files, results, 0, files.length));
+		}
+		return new Summary(Arrays.asList(results), System.nanoTime() - start, pool.getParallelism());
+	}
+
+	/**
+	 * Validates a single file
+	 *
+	 * @param file
+	 *            file to validate
+	 */
+	public Result validateFile(File file) {
+		List<String> errors = new ArrayList<String>();
+		List<String> warnings = new ArrayList<String>();
+
+		long start = System.nanoTime();
+		try {
+			Scenario scenario = new Scenario(Loader.load(file.getPath()));
+			checkCards(scenario, errors);
+			checkStartTiles(scenario, errors);
+			checkRoomsReachable(scenario, errors);
+			warnings.addAll(scenario.getComponents().getIsolatedRegions());
+		}
+		catch (IOException e) {
+			errors.add("Couldn't read file: " + e.getMessage());
+		}
+		catch (SyntaxException e) {
+			errors.add(e.getMessage());
+		}
+		return new Result(file.getPath(), file.length(), System.nanoTime() - start, errors, warnings);
+	}
+
+	/**
+	 * Checks that there are enough cards to deal a game: at least one of each
+	 * kind for the solution, and a room for every weapon to start in
+	 */
+	private static void checkCards(Scenario scenario, List<String> errors) {
+		int suspects = scenario.getData().getSuspects().size();
+		int rooms = scenario.getRooms().size();
+		int weapons = scenario.getData().getWeapons().size();
+		if (suspects == 0) {
+			errors.add("There are no suspects");
+		}
+		if (rooms == 0) {
+			errors.add("There are no rooms");
+		}
+		if (weapons == 0) {
+			errors.add("There are no weapons");
+		}
+		else if (weapons > rooms) {
+			errors.add("There are more weapons (" + weapons + ") than rooms (" + rooms + ") to put them in");
+		}
+	}
+
+	/**
+	 * Checks that every suspect has a start tile of their own
+	 */
+	private static void checkStartTiles(Scenario scenario, List<String> errors) {
+		Map<Point, Suspect> startTiles = new HashMap<Point, Suspect>();
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Point start = suspect.getStartLocation();
+			if (start == null) {
+				errors.add(suspect.getName() + " has no start tile");
+				continue;
+			}
+
+			Suspect other = startTiles.put(start, suspect);
+			if (other != null) {
+				errors.add(suspect.getName() + " and " + other.getName() + " share the start tile at "
+						+ describe(start));
+			}
+		}
+	}
+
+	/**
+	 * Checks that every room can be reached from every start tile, by walking
+	 * and taking secret passages
+	 */
+	private static void checkRoomsReachable(Scenario scenario, List<String> errors) {
+		ConnectedComponents components = scenario.getComponents();
+		boolean[] checked = new boolean[components.getComponentCount()];
+
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Point start = suspect.getStartLocation();
+			int startComponent = start == null ? -1 : components.getComponent(start.x, start.y);
+			if (startComponent < 0 || checked[startComponent]) {
+				continue;
+			}
+			checked[startComponent] = true;
+
+			boolean[] reachable = new boolean[components.getComponentCount()];
+			reachable[startComponent] = true;
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (Room room : scenario.getRooms()) {
+					Room exit = room.getPassageExit();
+					if (exit != null && reachable[components.getComponent(room)]
+							&& !reachable[components.getComponent(exit)]) {
+						reachable[components.getComponent(exit)] = true;
+						changed = true;
+					}
+				}
+			}
+
+			for (Room room : scenario.getRooms()) {
+				if (!reachable[components.getComponent(room)]) {
+					errors.add(room.getName() + " can't be reached from the start tile of " + suspect.getName()
+							+ " at " + describe(start));
+				}
+			}
+		}
+	}
+
+	private static void listFiles(File directory, List<File> files) throws IOException {
+		File[] children = directory.listFiles();
+		if (children == null) {
+			throw new IOException("Couldn't read directory " + directory);
+		}
+
+		for (File child : children) {
+			if (child.isDirectory()) {
+				listFiles(child, files);
+			}
+			else if (ScenarioRegistry.isScenarioFile(child)) {
+				files.add(child);
+			}
+		}
+	}
+
+	private static String describe(Point point) {
+		return "(" + point.x + "," + point.y + ")";
+	}
+
+	private static String quote(List<String> strings) {
+		StringBuilder result = new StringBuilder("[");
+		for (int i = 0; i < strings.size(); i++) {
+			result.append(i == 0 ? "" : ", ").append(quote(strings.get(i)));
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * Returns a string as a JSON string literal
+	 */
+	private static String quote(String string) {
+		StringBuilder result = new StringBuilder("\"");
+		for (int i = 0; i < string.length(); i++) {
+			char chr = string.charAt(i);
+			if (chr == '"' || chr == '\\') {
+				result.append('\\').append(chr);
+			}
+			else if (chr < 0x20) {
+				result.append(String.format(Locale.ROOT, "\\u%04x", (int) chr));
+			}
+			else {
+				result.append(chr);
+			}
+		}
+		return result.append('"').toString();
+	}
+}
@@ -0,0 +1,187 @@
+package cluedo.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import cluedo.game.Scenario;
+import cluedo.loader.Loader.SyntaxException;
+
+/**
+ * Watches a scenario file and loads it again each time it changes, so that a
+ * board can be edited without restarting the game. Loading happens on the
+ * watcher's own (daemon) thread; the listener is called on that thread, and
+ * decides when to start using the new version.
+ *
+ * Each new version is built with Scenario(Loader, Scenario), so suspects and
+ * weapons which weren't edited are the same objects as before.
+ */
+public class ScenarioWatcher {
+	/**
+	 * Receives new versions of the watched scenario
+	 */
+	public interface Listener {
+		/**
+		 * Called after the file has changed and been loaded successfully
+		 *
+		 * @param scenario
+		 *            the new version of the scenario
+		 */
+		void scenarioChanged(Scenario scenario);
+
+		/**
+		 * Called if the file changed but couldn't be loaded. The previous
+		 * version stays current, and the file is still watched.
+		 *
+		 * @param message
+		 *            description of the problem
+		 */
+		void reloadFailed(String message);
+	}
+
+	// Editors often write a file in several steps, so wait for changes to
+	// stop for this long before loading
+	private static final long SETTLE_MILLIS = 200;
+
+	private final File file;
+	private final Listener listener;
+	private final WatchService watchService;
+	private volatile Scenario current;
+	private volatile boolean closed;
+
+	/**
+	 * Starts watching a file
+	 *
+	 * @param filename
+	 *            file to watch
+	 * @param current
+	 *            the scenario currently loaded from the file
+	 * @param listener
+	 *            listener to send new versions to
+	 * @throws IOException
+	 *             if the file's directory can't be watched
+	 */
+	public ScenarioWatcher(String filename, Scenario current, Listener listener) throws IOException {
+		this.file = new File(filename).getAbsoluteFile();
+		this.current = current;
+		this.listener = listener;
+
+		watchService = FileSystems.getDefault().newWatchService();
+		file.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "scenario-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the file being watched
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the most recently loaded version of the scenario
+	 */
+	public Scenario getScenario() {
+		return current;
+	}
+
+	/**
+	 * Stops watching the file. The listener is not called again.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			// Nothing more can be done; the thread stops either way
+		}
+	}
+
+	/**
+	 * Waits for changes to the file until the watcher is closed
+	 */
+	private void watch() {
+		try {
+			while (true) {
+				if (changed(watchService.take())) {
+					// Wait until the file stops changing
+					WatchKey key;
+					while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+						changed(key);
+					}
+					reload();
+				}
+			}
+		}
+		catch (ClosedWatchServiceException e) {
+			// Closed by close()
+		}
+		catch (InterruptedException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Returns true if the events in a key include a change to the watched
+	 * file, and resets the key so more events are received
+	 */
+	private boolean changed(WatchKey key) {
+		boolean changed = false;
+		Path name = file.toPath().getFileName();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Loads the file again and sends it to the listener
+	 */
+	private void reload() {
+		Scenario scenario;
+		String error;
+		try {
+			scenario = new Scenario(Loader.load(file.getPath()), current);
+			error = null;
+		}
+		catch (IOException e) {
+			scenario = null;
+			error = "Couldn't read " + file.getName() + ": " + e.getMessage();
+		}
+		catch (SyntaxException e) {
+			scenario = null;
+			error = "Syntax error in " + file.getName() + ":\n" + e.getMessage();
+		}
+
+		if (closed) {
+			return;
+		}
+		else if (scenario == null) {
+			listener.reloadFailed(error);
+		}
+		else {
+			current = scenario;
+			listener.scenarioChanged(scenario);
+		}
+	}
+}
@@ -2,14 +2,16 @@ package cluedo.ui.console;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
-import java.util.Set;
 
 import cluedo.game.Board;
 import cluedo.game.Door;
 import cluedo.game.Game;
 import cluedo.game.GameData;
+import cluedo.game.GameSnapshot;
 import cluedo.game.Player;
+import cluedo.game.TileGrid;
 import cluedo.game.objects.Room;
+import cluedo.game.objects.Weapon;
 
 /**
  * Renders a game board to the console
@@ -55,6 +57,7 @@ public class BoardRenderer {
 		StringBuilder[] roomDisplay = new StringBuilder[boundingBox.getMaxY() - boundingBox.getMinY() + 1];
 
 		// Autotile the room's points
+		int roomIndex = board.getScenario().getRoomIndex(room);
 		for (Point point : room.getPoints()) {
 			int y = point.y - boundingBox.getMinY();
 			if (roomDisplay[y] == null) {
@@ -64,14 +67,14 @@ public class BoardRenderer {
 				}
 			}
 			setTile(roomDisplay[y], point.x - boundingBox.getMinX(),
-					getRoomTile(point, room.getPoints()));
+					getRoomTile(point.x, point.y, roomIndex));
 		}
 
 		// Draw basic information about the room
 		drawRoomName(room, boundingBox.getMinX(), boundingBox.getMinY(),
 				roomDisplay);
 		drawRoomContents(room, boundingBox.getMinX(), boundingBox.getMinY(),
-				roomDisplay, game);
+				roomDisplay, game.snapshot());
 
 		// Draw up to 9 doors, represented as numbers
 		char i = '1';
@@ -110,10 +113,25 @@ public class BoardRenderer {
 	 *            current game state (for retrieving player positions etc.)
 	 */
 	public void drawBoard(int startY, int endY, Game game) {
+		drawBoard(startY, endY, game.snapshot());
+	}
+
+	/**
+	 * Draws a part of the board as it was when a snapshot was taken. This can
+	 * be called from any thread.
+	 *
+	 * @param startY
+	 *            y-index to start drawing (inclusive)
+	 * @param endY
+	 *            y-index to end drawing (exclusive)
+	 * @param snapshot
+	 *            game state to draw (player positions etc.)
+	 */
+	public void drawBoard(int startY, int endY, GameSnapshot snapshot) {
 		startY = Math.max(0, startY);
 		endY = Math.min(boardBase.length, endY);
 
-		String[] board = buildCurrentBoard(game);
+		String[] board = buildCurrentBoard(snapshot);
 		for (int y = startY; y < endY; y++) {
 			System.out.println(board[y]);
 		}
@@ -127,12 +145,17 @@ public class BoardRenderer {
 		int height = board.getHeight();
 		int width = board.getWidth();
 
-		// Start by drawing corridors and blank space
+		// Start by drawing corridors, autotiled rooms and blank space
+		TileGrid tiles = board.getScenario().getTiles();
 		boardBase = new StringBuilder[height];
 		for (int y = 0; y < height; y++) {
 			boardBase[y] = new StringBuilder(board.getWidth());
 			for (int x = 0; x < width; x++) {
-				if (board.isCorridor(new Point(x, y))) {
+				int room = tiles.getRoomIndex(x, y);
+				if (room >= 0) {
+					appendTile(boardBase[y], getRoomTile(x, y, room));
+				}
+				else if (board.isCorridor(x, y)) {
 					appendTile(boardBase[y], SPACE + '\u00B7' + SPACE);
 				}
 				else {
@@ -141,12 +164,8 @@ public class BoardRenderer {
 			}
 		}
 
-		// Then autotile rooms and addToLayout their doors
+		// Then add doors and room names
 		for (Room room : data.getRooms()) {
-			for (Point point : room.getPoints()) {
-				setTile(boardBase[point.y], point.x,
-						getRoomTile(point, room.getPoints()));
-			}
 			for (Door door : room.getDoors()) {
 				drawDoor(door, 0, 0, boardBase, '*');
 			}
@@ -155,28 +174,27 @@ public class BoardRenderer {
 	}
 
 	/**
-	 * Returns the current board state, including players, weapon locations, etc
+	 * Returns the board state in a snapshot, including players, weapon
+	 * locations, etc
 	 */
-	private String[] buildCurrentBoard(Game game) {
-		Board board = game.getBoard();
-
+	private String[] buildCurrentBoard(GameSnapshot snapshot) {
 		StringBuilder[] copies = new StringBuilder[board.getHeight()];
 		for (int i = 0; i < boardBase.length; i++) {
 			copies[i] = new StringBuilder(boardBase[i]);
 		}
 
 		// Show player positions
-		for (Player player : game.getPlayers()) {
-			if (player.getRoom() != null) {
+		for (Player player : snapshot.getPlayers()) {
+			if (snapshot.getRoom(player) != null) {
 				continue;
 			}
-			Point location = board.getPlayerLocation(player);
+			Point location = snapshot.getLocation(player);
 			setTile(copies[location.y], location.x, SPACE + player.getToken().getIdentifier() + SPACE);
 		}
 
 		// Show room contents
-		for (Room room : game.getData().getRooms()) {
-			drawRoomContents(room, 0, 0, copies, game);
+		for (Room room : snapshot.getScenario().getData().getRooms()) {
+			drawRoomContents(room, 0, 0, copies, snapshot);
 		}
 
 		String[] result = new String[board.getHeight()];
@@ -264,18 +282,19 @@ public class BoardRenderer {
 	 *            origin y-coordinate
 	 * @param base
 	 *            intermediate board representation to draw onto
-	 * @param game
-	 *            current game state
+	 * @param snapshot
+	 *            game state to draw
 	 */
 	private void drawRoomContents(Room room, int baseX, int baseY,
-			StringBuilder[] base, Game game) {
+			StringBuilder[] base, GameSnapshot snapshot) {
 		Point2D.Float center = room.getCenterPoint();
 		String contents = "(";
-		if (room.getWeapon() != null) {
-			contents += room.getWeapon().getName() + "; ";
+		Weapon weapon = snapshot.getRoomWeapon(room);
+		if (weapon != null) {
+			contents += weapon.getName() + "; ";
 		}
-		for (Player player : game.getPlayers()) {
-			if (room.equals(player.getRoom())) {
+		for (Player player : snapshot.getPlayers()) {
+			if (room.equals(snapshot.getRoom(player))) {
 				contents += player.getToken().getIdentifier() + ", ";
 			}
 		}
@@ -344,20 +363,23 @@ public class BoardRenderer {
 	 * based on the tiles around it (so a tile in the top left corner will be
 	 * represented as a '/', bottom will be '_', etc
 	 *
-	 * @param current
-	 *            point to calculate based on
-	 * @param all
-	 *            set of all points contained in the room
+	 * @param x
+	 *            x-coordinate of the point
+	 * @param y
+	 *            y-coordinate of the point
+	 * @param room
+	 *            index of the room containing the point
 	 */
-	private String getRoomTile(Point current, Set<Point> all) {
+	private String getRoomTile(int x, int y, int room) {
+		TileGrid tiles = board.getScenario().getTiles();
 		int tileIndex = 0;
-		if (all.contains(new Point(current.x, current.y - 1)))
+		if (tiles.getRoomIndex(x, y - 1) == room)
 			tileIndex |= 0b1;
-		if (all.contains(new Point(current.x - 1, current.y)))
+		if (tiles.getRoomIndex(x - 1, y) == room)
 			tileIndex |= 0b10;
-		if (all.contains(new Point(current.x, current.y + 1)))
+		if (tiles.getRoomIndex(x, y + 1) == room)
 			tileIndex |= 0b100;
-		if (all.contains(new Point(current.x + 1, current.y)))
+		if (tiles.getRoomIndex(x + 1, y) == room)
 			tileIndex |= 0b1000;
 		return ROOM_AUTOTILE[tileIndex];
 	}
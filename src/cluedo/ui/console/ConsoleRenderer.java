@@ -115,6 +115,17 @@ public class ConsoleRenderer {
 		}
 	}
 
+	/**
+	 * Sets the game to play the next time run() is called
+	 *
+	 * @param game
+	 *            game to play
+	 */
+	public void setGame(Game game) {
+		this.game = game;
+		this.boardRenderer = new BoardRenderer(game.getBoard(), game.getData());
+	}
+
 	/**
 	 * Returns the game that is being (or will be) played by this renderer
 	 */
@@ -9,9 +9,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import cluedo.game.DistanceMatrix;
 import cluedo.game.Door;
 import cluedo.game.Game;
 import cluedo.game.Player;
+import cluedo.game.ReachabilityTable;
 import cluedo.game.Solution;
 import cluedo.game.Board.Direction;
 import cluedo.game.Board.UnableToMoveException;
@@ -69,6 +71,7 @@ public class TurnController {
 	 * turn
 	 */
 	public Result run() {
+		game.setCurrentPlayer(player);
 		int diceRoll = (int) (Math.random() * 6) + 1;
 		player.setMovesRemaining(diceRoll);
 
@@ -304,7 +307,7 @@ public class TurnController {
 				door = queryLeavingDoor(player.getRoom());
 			}
 
-			List<Direction> directions = queryMovement();
+			List<Direction> directions = queryMovement(door);
 			if (directions == null) {
 				return false;
 			}
@@ -331,6 +334,7 @@ public class TurnController {
 	private Door queryLeavingDoor(Room room) {
 		System.out.println("You are in the " + room.getName());
 		boardRenderer.drawRoomWithExits(room, game);
+		showShortestExits(room);
 		System.out.println("Enter the door you wish to leave from");
 
 		while (true) {
@@ -348,10 +352,40 @@ public class TurnController {
 		}
 	}
 
+	/**
+	 * Print which door is the shortest way to each of the other rooms, and
+	 * how many steps it takes
+	 *
+	 * @param room
+	 *            the player's current room
+	 */
+	private void showShortestExits(Room room) {
+		DistanceMatrix distances = game.getScenario().getDistances();
+		List<Door> doors = room.getDoors();
+		for (int i = 0; i < doors.size(); i++) {
+			String line = null;
+			for (Room other : game.getScenario().getRooms()) {
+				if (other == room || distances.getExit(room, other) != doors.get(i)) {
+					continue;
+				}
+				line = line == null ? "Door " + (i + 1) + " is the shortest way to the " : line + ", the ";
+				line += other.getName() + " (" + distances.getDistance(room, other) + " steps)";
+			}
+			if (line != null) {
+				System.out.println(line + ".");
+			}
+		}
+	}
+
 	/**
 	 * Get a list of directions from the player
+	 *
+	 * @param door
+	 *            the door the player is leaving from, or null if they are in a
+	 *            corridor
 	 */
-	private List<Direction> queryMovement() {
+	private List<Direction> queryMovement(Door door) {
+		showReachableRooms(door);
 		while (true) {
 			List<Direction> result = new ArrayList<Direction>();
 			System.out.println("Enter up to " + player.getMovesRemaining() + " steps you want to take, with no spaces.");
@@ -377,6 +411,40 @@ public class TurnController {
 		}
 	}
 
+	/**
+	 * Print the rooms the player can enter with their remaining moves, if any
+	 *
+	 * @param door
+	 *            the door the player is leaving from, or null if they are in a
+	 *            corridor
+	 */
+	private void showReachableRooms(Door door) {
+		int moves = player.getMovesRemaining();
+		if (moves > ReachabilityTable.MAX_ROLL) {
+			return;
+		}
+
+		Point start = door != null ? door.getPointBeside() : game.getBoard().getPlayerLocation(player);
+		if (start == null) {
+			return;
+		}
+		List<Room> rooms = game.getScenario().getReachability().getReachableRooms(start.x, start.y, moves);
+		// The room being left is always in reach, so it isn't worth listing
+		rooms.remove(player.getRoom());
+		if (rooms.isEmpty()) {
+			return;
+		}
+
+		String line = "With " + moves + " moves you can reach the ";
+		for (int i = 0; i < rooms.size(); i++) {
+			if (i > 0) {
+				line += i == rooms.size() - 1 ? " or the " : ", the ";
+			}
+			line += rooms.get(i).getName();
+		}
+		System.out.println(line + ".");
+	}
+
 	/**
 	 * Parse the given character as a direction (assumes it is one of {uldr})
 	 */
@@ -2,15 +2,18 @@ package cluedo.ui.graphical;
 
 import cluedo.game.Game;
 import cluedo.game.Player;
-import cluedo.loader.Loader;
+import cluedo.game.Scenario;
+import cluedo.loader.ScenarioWatcher;
 import cluedo.ui.graphical.components.BoardCanvas;
 import cluedo.ui.graphical.components.PlayerDisplay;
 import cluedo.ui.graphical.components.PlayerSetupPanel;
 import cluedo.ui.graphical.components.ActionButtons;
 import cluedo.ui.graphical.controls.GridPanel;
+import cluedo.ui.graphical.util.GameLoadWorker;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
@@ -26,25 +29,147 @@ public class GUIRenderer extends JFrame implements ActionListener {
     private BoardCanvas boardCanvas;
     private PlayerDisplay playerDisplay;
     private ActionButtons actionButtons;
+    private GameLoadWorker loadWorker;
+
+    // Watches the file the current game was loaded from. A new version is kept in (pendingScenario) until the game
+    // in progress (if any) is over.
+    private ScenarioWatcher watcher;
+    private Scenario pendingScenario;
+    private boolean gameInProgress;
 
     private int currentPlayerIndex;
 
+    /**
+     * Construct a new GUI renderer with no game. Call loadGame() to load one.
+     */
+    public GUIRenderer() {
+        this(null);
+    }
+
     /**
      * Construct a new GUI renderer
      *
-     * @param game game to render
+     * @param game game to render, or null if one will be loaded later
      */
     public GUIRenderer(Game game) {
         this.game = game;
         setupWindow();
     }
 
+    /**
+     * Loads a game from a scenario file in the background, replacing the current game once it has been built. Any
+     * load already in progress is cancelled. The current game can still be played while loading, and is kept if
+     * loading fails or is cancelled.
+     *
+     * @param filename file to load
+     */
+    public void loadGame(String filename) {
+        if (loadWorker != null) {
+            loadWorker.cancel(true);
+        }
+
+        loadWorker = new GameLoadWorker(this, filename) {
+            @Override
+            protected void succeeded(Game loaded) {
+                if (loadWorker == this) {
+                    loadWorker = null;
+                }
+                stopGame("");
+                setGame(loaded);
+                watch(getFilename(), loaded.getScenario());
+            }
+
+            @Override
+            protected void failed(String message) {
+                if (loadWorker == this) {
+                    loadWorker = null;
+                }
+                JOptionPane.showMessageDialog(GUIRenderer.this, message);
+            }
+        };
+        loadWorker.execute();
+    }
+
+    /**
+     * Replaces the current game
+     */
+    private void setGame(Game game) {
+        this.game = game;
+        pendingScenario = null;
+        boardCanvas.setGame(game);
+        actionButtons.setGame(game);
+    }
+
+    /**
+     * Starts watching the file a game was loaded from, so that it's loaded again whenever it's edited
+     *
+     * @param filename file to watch
+     * @param scenario scenario loaded from the file
+     */
+    private void watch(String filename, Scenario scenario) {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+
+        try {
+            watcher = new ScenarioWatcher(filename, scenario, new ScenarioWatcher.Listener() {
+                @Override
+                public void scenarioChanged(final Scenario changed) {
+                    EventQueue.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            pendingScenario = changed;
+                            if (!gameInProgress) {
+                                usePendingScenario();
+                            }
+                        }
+                    });
+                }
+
+                @Override
+                public void reloadFailed(final String message) {
+                    EventQueue.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!gameInProgress) {
+                                JOptionPane.showMessageDialog(GUIRenderer.this, message);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (IOException e) {
+            // The file can still be played, it just won't be reloaded when it changes
+        }
+    }
+
+    /**
+     * Switches to the most recently reloaded version of the current scenario, if there is one. Must only be called
+     * between games.
+     */
+    private void usePendingScenario() {
+        if (pendingScenario != null) {
+            setGame(new Game(pendingScenario));
+        }
+    }
+
     // Actions
 
     /**
      * Start a new game - get a list of players from the user and start the first turn
      */
     private void newGame() {
+        if (game == null) {
+            return;
+        }
+
+        // The previous game is over (or abandoned), so a reloaded scenario can be used now
+        if (pendingScenario != null) {
+            stopGame("");
+            usePendingScenario();
+        }
+
         int playerCount = queryPlayerCount();
         if (playerCount < 0) {
             return;
@@ -61,6 +186,7 @@ public class GUIRenderer extends JFrame implements ActionListener {
         }
         game.distributeCards();
 
+        gameInProgress = true;
         boardCanvas.setEnabled(true);
         currentPlayerIndex = -1;
         nextTurn();
@@ -76,6 +202,7 @@ public class GUIRenderer extends JFrame implements ActionListener {
 
         Player player = getCurrentPlayer();
         int dieRoll = (int) (Math.random() * 6 + 1);
+        game.setCurrentPlayer(player);
         player.setMovesRemaining(dieRoll);
         boardCanvas.startTurn(player);
         playerDisplay.startTurn(player);
@@ -87,6 +214,10 @@ public class GUIRenderer extends JFrame implements ActionListener {
      * @param message message to show on the status bar
      */
     private void stopGame(String message) {
+        gameInProgress = false;
+        if (game != null) {
+            game.setCurrentPlayer(null);
+        }
         boardCanvas.setEnabled(false);
         playerDisplay.unsetPlayer(message);
         actionButtons.startTurn(null);
@@ -200,11 +331,13 @@ public class GUIRenderer extends JFrame implements ActionListener {
                 break;
             case "turn.win":
                 stopGame(getCurrentPlayer().getName() + " wins!");
+                usePendingScenario();
                 break;
             case "turn.winByDefault":
                 for (Player player : game.getPlayers()) {
                     if (player.isInGame()) {
                         stopGame(getCurrentPlayer().getName() + " wins by default.");
+                        usePendingScenario();
                         break;
                     }
                 }
@@ -219,19 +352,10 @@ public class GUIRenderer extends JFrame implements ActionListener {
      */
     private void changeFile() {
         JFileChooser chooser = new JFileChooser();
-        chooser.setFileFilter(new FileNameExtensionFilter("Text files", "txt"));
+        chooser.setFileFilter(new FileNameExtensionFilter("Scenario files", "txt", "clue"));
         int result = chooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            try {
-                stopGame("");
-                game = new Game(new Loader(chooser.getSelectedFile().getAbsolutePath()));
-                boardCanvas.setGame(game);
-                actionButtons.setGame(game);
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, "Failed to load file. Make sure it's readable.");
-            } catch (Loader.SyntaxException e) {
-                JOptionPane.showMessageDialog(this, "Syntax error in file:\n" + e.getMessage());
-            }
+            loadGame(chooser.getSelectedFile().getAbsolutePath());
         }
     }
 
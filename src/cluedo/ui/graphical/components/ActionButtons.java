@@ -38,7 +38,7 @@ public class ActionButtons extends GridPanel implements ActionListener, Property
     /**
      * Construct a new set of turn buttons
      *
-     * @param game game that these buttons control
+     * @param game game that these buttons control, or null if it hasn't been loaded yet
      */
     public ActionButtons(Game game) {
         setGame(game);
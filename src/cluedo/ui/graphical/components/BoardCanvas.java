@@ -3,11 +3,14 @@ package cluedo.ui.graphical.components;
 import cluedo.game.Board;
 import cluedo.game.Door;
 import cluedo.game.Game;
+import cluedo.game.GameSnapshot;
 import cluedo.game.Player;
+import cluedo.game.TileGrid;
 import cluedo.game.objects.Room;
 import cluedo.game.objects.Suspect;
 import cluedo.game.objects.Weapon;
 import cluedo.ui.graphical.util.Autotiler;
+import cluedo.ui.graphical.util.MoveField;
 import cluedo.ui.graphical.util.PathFinder;
 
 import javax.swing.*;
@@ -18,7 +21,6 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -46,6 +48,7 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
 
     private Player currentPlayer;
     private Point mouseLocation;
+    private MoveField moveField;
     private PathFinder.MovePath movePath;
     private String currentToolTip;
 
@@ -54,7 +57,7 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Construct a new board canvas
      *
-     * @param game game to render
+     * @param game game to render, or null if it hasn't been loaded yet
      */
     public BoardCanvas(Game game) {
         animationTimer.start();
@@ -67,21 +70,39 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Sets the game that this canvas should display
      *
-     * @param game game to render
+     * @param game game to render, or null to show an empty board
      */
     public void setGame(Game game) {
         this.game = game;
-        this.board = game.getBoard();
+        this.board = game == null ? null : game.getBoard();
+        this.moveField = game == null ? null : new MoveField(board);
+
+        // Anything left over from the previous game refers to its board
+        if (currentPlayer != null) {
+            currentPlayer.removePropertyChangeListener(this);
+            currentPlayer = null;
+        }
+        moveAnimationPoint = null;
+        mouseLocation = null;
+        movePath = null;
+        if (game == null) {
+            cellColors = null;
+            repaint();
+            return;
+        }
 
         cellColors = new Color[board.getWidth()][board.getHeight()];
         for (int y = 0; y < board.getHeight(); y++) {
             for (int x = 0; x < board.getWidth(); x++) {
-                cellColors[x][y] = board.isCorridor(new Point(x, y)) ? CORRIDOR_COLOR : null;
-            }
-        }
-        for (Room room : game.getData().getRooms()) {
-            for (Point p : room.getPoints()) {
-                cellColors[p.x][p.y] = ROOM_COLOR;
+                switch (TileGrid.kind(board.getTile(x, y))) {
+                    case TileGrid.CORRIDOR:
+                        cellColors[x][y] = CORRIDOR_COLOR;
+                        break;
+                    case TileGrid.ROOM:
+                    case TileGrid.DOOR:
+                        cellColors[x][y] = ROOM_COLOR;
+                        break;
+                }
             }
         }
         repaint();
@@ -98,6 +119,7 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
         }
         currentPlayer = player;
         player.addPropertyChangeListener(this);
+        updateMoveField();
     }
 
     /**
@@ -115,7 +137,7 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     public void mouseClicked(MouseEvent e) {
         if (moveAnimationPoint == null && movePath != null) {
             try {
-                board.movePlayer(currentPlayer, movePath.asDirections(), movePath.getDoor());
+                board.movePlayer(currentPlayer, movePath.asPackedPath(), movePath.getDoor());
                 updateMovesRemaining(movePath.asPoints().get(movePath.size() - 1));
                 startMoveAnimation();
             } catch (Board.UnableToMoveException ex) {
@@ -134,9 +156,10 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
                     (e.getX() - startX) / tileSize,
                     (e.getY() - startY) / tileSize
             );
-            movePath = PathFinder.calculate(
-                    board, currentPlayer, board.getPlayerLocation(currentPlayer), mouseLocation
-            );
+            if (!moveField.isValid()) {
+                updateMoveField();
+            }
+            movePath = moveField.getPath(mouseLocation);
             repaint();
         }
     }
@@ -146,12 +169,39 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
      */
     @Override
     public void propertyChange(PropertyChangeEvent e) {
+        if (!e.getSource().equals(currentPlayer)) {
+            return;
+        }
+
+        // The paths start from the player's position with their remaining moves, so are recalculated when they
+        // change. Events are fired before the change is made, so wait until it has been.
+        moveField.invalidate();
+        if (e.getPropertyName().equals("movesRemaining")) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (!moveField.isValid()) {
+                        updateMoveField();
+                    }
+                }
+            });
+        }
+
         // Room can be changed outside this class, so make sure this repaints
-        if (e.getSource().equals(currentPlayer) && e.getPropertyName().equals("room")) {
+        if (e.getPropertyName().equals("room")) {
             repaint();
         }
     }
 
+    /**
+     * Calculates the paths from the current player's position, which every mouse movement then looks up
+     */
+    private void updateMoveField() {
+        if (moveField != null && currentPlayer != null) {
+            moveField.calculate(currentPlayer, board.getPlayerLocation(currentPlayer));
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,6 +224,12 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
             g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         }
 
+        if (board == null) {
+            g.setColor(WALL_COLOR);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            return;
+        }
+
         int xTileSize = getWidth() / board.getWidth();
         int yTileSize = getHeight() / board.getHeight();
         tileSize = Math.min(xTileSize, yTileSize);
@@ -191,8 +247,10 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
             }
         }
 
+        // Draw from a copy of the game state, so nothing below reads the live board or players
+        GameSnapshot snapshot = game.snapshot();
         for (Room room : game.getData().getRooms()) {
-            drawRoomInfo(g, room);
+            drawRoomInfo(g, room, snapshot);
 
             for (Door door : room.getDoors()) {
                 drawDoor(g, door);
@@ -200,12 +258,12 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
         }
 
         if (isEnabled()) {
-            for (Player player : game.getPlayers()) {
-                if (player.isInGame()) {
-                    drawPlayer(player, tileSize, g);
+            for (Player player : snapshot.getPlayers()) {
+                if (snapshot.isInGame(player)) {
+                    drawPlayer(player, tileSize, g, snapshot);
                 }
             }
-            drawMovePath(g);
+            drawMovePath(g, snapshot);
         }
         else {
             g.translate(-startX, -startY);
@@ -221,13 +279,15 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Draws the current movement path
      */
-    private void drawMovePath(Graphics g) {
-        if (mouseLocation == null || board.getPlayerLocation(currentPlayer) == null
+    private void drawMovePath(Graphics g, GameSnapshot snapshot) {
+        if (mouseLocation == null || snapshot.getLocation(currentPlayer) == null
                 || !(board.isCorridor(mouseLocation) || board.isDoor(mouseLocation))) {
             return;
         }
 
-        if (movePath == null) {
+        // Another player may have moved onto the end of the path since it was found
+        Point end = movePath == null ? null : movePath.asPoints().get(movePath.size() - 1);
+        if (end == null || snapshot.isBlocked(currentPlayer, end.x, end.y)) {
             drawTile(g, mouseLocation.x, mouseLocation.y, CANNOT_MOVE_COLOR);
         }
         else {
@@ -242,10 +302,10 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Draws information about the room and its contents (name, contained weapon, players)
      */
-    private void drawRoomInfo(Graphics g, Room room) {
+    private void drawRoomInfo(Graphics g, Room room, GameSnapshot snapshot) {
         drawRoomName(room, tileSize, g);
-        drawRoomWeapon(room, tileSize, g);
-        drawRoomPlayers(room, tileSize, g);
+        drawRoomWeapon(room, tileSize, g, snapshot);
+        drawRoomPlayers(room, tileSize, g, snapshot);
 
         if (mouseLocation != null && currentToolTip == null && room.getPassageExit() != null) {
             Room.BoundingBox boundingBox = room.getBoundingBox();
@@ -277,11 +337,11 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Draws the weapon a room contains, positioned below the room name
      */
-    private void drawRoomWeapon(Room room, int tileSize, Graphics g) {
+    private void drawRoomWeapon(Room room, int tileSize, Graphics g, GameSnapshot snapshot) {
         Font font = new Font(Font.SANS_SERIF, Font.PLAIN, (int) (tileSize * 0.5));
         g.setFont(font);
 
-        Weapon weapon = room.getWeapon();
+        Weapon weapon = snapshot.getRoomWeapon(room);
         if (weapon == null) {
             return;
         }
@@ -305,13 +365,8 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Draws all players inside a particular room, positioned above the room name
      */
-    private void drawRoomPlayers(Room room, int tileSize, Graphics g) {
-        List<Player> roomPlayers = new ArrayList<>();
-        for (Player player : game.getPlayers()) {
-            if (player.isInGame() && player.getRoom() != null && player.getRoom().equals(room)) {
-                roomPlayers.add(player);
-            }
-        }
+    private void drawRoomPlayers(Room room, int tileSize, Graphics g, GameSnapshot snapshot) {
+        List<Player> roomPlayers = snapshot.getPlayersInRoom(room);
 
         Point2D.Float center = room.getCenterPoint();
         int realX = (int)((center.x - (roomPlayers.size() / 2.0f)) * tileSize);
@@ -352,9 +407,9 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
     /**
      * Draws the specified player token (if the player is in a corridor)
      */
-    private void drawPlayer(Player player, int tileSize, Graphics g) {
-        if (player.getRoom() == null) {
-            Point point = board.getPlayerLocation(player);
+    private void drawPlayer(Player player, int tileSize, Graphics g, GameSnapshot snapshot) {
+        if (snapshot.getRoom(player) == null) {
+            Point point = snapshot.getLocation(player);
             if (player == currentPlayer && moveAnimationPoint != null) {
                 point = moveAnimationPoint;
                 drawPlayerToken(player.getToken(), point.x, point.y, g);
@@ -534,7 +589,7 @@ public class BoardCanvas extends JPanel implements MouseListener, MouseMotionLis
             }
         }
         else {
-            Board.Direction direction = movePath.asDirections().get(moveAnimationStep);
+            Board.Direction direction = movePath.asPackedPath().get(moveAnimationStep);
             switch (direction) {
                 case LEFT:
                     moveAnimationPoint.x = Math.max((int) (moveAnimationPoint.x - (tileSize * speed)), currentTarget.x);
@@ -0,0 +1,123 @@
+package cluedo.ui.graphical.util;
+
+import cluedo.game.Game;
+import cluedo.loader.Loader;
+import cluedo.loader.ScenarioRegistry;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads a scenario and builds a game from it on a background thread, so the Event Dispatch Thread is never blocked by
+ * parsing. A progress monitor based on the number of bytes read is shown if loading takes more than a moment, and
+ * the user can cancel it. Subclasses receive the finished game (or the error) on the Event Dispatch Thread.
+ */
+public abstract class GameLoadWorker extends SwingWorker<Game, Void> {
+    private final String filename;
+    private final ProgressMonitor monitor;
+    private final Timer cancelTimer;
+
+    /**
+     * Construct a new worker. Call execute() to start loading.
+     *
+     * @param parent component to show the progress monitor over
+     * @param filename file to load the scenario from
+     */
+    public GameLoadWorker(Component parent, String filename) {
+        this.filename = filename;
+
+        monitor = new ProgressMonitor(parent, "Loading " + new File(filename).getName(), null, 0, 100);
+        addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                if (e.getPropertyName().equals("progress")) {
+                    monitor.setProgress((Integer) e.getNewValue());
+                }
+            }
+        });
+
+        // Building the scenario after parsing sends no progress, so check for cancellation separately
+        cancelTimer = new Timer(100, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (monitor.isCanceled()) {
+                    cancel(true);
+                }
+            }
+        });
+        cancelTimer.start();
+    }
+
+    /**
+     * Returns the file being loaded
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Game doInBackground() throws Exception {
+        Loader.ProgressListener listener = new Loader.ProgressListener() {
+            @Override
+            public void progress(long bytesRead, long totalBytes) {
+                if (totalBytes > 0) {
+                    // Leave the last step for building the game
+                    setProgress((int) Math.min(99, bytesRead * 100 / totalBytes));
+                }
+            }
+        };
+        return new Game(ScenarioRegistry.getDefault().get(filename, listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void done() {
+        cancelTimer.stop();
+        monitor.close();
+        if (isCancelled()) {
+            return;
+        }
+
+        try {
+            succeeded(get());
+        } catch (InterruptedException e) {
+            // Can't happen, as the worker has finished
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                failed("Failed to load file. Make sure it's readable.");
+            } else if (cause instanceof Loader.SyntaxException) {
+                failed("Syntax error in file:\n" + cause.getMessage());
+            } else {
+                failed("Failed to load file:\n" + cause);
+            }
+        }
+    }
+
+    /**
+     * Called on the Event Dispatch Thread once the game has been built
+     *
+     * @param game the loaded game
+     */
+    protected abstract void succeeded(Game game);
+
+    /**
+     * Called on the Event Dispatch Thread if the scenario couldn't be loaded. Not called if loading was cancelled.
+     *
+     * @param message description of the problem, for showing to the user
+     */
+    protected abstract void failed(String message);
+}
@@ -0,0 +1,268 @@
+package cluedo.ui.graphical.util;
+
+import cluedo.game.Board;
+import cluedo.game.Door;
+import cluedo.game.Player;
+import cluedo.game.TileGrid;
+import cluedo.game.objects.Room;
+import cluedo.ui.graphical.util.PathFinder.MovePath;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * The shortest movement path from a player's position to every tile within their remaining moves, found with one
+ * breadth-first search. While the player's position and remaining moves stay the same, the path to any tile is found
+ * by following the parent of each tile back to the start, without searching again.
+ *
+ * A player in a room can leave by any of its doors, so the search starts from the tile beside every door at once,
+ * one step away. Paths never go back into the room being left. The work arrays are reused by every search and only
+ * grown when needed, and visited tiles are marked with the number of the search, so nothing has to be cleared between
+ * searches. A field is not thread-safe. PathFinder uses a field to find the path to a single goal.
+ *
+ * Other players are checked when a path is looked up rather than during the search. Players can walk past each other,
+ * so other players moving never changes the shortest path to a tile, only whether a move can end there. The field
+ * stays valid while other players move, and only needs calculating again when this player moves or their remaining
+ * moves change.
+ */
+public class MoveField {
+    // Offsets to the tiles left, right, above and below a tile
+    private static final int[] NEIGHBOUR_X = { -1, 1, 0, 0 };
+    private static final int[] NEIGHBOUR_Y = { 0, 0, -1, 1 };
+
+    private final Board board;
+    private final TileGrid grid;
+    private Player player;
+
+    // Work arrays, indexed by tile within the searched area
+    private int[] queue = new int[0];
+    private int[] parents = new int[0];
+    private int[] visited = new int[0];
+    // Tiles whose element of visited is this were reached by the current field
+    private int generation;
+
+    // The searched area (empty if no tiles can be reached), and whether it is up to date
+    private boolean valid;
+    private int left;
+    private int top;
+    private int span;
+    private int rows;
+
+    // The tiles the search started from, and the door left by to reach each one (null if not leaving a room)
+    private final List<Integer> starts = new ArrayList<>();
+    private final List<Door> startDoors = new ArrayList<>();
+
+    /**
+     * Construct a new, invalid field
+     *
+     * @param board board to calculate paths on
+     */
+    public MoveField(Board board) {
+        this.board = board;
+        this.grid = board.getScenario().getTiles();
+    }
+
+    /**
+     * Calculates the paths from a player's position, with their current number of remaining moves
+     *
+     * @param player player to calculate from
+     * @param currentPosition player's current position (used as a starting point if the player is not in a room)
+     */
+    public void calculate(Player player, Point currentPosition) {
+        invalidate();
+        valid = true;
+        this.player = player;
+        Room room = player.getRoom();
+        int maxSteps = player.getMovesRemaining();
+
+        // Leaving a room takes a step, to the tile beside the door
+        List<Point> startPoints = new ArrayList<>();
+        if (room != null) {
+            maxSteps--;
+            for (Door door : room.getDoors()) {
+                Point beside = door.getPointBeside();
+                if (grid.isCorridor(beside.x, beside.y)) {
+                    startPoints.add(beside);
+                    startDoors.add(door);
+                }
+            }
+        }
+        else if (currentPosition != null) {
+            startPoints.add(currentPosition);
+            startDoors.add(null);
+        }
+        if (maxSteps < 0 || startPoints.isEmpty()) {
+            startDoors.clear();
+            return;
+        }
+
+        // Only tiles within maxSteps of a start can be on a path
+        long minX = Long.MAX_VALUE;
+        long minY = Long.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        long maxY = Long.MIN_VALUE;
+        for (Point point : startPoints) {
+            minX = Math.min(minX, point.x - (long) maxSteps);
+            minY = Math.min(minY, point.y - (long) maxSteps);
+            maxX = Math.max(maxX, point.x + (long) maxSteps);
+            maxY = Math.max(maxY, point.y + (long) maxSteps);
+        }
+        left = (int) Math.max(0, minX);
+        top = (int) Math.max(0, minY);
+        span = (int) Math.min(board.getWidth() - 1, maxX) - left + 1;
+        rows = (int) Math.min(board.getHeight() - 1, maxY) - top + 1;
+        prepare(span * rows);
+
+        if (room != null) {
+            // The path can't go back into the room it left
+            for (Door door : room.getDoors()) {
+                Point location = door.getLocation();
+                if (contains(location.x, location.y)) {
+                    visited[indexOf(location.x, location.y)] = generation;
+                    parents[indexOf(location.x, location.y)] = -1;
+                }
+            }
+        }
+
+        int head = 0;
+        int tail = 0;
+        for (Point point : startPoints) {
+            int start = indexOf(point.x, point.y);
+            if (visited[start] != generation) {
+                visited[start] = generation;
+                parents[start] = -1;
+                queue[tail++] = start;
+                starts.add(start);
+            }
+            else {
+                startDoors.remove(starts.size());
+            }
+        }
+
+        // The queue holds one distance at a time, followed by the next
+        int distance = 0;
+        int levelEnd = tail;
+        while (head < tail && distance < maxSteps) {
+            int current = queue[head++];
+            int x = left + current % span;
+            int y = top + current / span;
+
+            // Doors are the end of a move
+            if (TileGrid.kind(grid.getTile(x, y)) != TileGrid.DOOR) {
+                for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                    int nextX = x + NEIGHBOUR_X[i];
+                    int nextY = y + NEIGHBOUR_Y[i];
+                    if (!contains(nextX, nextY)) {
+                        continue;
+                    }
+                    int next = indexOf(nextX, nextY);
+                    if (visited[next] != generation && canEnter(nextX, nextY, x, y)) {
+                        visited[next] = generation;
+                        parents[next] = current;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+
+            if (head == levelEnd) {
+                distance++;
+                levelEnd = tail;
+            }
+        }
+    }
+
+    /**
+     * Forgets the paths, eg. after the player has moved. isValid() returns false until the next calculate().
+     */
+    public void invalidate() {
+        valid = false;
+        span = 0;
+        rows = 0;
+        starts.clear();
+        startDoors.clear();
+    }
+
+    /**
+     * Returns true if the field has been calculated since it was last invalidated
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the shortest movement path to a tile, or null if it can't be reached with the player's remaining
+     * moves, another player is on it (or the field isn't valid)
+     *
+     * @param goal point to move to
+     */
+    public MovePath getPath(Point goal) {
+        if (!isValid() || !contains(goal.x, goal.y) || board.isBlocked(player, goal.x, goal.y)) {
+            return null;
+        }
+        int end = indexOf(goal.x, goal.y);
+        if (visited[end] != generation) {
+            return null;
+        }
+
+        List<Point> points = new ArrayList<>();
+        int tile = end;
+        while (true) {
+            points.add(new Point(left + tile % span, top + tile / span));
+            if (parents[tile] < 0) {
+                break;
+            }
+            tile = parents[tile];
+        }
+
+        // The doors of the room are marked as visited without being reached
+        int start = starts.indexOf(tile);
+        if (start < 0) {
+            return null;
+        }
+        Collections.reverse(points);
+        return new MovePath(points, startDoors.get(start));
+    }
+
+    /**
+     * Returns true if the tile (x,y) is a corridor, or a door which can be entered from the tile (fromX,fromY)
+     */
+    private boolean canEnter(int x, int y, int fromX, int fromY) {
+        int tile = grid.getTile(x, y);
+        switch (TileGrid.kind(tile)) {
+            case TileGrid.CORRIDOR:
+                return true;
+            case TileGrid.DOOR:
+                return TileGrid.isVerticalDoor(tile) ? y == fromY : x == fromX;
+            default:
+                return false;
+        }
+    }
+
+    private boolean contains(int x, int y) {
+        return x >= left && x < left + span && y >= top && y < top + rows;
+    }
+
+    private int indexOf(int x, int y) {
+        return (x - left) + span * (y - top);
+    }
+
+    /**
+     * Starts a new search over the specified number of tiles, growing the work arrays if they are too small
+     */
+    private void prepare(int tiles) {
+        if (queue.length < tiles) {
+            queue = new int[tiles];
+            parents = new int[tiles];
+            visited = new int[tiles];
+            generation = 0;
+        }
+
+        generation++;
+        if (generation == 0) {
+            // Every number has been used, so start again from a cleared array
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+    }
+}
@@ -3,23 +3,32 @@ package cluedo.ui.graphical.util;
 import cluedo.game.Board;
 import cluedo.game.Board.Direction;
 import cluedo.game.Door;
+import cluedo.game.PackedPath;
 import cluedo.game.Player;
-import cluedo.game.objects.Room;
+import cluedo.game.ReachabilityTable;
 
 import java.awt.*;
 import java.util.*;
 import java.util.List;
 
 /**
- * Uses A* path-finding to construct a path from one point to another
+ * Finds a shortest movement path from a player's position to one goal. The search itself is done by a MoveField, so
+ * a player in a room leaves by whichever door is best; this class first rejects goals which can be ruled out without
+ * searching, using the board's connected regions and (for rolls of up to ReachabilityTable.MAX_ROLL) the scenario's
+ * reachability table. To look up paths to many goals from the same position, use a MoveField directly. A path finder
+ * is not thread-safe.
  */
 public class PathFinder {
+    private final Board board;
+    private final MoveField field;
+
     /**
      * Represents a movement path on the board, optionally ending in a door
      */
     public static class MovePath {
         private List<Point> points;
         private Door door;
+        private PackedPath steps;
 
         /**
          * Construct a new movement path
@@ -30,216 +39,101 @@ public class PathFinder {
         public MovePath(List<Point> points, Door door) {
             this.points = points;
             this.door = door;
-        }
-
-        /**
-         * Returns the door that this path was constructed with
-         */
-        public Door getDoor() {
-            return door;
-        }
-
-        /**
-         * Returns the path as a list of points
-         */
-        public List<Point> asPoints() {
-            return points;
-        }
 
-        /**
-         * Calculates a list of directions representing the path
-         *
-         * @return the computed list
-         */
-        public List<Direction> asDirections() {
-            List<Direction> result = new ArrayList<>();
+            steps = new PackedPath(points.size());
             Point current = points.get(0);
             for (int i = 1; i < points.size(); i++) {
                 Point next = points.get(i);
                 if (next.x < current.x) {
-                    result.add(Direction.LEFT);
+                    steps.add(Direction.LEFT);
                 }
                 else if (next.x > current.x) {
-                    result.add(Direction.RIGHT);
+                    steps.add(Direction.RIGHT);
                 }
                 else if (next.y < current.y) {
-                    result.add(Direction.UP);
+                    steps.add(Direction.UP);
                 }
                 else {
-                    result.add(Direction.DOWN);
+                    steps.add(Direction.DOWN);
                 }
                 current = next;
             }
-            return result;
         }
 
         /**
-         * Returns the number of points in the path, including the start and end
-         */
-        public int size() {
-            return points.size();
-        }
-    }
-
-    /**
-     * Represents a node in the A* search queue
-     */
-    private static class Node implements Comparable<Node> {
-        private Node parent;
-        private Point point;
-        private int distanceSoFar;
-        private double heuristic;
-
-        /**
-         * Construct a new node
-         *
-         * @param parent the parent node in the tree
-         * @param current the point that this node represents
-         * @param goal the desired end point (used to calculate heuristic etc.)
-         */
-        public Node(Node parent, Point current, Point goal) {
-            this.parent = parent;
-            this.point = current;
-            this.distanceSoFar = (parent == null) ? 0 : parent.getDistanceSoFar() + 1;
-            this.heuristic = distanceSoFar + distanceTo(goal);
-        }
-
-        /**
-         * Returns the point that this node represents
-         */
-        public Point getPoint() {
-            return point;
-        }
-
-        /**
-         * Returns the parent node in the tree
+         * Returns the door that this path was constructed with
          */
-        public Node getParent() {
-            return parent;
+        public Door getDoor() {
+            return door;
         }
 
         /**
-         * Returns the number of moves required to get to this node
+         * Returns the path as a list of points
          */
-        public int getDistanceSoFar() {
-            return distanceSoFar;
+        public List<Point> asPoints() {
+            return points;
         }
 
         /**
-         * {@inheritDoc}
+         * Returns the steps along the path, packed 2 bits per step
          */
-        @Override
-        public int compareTo(Node other) {
-            return Double.compare(this.heuristic, other.heuristic);
+        public PackedPath asPackedPath() {
+            return steps;
         }
 
         /**
-         * {@inheritDoc}
+         * Returns a read-only list of directions representing the path
          */
-        @Override
-        public boolean equals(Object other) {
-            return other instanceof Node && ((Node) other).getPoint().equals(point);
+        public List<Direction> asDirections() {
+            return steps.asList();
         }
 
         /**
-         * {@inheritDoc}
+         * Returns the number of points in the path, including the start and end
          */
-        @Override
-        public int hashCode() {
-            return point.hashCode();
+        public int size() {
+            return points.size();
         }
+    }
 
-        /**
-         * Returns the Euclidean distance to the specified point
-         *
-         * @param goal point to calculate distance to
-         */
-        private double distanceTo(Point goal) {
-            int xDistance = point.x - goal.x;
-            int yDistance = point.y - goal.y;
-            return Math.sqrt(xDistance * xDistance + yDistance * yDistance);
-        }
+    /**
+     * Construct a new path finder
+     *
+     * @param board board to calculate paths on
+     */
+    public PathFinder(Board board) {
+        this.board = board;
+        this.field = new MoveField(board);
     }
 
     /**
      * Calculates a movement path from a player's position to the specified goal, ensuring that it is not longer than
      * the player's number of remaining moves
      *
-     * @param board board to calculate path on
      * @param player player to calculate from
      * @param currentPosition player's current position (used as a starting point if the player is not in a room)
      * @param goal point to move to
      */
-    public static MovePath calculate(Board board, Player player, Point currentPosition, Point goal) {
-        int maxSteps = player.getMovesRemaining();
-        Door exitDoor = null;
-        if (player.getRoom() != null) {
-            exitDoor = player.getRoom().getClosestDoor(goal);
-            currentPosition = exitDoor.getPointBeside();
-            maxSteps--;
-        }
-
-        PriorityQueue<Node> nodes = new PriorityQueue<>();
-        Set<Node> visited = new HashSet<>();
-        nodes.add(new Node(null, currentPosition, goal));
-        while (!nodes.isEmpty()) {
-            Node current = nodes.poll();
-            if (visited.contains(current) || current.getDistanceSoFar() > maxSteps) {
-                continue;
-            }
-            else if (exitDoor != null && current.getPoint().equals(exitDoor.getLocation())) {
-                continue;
-            }
-            else if (current.getPoint().equals(goal)) {
-                return buildPath(current, exitDoor);
-            }
-            visited.add(current);
-
-            if (!board.isDoor(current.getPoint())) {
-                addNeighbours(board, goal, nodes, current);
-            }
+    public MovePath calculate(Player player, Point currentPosition, Point goal) {
+        // Don't search the whole area within reach if the goal is in a different part of the board. Other players
+        // don't block the way, so only matter if they are on the goal.
+        if (!board.canReach(player, goal) || board.isBlocked(player, goal.x, goal.y)) {
+            return null;
         }
-        return null;
-    }
 
-    /**
-     * Adds traversable neighbours of the specified node into the priority queue
-     *
-     * @param board board to calculate based on
-     * @param goal desired end point of the path
-     * @param nodes priority queue of nodes
-     * @param current node to check neighbours of
-     */
-    private static void addNeighbours(Board board, Point goal, PriorityQueue<Node> nodes, Node current) {
-        Point point = current.getPoint();
-        Point[] surrounding = new Point[] {
-                new Point(point.x - 1, point.y),
-                new Point(point.x + 1, point.y),
-                new Point(point.x, point.y - 1),
-                new Point(point.x, point.y + 1)
-        };
-        for (Point beside : surrounding) {
-            if (board.isCorridor(beside) || board.canEnterDoor(beside, point)) {
-                nodes.add(new Node(current, beside, goal));
+        // Rolls of up to MAX_ROLL can be checked by lookup, which is much cheaper than a failed search
+        int maxSteps = player.getMovesRemaining();
+        if (maxSteps <= ReachabilityTable.MAX_ROLL && !goal.equals(currentPosition)) {
+            ReachabilityTable reachability = board.getScenario().getReachability();
+            boolean reachable = player.getRoom() != null
+                    ? reachability.canReach(player.getRoom(), goal.x, goal.y, maxSteps)
+                    : reachability.canReach(currentPosition.x, currentPosition.y, goal.x, goal.y, maxSteps);
+            if (!reachable) {
+                return null;
             }
         }
-    }
-
-    /**
-     * Builds a movement path from the specified end node
-     *
-     * @param node end point of the A* search
-     * @param door door at the start of the path, or null if not exiting a room
-     * @return the calculated movement path
-     */
-    private static MovePath buildPath(Node node, Door door) {
-        List<Point> points = new ArrayList<>();
-        while (node != null) {
-            points.add(node.getPoint());
-            node = node.getParent();
-        }
 
-        Collections.reverse(points);
-        return new MovePath(points, door);
+        field.calculate(player, currentPosition);
+        return field.getPath(goal);
     }
 }
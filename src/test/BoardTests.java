@@ -4,9 +4,11 @@ import static org.junit.Assert.*;
 
 import java.awt.Point;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
-import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -14,18 +16,27 @@ import org.junit.rules.ExpectedException;
 import cluedo.game.Board;
 import cluedo.game.Board.Direction;
 import cluedo.game.Board.UnableToMoveException;
+import cluedo.game.ConcurrentBoard;
+import cluedo.game.ConnectedComponents;
+import cluedo.game.DistanceMatrix;
 import cluedo.game.Door;
+import cluedo.game.FloodFill;
+import cluedo.game.PackedPath;
 import cluedo.game.Player;
+import cluedo.game.ReachabilityTable;
+import cluedo.game.Scenario;
+import cluedo.game.TileGrid;
 import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
 import cluedo.loader.Loader;
+import cluedo.loader.Loader.SyntaxException;
+import cluedo.loader.ScenarioGenerator;
+import cluedo.ui.graphical.util.MoveField;
+import cluedo.ui.graphical.util.PathFinder;
+import cluedo.ui.graphical.util.PathFinder.MovePath;
 
 public class BoardTests {
 
-	@After
-	public void tearDown() {
-		new File("test.txt").delete();
-	}
-
 	@Rule
 	public ExpectedException expectedException = ExpectedException.none();
 
@@ -77,6 +88,293 @@ public class BoardTests {
 		assertTrue(board.isCorridor(board.getPlayerLocation(player)));
 	}
 
+	@Test
+	public void testTracksOccupiedTiles() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Player first = new Player("First", loader.getSuspects().values().iterator().next());
+		Player second = new Player("Second", first.getToken());
+		board.addPlayer(first);
+		board.addPlayer(second);
+		assertEquals(0, first.getOrdinal());
+		assertEquals(1, second.getOrdinal());
+
+		// Both players start on the same tile, so it stays occupied when one leaves
+		board.movePlayer(first, Arrays.asList(Direction.RIGHT), null);
+		assertTrue(board.isOccupied(0, 3));
+		assertTrue(board.isOccupied(1, 3));
+		try {
+			board.movePlayer(second, Arrays.asList(Direction.RIGHT), null);
+			fail("Moved onto another player");
+		}
+		catch (UnableToMoveException e) {
+			assertTrue(e.getMessage().contains("same square"));
+		}
+
+		board.movePlayer(first, Arrays.asList(Direction.RIGHT), null);
+		board.movePlayer(second, Arrays.asList(Direction.RIGHT), null);
+		assertFalse(board.isOccupied(0, 3));
+		assertEquals(new Point(1, 3), board.getPlayerLocation(second));
+
+		board.clearPlayers();
+		assertFalse(board.isOccupied(2, 3));
+		assertEquals(-1, first.getOrdinal());
+		assertNull(board.getPlayerLocation(first));
+	}
+
+	@Test
+	public void testPackedPathStoresSteps() {
+		List<Direction> steps = new ArrayList<Direction>();
+		Random random = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			steps.add(Direction.values()[random.nextInt(4)]);
+		}
+
+		PackedPath path = PackedPath.of(steps);
+		assertEquals(100, path.size());
+		assertEquals(steps, path.asList());
+		assertEquals(path, PackedPath.of(path.asList()));
+
+		path.clear();
+		path.add(Direction.LEFT);
+		assertEquals(Arrays.asList(Direction.LEFT), path.asList());
+		assertEquals(-1, path.dx(0));
+		assertEquals(0, path.dy(0));
+	}
+
+	@Test
+	public void testFailedMoveLeavesPlayerInPlace() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		board.movePlayer(player, Arrays.asList(Direction.UP), null);
+		Room room = player.getRoom();
+		Point door = board.getPlayerLocation(player);
+		assertNotNull(room);
+
+		try {
+			board.movePlayer(player, Arrays.asList(Direction.DOWN), room.getDoor(0));
+			fail("Moved through a wall");
+		}
+		catch (UnableToMoveException e) {
+			assertSame(room, player.getRoom());
+			assertEquals(door, board.getPlayerLocation(player));
+		}
+	}
+
+	@Test
+	public void testUnmakeMoveRestoresPlayer() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+
+		long enter = board.makeMove(player, PackedPath.of(Arrays.asList(Direction.UP)), null);
+		Room room = player.getRoom();
+		assertNotNull(room);
+		assertNull(board.getDoorUsed(enter));
+
+		long leave = board.makeMove(player, PackedPath.of(Arrays.asList(Direction.RIGHT)), room.getDoor(0));
+		assertNull(player.getRoom());
+		assertEquals(new Point(1, 3), board.getPlayerLocation(player));
+		assertSame(room.getDoor(0), board.getDoorUsed(leave));
+
+		board.unmakeMove(player, leave);
+		assertSame(room, player.getRoom());
+		assertEquals(new Point(0, 2), board.getPlayerLocation(player));
+		assertFalse(board.isOccupied(1, 3));
+
+		board.unmakeMove(player, enter);
+		assertNull(player.getRoom());
+		assertEquals(new Point(0, 3), board.getPlayerLocation(player));
+		assertTrue(board.isOccupied(0, 3));
+		assertFalse(board.isOccupied(0, 2));
+	}
+
+	@Test
+	public void testPathFinder() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		PathFinder pathFinder = new PathFinder(board);
+		Point start = board.getPlayerLocation(player);
+
+		player.setMovesRemaining(3);
+		MovePath path = pathFinder.calculate(player, start, new Point(3, 3));
+		assertEquals(Arrays.asList(start, new Point(1, 3), new Point(2, 3), new Point(3, 3)), path.asPoints());
+		assertEquals(Arrays.asList(Direction.RIGHT, Direction.RIGHT, Direction.RIGHT), path.asDirections());
+		assertNull(path.getDoor());
+		assertEquals(Arrays.asList(start, new Point(0, 2)), pathFinder.calculate(player, start, new Point(0, 2))
+				.asPoints());
+		assertNull(pathFinder.calculate(player, start, new Point(4, 4)));
+
+		// Searches reuse their arrays, so a failed search must not affect the next
+		player.setMovesRemaining(2);
+		assertNull(pathFinder.calculate(player, start, new Point(3, 3)));
+		assertEquals(3, pathFinder.calculate(player, start, new Point(2, 3)).size());
+
+		// Leaving a room starts beside the door and takes a step
+		board.movePlayer(player, PackedPath.of(Arrays.asList(Direction.UP)), null);
+		Room room = player.getRoom();
+		path = pathFinder.calculate(player, board.getPlayerLocation(player), new Point(1, 3));
+		assertEquals(Arrays.asList(new Point(0, 3), new Point(1, 3)), path.asPoints());
+		assertSame(room.getDoor(0), path.getDoor());
+		assertNull(pathFinder.calculate(player, board.getPlayerLocation(player), new Point(2, 3)));
+	}
+
+	@Test
+	public void testPathFinderLeavesByBestDoor() throws Exception {
+		Loader loader = Loader.load("data/standard.txt");
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		PathFinder pathFinder = new PathFinder(board);
+		ReachabilityTable reachability = board.getScenario().getReachability();
+
+		// The path's length (plus the step out of the door) is the shortest walking distance from any door
+		player.setMovesRemaining(ReachabilityTable.MAX_ROLL);
+		for (Room room : board.getScenario().getRooms()) {
+			player.setRoom(room);
+			Point position = room.getDoor(0).getLocation();
+			for (int y = 0; y < board.getHeight(); y++) {
+				for (int x = 0; x < board.getWidth(); x++) {
+					if (!board.isCorridor(x, y)) {
+						continue;
+					}
+					MovePath path = pathFinder.calculate(player, position, new Point(x, y));
+					int distance = reachability.getDistance(room, x, y);
+					assertEquals(distance, path == null ? -1 : path.size());
+					if (path != null) {
+						assertSame(room, path.getDoor().getRoom());
+						assertEquals(path.getDoor().getPointBeside(), path.asPoints().get(0));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMoveFieldMatchesReachabilityTable() throws Exception {
+		Loader loader = Loader.load("data/standard.txt");
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		ReachabilityTable reachability = board.getScenario().getReachability();
+		MoveField field = new MoveField(board);
+		assertFalse(field.isValid());
+
+		Point start = board.getPlayerLocation(player);
+		for (int moves = 0; moves <= ReachabilityTable.MAX_ROLL; moves += 4) {
+			player.setMovesRemaining(moves);
+			field.calculate(player, start);
+			assertTrue(field.isValid());
+			for (int y = 0; y < board.getHeight(); y++) {
+				for (int x = 0; x < board.getWidth(); x++) {
+					Point goal = new Point(x, y);
+					int distance = reachability.getDistance(start.x, start.y, x, y);
+					MovePath path = field.getPath(goal);
+					assertEquals(distance >= 0 && distance <= moves ? distance + 1 : -1,
+							path == null ? -1 : path.size());
+					if (path != null) {
+						assertEquals(start, path.asPoints().get(0));
+						assertEquals(goal, path.asPoints().get(path.size() - 1));
+					}
+				}
+			}
+		}
+
+		field.invalidate();
+		assertFalse(field.isValid());
+		assertNull(field.getPath(start));
+
+		// Leaving a room can be by any door, but not back into the room
+		loader = LoaderTests.getTestLoader();
+		board = new Board(loader);
+		player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		board.movePlayer(player, PackedPath.of(Arrays.asList(Direction.UP)), null);
+		Room room = player.getRoom();
+		player.setMovesRemaining(3);
+		field = new MoveField(board);
+		field.calculate(player, board.getPlayerLocation(player));
+		MovePath path = field.getPath(new Point(2, 3));
+		assertEquals(Arrays.asList(new Point(0, 3), new Point(1, 3), new Point(2, 3)), path.asPoints());
+		assertSame(room.getDoor(0), path.getDoor());
+		assertNull(field.getPath(room.getDoor(0).getLocation()));
+	}
+
+	@Test
+	public void testPathsOnlyAvoidEndingOnPlayers() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Suspect suspect = loader.getSuspects().values().iterator().next();
+		Player other = new Player("Other", suspect);
+		board.addPlayer(other);
+		board.movePlayer(other, PackedPath.of(Arrays.asList(Direction.RIGHT)), null);
+		Player player = new Player("Test", suspect);
+		board.addPlayer(player);
+		Point start = board.getPlayerLocation(player);
+		player.setMovesRemaining(3);
+
+		assertTrue(board.isBlocked(player, 1, 3));
+		assertFalse(board.isBlocked(other, 1, 3));
+		assertFalse(board.isBlocked(player, 0, 3));
+
+		// Paths can pass the other player, but not end on them
+		PathFinder pathFinder = new PathFinder(board);
+		MoveField field = new MoveField(board);
+		field.calculate(player, start);
+		assertNull(pathFinder.calculate(player, start, new Point(1, 3)));
+		assertNull(field.getPath(new Point(1, 3)));
+		assertEquals(3, pathFinder.calculate(player, start, new Point(2, 3)).size());
+		assertEquals(3, field.getPath(new Point(2, 3)).size());
+
+		// The field doesn't need calculating again when the other player moves
+		board.movePlayer(other, PackedPath.of(Arrays.asList(Direction.RIGHT)), null);
+		assertEquals(2, field.getPath(new Point(1, 3)).size());
+		assertNull(field.getPath(new Point(2, 3)));
+		assertNull(pathFinder.calculate(player, start, new Point(2, 3)));
+	}
+
+	@Test
+	public void testConcurrentBoardTracksPlayers() throws UnableToMoveException {
+		Loader loader = LoaderTests.getTestLoader();
+		ConcurrentBoard board = new ConcurrentBoard(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+		assertEquals(new Point(0, 3), board.getPlayerLocation(player));
+		assertTrue(board.isOccupied(0, 3));
+		Player other = new Player("Other", player.getToken());
+		assertTrue(board.isBlocked(other, 0, 3));
+		assertFalse(board.isBlocked(player, 0, 3));
+
+		long token = board.makeMove(player, PackedPath.of(Arrays.asList(Direction.UP)), null);
+		Room room = player.getRoom();
+		assertSame(room, board.getPlayerRoom(player));
+		assertEquals(new Point(0, 2), board.getPlayerLocation(player));
+		assertFalse(board.isOccupied(0, 3));
+		assertTrue(board.isOccupied(0, 2));
+		assertFalse(board.isBlocked(other, 0, 3));
+		assertFalse(board.isBlocked(other, 0, 2));
+
+		// Room changes made outside the board are seen too
+		player.setRoom(null);
+		assertNull(board.getPlayerRoom(player));
+		player.setRoom(room);
+
+		board.unmakeMove(player, token);
+		assertNull(board.getPlayerRoom(player));
+		assertEquals(new Point(0, 3), board.getPlayerLocation(player));
+		assertTrue(board.isOccupied(0, 3));
+		assertFalse(board.isOccupied(0, 2));
+
+		board.clearPlayers();
+		assertNull(board.getPlayerLocation(player));
+		assertFalse(board.isOccupied(0, 3));
+	}
+
 	@Test
 	public void testCanMoveIntoRoom() throws UnableToMoveException {
 		Loader loader = LoaderTests.getTestLoader();
@@ -90,11 +388,379 @@ public class BoardTests {
 		Room room = loader.getRooms().values().iterator().next();
 		Door exitDoor = room.getDoor(0);
 
+		// Leaving puts the player beside the door at (0,3), and the wall is
+		// below that, so step right
 		Player player = testMoveFromStart(loader,
-				new Direction[] { Direction.UP }, exitDoor, new Direction[] { Direction.DOWN });
+				new Direction[] { Direction.UP }, exitDoor, new Direction[] { Direction.RIGHT });
 		assertNull(player.getRoom());
 	}
 
+	@Test
+	public void testCanReach() {
+		Loader loader = LoaderTests.getTestLoader();
+		Board board = new Board(loader);
+		Player player = new Player("Test", loader.getSuspects().values().iterator().next());
+		board.addPlayer(player);
+
+		assertTrue(board.canReach(player, new Point(3, 0)));
+		assertTrue(board.canReach(player, new Point(2, 2)));
+		assertFalse(board.canReach(player, new Point(4, 4)));
+		assertFalse(board.canReach(player, new Point(1, 1)));
+	}
+
+	@Test
+	public void testReportsIsolatedRegions() throws SyntaxException {
+		Loader loader = LoaderTests.testLoader("---\nrooms:\n  A: Some Room\n"
+				+ "suspects:\n  a: First Person #FFFFFF\nweapons:\n  - Deadly Weapon\n"
+				+ "-----\nAAA. |\nAAA..|\n_A/..|\na... |\n .. .|\n-----");
+		Scenario scenario = new Scenario(loader);
+		List<String> regions = scenario.getComponents().getIsolatedRegions();
+
+		assertEquals(1, regions.size());
+		assertTrue(regions.get(0).contains("(4,4)"));
+		assertTrue(new Scenario(LoaderTests.getTestLoader()).getComponents().getIsolatedRegions().isEmpty());
+	}
+
+	@Test
+	public void testComponentsOfTiles() throws Exception {
+		Scenario scenario = new Scenario(LoaderTests.getTestLoader());
+		ConnectedComponents components = scenario.getComponents();
+		int room = components.getComponent(scenario.getRooms().get(0));
+
+		assertEquals(room, components.getComponent(0, 2));
+		assertEquals(room, components.getComponent(0, 3));
+		assertEquals(-1, components.getComponent(1, 1));
+		assertEquals(-1, components.getComponent(-1, 3));
+		assertEquals(-1, components.getComponent(4, 4));
+
+		// Doors belong to their room's component, even when classified on
+		// demand
+		scenario = new Scenario(new ScenarioGenerator(1100, 1000, 5).toLoader());
+		assertFalse(scenario.getTiles().isStored());
+		components = scenario.getComponents();
+		for (Door door : scenario.getTiles().getDoors()) {
+			Point location = door.getLocation();
+			assertEquals(components.getComponent(door.getRoom()), components.getComponent(location.x, location.y));
+		}
+	}
+
+	@Test
+	public void testTileGridClassifiesTiles() throws Exception {
+		Scenario scenario = new Scenario(Loader.load("data/standard.txt"));
+		checkTileGrid(scenario);
+		assertTrue(scenario.getTiles().isStored());
+
+		// Boards with too many doors for a short per tile are still stored
+		Scenario wide = new Scenario(new ScenarioGenerator(1000, 1000, 5).toLoader());
+		assertTrue(wide.getTiles().getDoors().size() > TileGrid.MAX_INDEX);
+		assertTrue(wide.getTiles().isStored());
+		checkTileGridRooms(wide);
+
+		// Boards this large are classified on demand
+		Scenario huge = new Scenario(new ScenarioGenerator(1100, 1000, 5).toLoader());
+		assertFalse(huge.getTiles().isStored());
+		checkTileGrid(huge);
+		checkTileGridRooms(huge);
+	}
+
+	@Test
+	public void testReachabilityTable() throws Exception {
+		Scenario scenario = new Scenario(LoaderTests.getTestLoader());
+		ReachabilityTable reachability = scenario.getReachability();
+		Room room = scenario.getRooms().get(0);
+
+		assertEquals(0, reachability.getEntryCount());
+		assertEquals(3, reachability.getDistance(0, 3, 3, 3));
+		assertTrue(reachability.canReach(0, 3, 3, 0, 6));
+		assertFalse(reachability.canReach(0, 3, 3, 0, 5));
+		assertEquals(-1, reachability.getDistance(0, 3, 4, 4));
+		assertEquals(Arrays.asList(new Point(0, 2), new Point(1, 3)), reachability.getReachableTiles(0, 3, 1));
+		assertEquals(Arrays.asList(room), reachability.getReachableRooms(0, 3, 1));
+
+		// Leaving by the door at (0,2) takes a step
+		assertEquals(1, reachability.getDistance(room, 0, 3));
+		assertEquals(2, reachability.getDistance(room, 1, 3));
+		assertEquals(2, reachability.getEntryCount());
+		assertTrue(reachability.estimateSize() > 0);
+
+		// Walking distances between corridor tiles are the same both ways
+		scenario = new Scenario(Loader.load("data/standard.txt"));
+		reachability = scenario.getReachability();
+		for (int y = 0; y < scenario.getHeight(); y += 3) {
+			for (int x = 0; x < scenario.getWidth(); x += 3) {
+				if (!scenario.isCorridor(x, y)) {
+					continue;
+				}
+				for (Point point : reachability.getReachableTiles(x, y, ReachabilityTable.MAX_ROLL)) {
+					if (scenario.isCorridor(point.x, point.y)) {
+						assertEquals(reachability.getDistance(x, y, point.x, point.y),
+								reachability.getDistance(point.x, point.y, x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFloodFill() throws Exception {
+		Scenario scenario = new Scenario(LoaderTests.getTestLoader());
+		FloodFill fill = scenario.getFloodFill();
+		Room room = scenario.getRooms().get(0);
+
+		FloodFill.Result result = fill.reach(0, 3, 1, true);
+		assertEquals(Arrays.asList(new Point(0, 2), new Point(1, 3)), result.getTiles());
+		assertEquals(Arrays.asList(room), result.getRooms());
+		assertEquals(0, result.getDistance(0, 3));
+		assertEquals(-1, result.getDistance(2, 3));
+
+		// Doors are the end of a move, and (4,4) is walled off
+		result = fill.reach(0, 3, Integer.MAX_VALUE, true);
+		assertEquals(3, result.getDistance(3, 3));
+		assertEquals(-1, result.getDistance(4, 4));
+		assertFalse(result.contains(0, 1));
+		assertEquals(0, fill.reach(0, 4, 5, false).size());
+
+		result = fill.reach(room, 2, true);
+		assertEquals(1, result.getDistance(0, 3));
+		assertEquals(2, result.getDistance(1, 3));
+		assertFalse(result.contains(2, 3));
+
+		// Whole-board distances agree with the distance matrix's searches
+		scenario = new Scenario(Loader.load("data/standard.txt"));
+		fill = scenario.getFloodFill();
+		DistanceMatrix matrix = scenario.getDistances();
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Point start = suspect.getStartLocation();
+			result = fill.reach(start.x, start.y, Integer.MAX_VALUE, true);
+			for (Door door : scenario.getTiles().getDoors()) {
+				Point location = door.getLocation();
+				assertEquals(matrix.getDistance(matrix.getStartIndex(suspect), matrix.getDoorIndex(door)),
+						result.getDistance(location.x, location.y));
+			}
+		}
+		for (Room from : scenario.getRooms()) {
+			result = fill.reach(from, Integer.MAX_VALUE, true);
+			for (Room to : scenario.getRooms()) {
+				int best = -1;
+				for (Door door : to.getDoors()) {
+					int distance = result.getDistance(door.getLocation().x, door.getLocation().y);
+					if (distance >= 0 && (best < 0 || distance < best)) {
+						best = distance;
+					}
+				}
+				if (from != to) {
+					assertEquals(matrix.getDistance(from, to), best);
+					Door exit = matrix.getExit(from, to);
+					assertEquals(best >= 0, exit != null);
+					assertTrue(exit == null || from.getDoors().contains(exit));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFloodFillMatchesSearchOnWideBoards() throws Exception {
+		// Rows of several words, so steps carry bits between words
+		for (int seed = 1; seed <= 3; seed++) {
+			Scenario scenario = new Scenario(new ScenarioGenerator(300, 200, seed).toLoader());
+			FloodFill fill = scenario.getFloodFill();
+			int width = scenario.getWidth();
+			Random random = new Random(seed);
+			for (int found = 0; found < 5;) {
+				int x = random.nextInt(width);
+				int y = random.nextInt(scenario.getHeight());
+				if (!scenario.isCorridor(x, y)) {
+					continue;
+				}
+				found++;
+				int[] distances = search(scenario, new int[] { x + width * y }, 0);
+				checkFloodFill(scenario, fill.reach(x, y, Integer.MAX_VALUE, true), distances, Integer.MAX_VALUE);
+				checkFloodFill(scenario, fill.reach(x, y, ReachabilityTable.MAX_ROLL, true), distances,
+						ReachabilityTable.MAX_ROLL);
+			}
+
+			for (int i = 0; i < scenario.getRooms().size(); i += 50) {
+				Room room = scenario.getRooms().get(i);
+				List<Integer> seeds = new ArrayList<Integer>();
+				for (Door door : room.getDoors()) {
+					Point beside = door.getPointBeside();
+					if (scenario.isCorridor(beside.x, beside.y)) {
+						seeds.add(beside.x + width * beside.y);
+					}
+				}
+				int[] starts = new int[seeds.size()];
+				for (int j = 0; j < starts.length; j++) {
+					starts[j] = seeds.get(j);
+				}
+				int[] distances = search(scenario, starts, 1);
+				checkFloodFill(scenario, fill.reach(room, Integer.MAX_VALUE, true), distances, Integer.MAX_VALUE);
+				checkFloodFill(scenario, fill.reach(room, ReachabilityTable.MAX_ROLL, true), distances,
+						ReachabilityTable.MAX_ROLL);
+			}
+		}
+	}
+
+	@Test
+	public void testDistanceMatrix() throws Exception {
+		Scenario scenario = new Scenario(LoaderTests.getTestLoader());
+		DistanceMatrix matrix = scenario.getDistances();
+		Room room = scenario.getRooms().get(0);
+		Door door = room.getDoor(0);
+		int start = matrix.getStartIndex(scenario.getData().getSuspects().get(0));
+
+		assertEquals(1, matrix.getDistance(matrix.getDoorIndex(door), start));
+		assertEquals(1, matrix.getDistance(start, matrix.getDoorIndex(door)));
+		assertEquals(0, matrix.getDistance(start, matrix.getBesideIndex(door)));
+		assertEquals(0, matrix.getDistance(room, room));
+
+		// Within a roll, the matrix agrees with the reachability table
+		scenario = new Scenario(Loader.load("data/standard.txt"));
+		matrix = scenario.getDistances();
+		ReachabilityTable reachability = scenario.getReachability();
+		List<Door> doors = scenario.getTiles().getDoors();
+		for (Door from : doors) {
+			Point beside = from.getPointBeside();
+			if (!scenario.isCorridor(beside.x, beside.y)) {
+				continue;
+			}
+			for (Door to : doors) {
+				Point location = to.getLocation();
+				int distance = reachability.getDistance(beside.x, beside.y, location.x, location.y);
+				if (distance >= 0 && from != to) {
+					assertEquals(distance, matrix.getDistance(matrix.getBesideIndex(from), matrix.getDoorIndex(to)));
+					assertEquals(distance + 1, matrix.getDistance(matrix.getDoorIndex(from), matrix.getDoorIndex(to)));
+				}
+			}
+		}
+
+		// Saved matrices are only used for the same board
+		File file = File.createTempFile("standard", ".dist");
+		try {
+			matrix.write(file);
+			DistanceMatrix loaded = DistanceMatrix.read(file, scenario);
+			assertNotNull(loaded);
+			for (int i = 0; i < matrix.size(); i++) {
+				for (int j = 0; j < matrix.size(); j++) {
+					assertEquals(matrix.getDistance(i, j), loaded.getDistance(i, j));
+				}
+			}
+			assertNull(DistanceMatrix.read(file, new Scenario(LoaderTests.getTestLoader())));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Checks the tiles of every room and door, and the corridors in some rows
+	 */
+	private void checkTileGridRooms(Scenario scenario) {
+		TileGrid tiles = scenario.getTiles();
+		List<Room> rooms = scenario.getRooms();
+		for (int i = 0; i < rooms.size(); i++) {
+			for (Point point : rooms.get(i).getPoints()) {
+				assertEquals(i, tiles.getRoomIndex(point.x, point.y));
+			}
+			for (Door door : rooms.get(i).getDoors()) {
+				Point location = door.getLocation();
+				assertSame(door, tiles.getDoor(location.x, location.y));
+				assertEquals(door.isVertical(), TileGrid.isVerticalDoor(tiles.getTile(location.x, location.y)));
+			}
+		}
+		for (int y = 0; y < scenario.getHeight(); y += scenario.getHeight() / 50 + 1) {
+			for (int x = 0; x < scenario.getWidth(); x++) {
+				assertEquals(scenario.isCorridor(x, y), tiles.isCorridor(x, y));
+			}
+		}
+	}
+
+	private void checkTileGrid(Scenario scenario) {
+		TileGrid tiles = scenario.getTiles();
+		for (int y = 0; y < scenario.getHeight(); y += scenario.getHeight() / 50 + 1) {
+			for (int x = 0; x < scenario.getWidth(); x++) {
+				Door door = scenario.getDoor(new Point(x, y));
+				int tile = tiles.getTile(x, y);
+				assertEquals(tile, tiles.tileAt(x + scenario.getWidth() * y));
+				assertEquals(scenario.isCorridor(x, y), TileGrid.kind(tile) == TileGrid.CORRIDOR);
+				assertEquals(door != null, TileGrid.kind(tile) == TileGrid.DOOR);
+				if (door != null) {
+					assertSame(door, tiles.getDoor(x, y));
+					assertEquals(door.isVertical(), TileGrid.isVerticalDoor(tile));
+				}
+
+				int room = tiles.getRoomIndex(x, y);
+				for (int i = 0; i < scenario.getRooms().size(); i++) {
+					assertEquals(scenario.getRooms().get(i).contains(x, y), room == i);
+				}
+			}
+		}
+		assertEquals(TileGrid.WALL, tiles.getTile(-1, 0));
+		assertEquals(TileGrid.WALL, tiles.getTile(0, scenario.getHeight()));
+	}
+
+	/**
+	 * Checks that a flood fill found exactly the tiles a search did within
+	 * maxSteps, at the same distances
+	 */
+	private void checkFloodFill(Scenario scenario, FloodFill.Result result, int[] distances, int maxSteps) {
+		int width = scenario.getWidth();
+		int count = 0;
+		for (int i = 0; i < distances.length; i++) {
+			int expected = distances[i] <= maxSteps ? distances[i] : -1;
+			assertEquals(expected, result.getDistance(i % width, i / width));
+			assertEquals(expected >= 0, result.contains(i % width, i / width));
+			if (expected >= 0) {
+				count++;
+			}
+		}
+		assertEquals(count, result.size());
+	}
+
+	/**
+	 * Breadth-first search over one tile at a time from some corridor tiles,
+	 * which start at the given distance. Returns the distance to each tile,
+	 * or -1 where it wasn't reached.
+	 */
+	private int[] search(Scenario scenario, int[] starts, int startDistance) {
+		TileGrid grid = scenario.getTiles();
+		int width = scenario.getWidth();
+		int[] distances = new int[width * scenario.getHeight()];
+		int[] queue = new int[distances.length];
+		Arrays.fill(distances, -1);
+		int head = 0;
+		int tail = 0;
+		for (int start : starts) {
+			if (distances[start] < 0) {
+				distances[start] = startDistance;
+				queue[tail++] = start;
+			}
+		}
+
+		int[] offsetX = { -1, 1, 0, 0 };
+		int[] offsetY = { 0, 0, -1, 1 };
+		while (head < tail) {
+			int current = queue[head++];
+			int x = current % width;
+			int y = current / width;
+			if (grid.isDoor(x, y)) {
+				continue;
+			}
+			for (int i = 0; i < offsetX.length; i++) {
+				int nextX = x + offsetX[i];
+				int nextY = y + offsetY[i];
+				if (!grid.isCorridor(nextX, nextY) && !grid.canEnterDoor(nextX, nextY, x, y)) {
+					continue;
+				}
+				int next = nextX + width * nextY;
+				if (distances[next] < 0) {
+					distances[next] = distances[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return distances;
+	}
+
 	private Player testMoveFromStart(Loader loader, Direction[] before, Door door, Direction[] after)
 				throws Board.UnableToMoveException {
 		Board board = new Board(loader);
@@ -0,0 +1,119 @@
+package test;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cluedo.game.Board;
+import cluedo.game.Board.Direction;
+import cluedo.game.Board.UnableToMoveException;
+import cluedo.game.ConcurrentBoard;
+import cluedo.game.PackedPath;
+import cluedo.game.Player;
+import cluedo.game.Scenario;
+import cluedo.game.objects.Suspect;
+import cluedo.loader.Loader;
+
+/**
+ * Measures contention on ConcurrentBoard: one writer thread moves a player
+ * back and forth while N reader threads read player locations and occupied
+ * tiles. Prints the moves and reads per second for each number of readers,
+ * so that adding readers can be seen not to slow the writer down. Run with
+ * the working directory set to the project root.
+ */
+public class ConcurrentBoardBenchmark {
+	private static final int[] READERS = { 0, 1, 2, 4, 8 };
+	private static final long RUN_MILLIS = 2000;
+
+	public static void main(String[] args) throws Exception {
+		Scenario scenario = new Scenario(Loader.load("data/standard.txt"));
+		for (int readers : READERS) {
+			run(scenario, readers);
+		}
+	}
+
+	private static void run(Scenario scenario, int readerCount) throws Exception {
+		final ConcurrentBoard board = new ConcurrentBoard(scenario);
+		final List<Player> players = new ArrayList<Player>();
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Player player = new Player(suspect.getName(), suspect);
+			board.addPlayer(player);
+			players.add(player);
+		}
+
+		final Player mover = players.get(0);
+		final PackedPath there = stepFrom(board, board.getPlayerLocation(mover));
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong moves = new AtomicLong();
+		final AtomicLong reads = new AtomicLong();
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long count = 0;
+				try {
+					while (running.get()) {
+						long token = board.makeMove(mover, there, null);
+						board.unmakeMove(mover, token);
+						count += 2;
+					}
+				}
+				catch (UnableToMoveException e) {
+					throw new RuntimeException(e);
+				}
+				moves.set(count);
+			}
+		});
+
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < readerCount; i++) {
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long count = 0;
+					while (running.get()) {
+						for (Player player : players) {
+							Point location = board.getPlayerLocation(player);
+							if (location != null && board.isOccupied(location.x, location.y)) {
+								count++;
+							}
+						}
+					}
+					reads.addAndGet(count);
+				}
+			}));
+		}
+
+		writer.start();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		Thread.sleep(RUN_MILLIS);
+		running.set(false);
+		writer.join();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		double seconds = RUN_MILLIS / 1000.0;
+		System.out.printf("%d readers: %,.0f moves/s, %,.0f reads/s%n", readerCount, moves.get() / seconds,
+				reads.get() / seconds);
+	}
+
+	/**
+	 * Returns a single step from a tile onto a neighbouring corridor
+	 */
+	private static PackedPath stepFrom(Board board, Point start) {
+		for (Direction direction : Direction.values()) {
+			PackedPath step = new PackedPath();
+			step.add(direction);
+			if (board.isCorridor(start.x + step.dx(0), start.y + step.dy(0))
+					&& !board.isOccupied(start.x + step.dx(0), start.y + step.dy(0))) {
+				return step;
+			}
+		}
+		throw new IllegalStateException("No free corridor beside " + start);
+	}
+}
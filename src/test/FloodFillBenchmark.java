@@ -0,0 +1,154 @@
+package test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import cluedo.game.FloodFill;
+import cluedo.game.ReachabilityTable;
+import cluedo.game.Scenario;
+import cluedo.game.TileGrid;
+import cluedo.loader.Loader;
+import cluedo.loader.ScenarioGenerator;
+
+/**
+ * Compares FloodFill with a breadth-first search over one tile at a time, for
+ * reach sets (every tile within a roll of the dice) from random corridor
+ * tiles and for distance fields over the whole board. Prints the time per
+ * search for each.
+ */
+public class FloodFillBenchmark {
+	private static final int[] SIZES = { 25, 500, 2000 };
+	private static final int SEARCHES = 20000;
+	// Distance fields are searched until about this many tiles have been
+	// visited in each run
+	private static final int FIELD_TILES = 20000000;
+
+	// Offsets to the tiles left, right, above and below a tile
+	private static final int[] NEIGHBOUR_X = { -1, 1, 0, 0 };
+	private static final int[] NEIGHBOUR_Y = { 0, 0, -1, 1 };
+
+	public static void main(String[] args) throws Exception {
+		for (int size : SIZES) {
+			Scenario scenario;
+			if (size == 25) {
+				scenario = new Scenario(Loader.load("data/standard.txt"));
+			}
+			else {
+				File file = File.createTempFile("flood" + size, ".txt");
+				file.deleteOnExit();
+				ScenarioGenerator generator = new ScenarioGenerator(size, size, size);
+				generator.setRoomCount(size / 10);
+				generator.write(file);
+				scenario = new Scenario(Loader.load(file.getPath()));
+				file.delete();
+			}
+			run(scenario);
+		}
+	}
+
+	private static void run(Scenario scenario) {
+		int[] starts = corridorTiles(scenario, SEARCHES);
+		FloodFill fill = scenario.getFloodFill();
+		int width = scenario.getWidth();
+		int[] distances = new int[width * scenario.getHeight()];
+		int[] queue = new int[distances.length];
+
+		// Run each several times, so the last run is measured after warming up
+		double fillTime = 0;
+		double searchTime = 0;
+		long check = 0;
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			for (int tile : starts) {
+				check += fill.reach(tile % width, tile / width, ReachabilityTable.MAX_ROLL, false).size();
+			}
+			fillTime = (System.nanoTime() - start) / 1e3 / starts.length;
+
+			start = System.nanoTime();
+			for (int tile : starts) {
+				check -= search(scenario, tile, ReachabilityTable.MAX_ROLL, distances, queue);
+			}
+			searchTime = (System.nanoTime() - start) / 1e3 / starts.length;
+		}
+		System.out.printf("%dx%d reach sets: flood fill %.2f us, search %.2f us%n", scenario.getWidth(),
+				scenario.getHeight(), fillTime, searchTime);
+
+		int fields = Math.max(1, FIELD_TILES / distances.length);
+		int[] fieldStarts = Arrays.copyOf(starts, Math.min(fields, starts.length));
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			for (int tile : fieldStarts) {
+				check += fill.reach(tile % width, tile / width, Integer.MAX_VALUE, true).size();
+			}
+			fillTime = (System.nanoTime() - start) / 1e6 / fieldStarts.length;
+
+			start = System.nanoTime();
+			for (int tile : fieldStarts) {
+				check -= search(scenario, tile, Integer.MAX_VALUE, distances, queue);
+			}
+			searchTime = (System.nanoTime() - start) / 1e6 / fieldStarts.length;
+		}
+		System.out.printf("%dx%d distance fields: flood fill %.2f ms, search %.2f ms%n", scenario.getWidth(),
+				scenario.getHeight(), fillTime, searchTime);
+		if (check != 0) {
+			throw new IllegalStateException("The searches reached different numbers of tiles");
+		}
+	}
+
+	/**
+	 * Returns some corridor tiles, chosen at random with a fixed seed
+	 */
+	private static int[] corridorTiles(Scenario scenario, int count) {
+		Random random = new Random(1);
+		int[] tiles = new int[count];
+		int found = 0;
+		for (int attempt = 0; found < count && attempt < count * 1000; attempt++) {
+			int x = random.nextInt(scenario.getWidth());
+			int y = random.nextInt(scenario.getHeight());
+			if (scenario.getTiles().isCorridor(x, y)) {
+				tiles[found++] = x + scenario.getWidth() * y;
+			}
+		}
+		return Arrays.copyOf(tiles, found);
+	}
+
+	/**
+	 * Breadth-first search from a tile, one tile at a time. Returns the number
+	 * of tiles reached.
+	 */
+	private static int search(Scenario scenario, int start, int maxSteps, int[] distances, int[] queue) {
+		TileGrid grid = scenario.getTiles();
+		int width = scenario.getWidth();
+		int head = 0;
+		int tail = 0;
+		distances[start] = 0;
+		queue[tail++] = start;
+		while (head < tail) {
+			int current = queue[head++];
+			int x = current % width;
+			int y = current / width;
+			if (distances[current] == maxSteps || grid.isDoor(x, y)) {
+				continue;
+			}
+			for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+				int nextX = x + NEIGHBOUR_X[i];
+				int nextY = y + NEIGHBOUR_Y[i];
+				if (!grid.isCorridor(nextX, nextY) && !grid.canEnterDoor(nextX, nextY, x, y)) {
+					continue;
+				}
+				int next = nextX + width * nextY;
+				if (distances[next] == 0 && next != start) {
+					distances[next] = distances[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		// Clear only the tiles reached, ready for the next search
+		for (int i = 0; i < tail; i++) {
+			distances[queue[i]] = 0;
+		}
+		return tail;
+	}
+}
@@ -2,7 +2,9 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -10,9 +12,14 @@ import java.util.Set;
 import cluedo.game.objects.Suspect;
 import org.junit.Test;
 
+import cluedo.game.Board;
+import cluedo.game.Board.Direction;
 import cluedo.game.Game;
 import cluedo.game.GameData;
+import cluedo.game.GameSnapshot;
+import cluedo.game.PackedPath;
 import cluedo.game.Player;
+import cluedo.game.Scenario;
 import cluedo.game.Solution;
 import cluedo.game.objects.Card;
 import cluedo.game.objects.Room;
@@ -27,8 +34,8 @@ public class GameTests {
 		List<Weapon> assignedWeapons = new ArrayList<Weapon>();
 
 		for (Room room : game.getData().getRooms()) {
-			if (room.getWeapon() != null) {
-				assignedWeapons.add(room.getWeapon());
+			if (game.getRoomWeapon(room) != null) {
+				assignedWeapons.add(game.getRoomWeapon(room));
 			}
 		}
 
@@ -85,6 +92,125 @@ public class GameTests {
 		assertNull(disprover);
 	}
 
+	@Test
+	public void testGamesShareScenario() {
+		Scenario scenario = new Scenario(loadDefaultFile());
+		Game first = new Game(scenario);
+		Game second = new Game(scenario);
+
+		List<Weapon> secondWeapons = new ArrayList<Weapon>();
+		for (Room room : scenario.getRooms()) {
+			secondWeapons.add(second.getRoomWeapon(room));
+		}
+		for (int i = 0; i < 10; i++) {
+			first.reset();
+		}
+		for (int i = 0; i < scenario.getRooms().size(); i++) {
+			assertSame(secondWeapons.get(i), second.getRoomWeapon(scenario.getRooms().get(i)));
+		}
+		assertSame(first.getData(), second.getData());
+	}
+
+	@Test
+	public void testHashTracksPosition() throws Exception {
+		Game game = mockGame();
+		Board board = game.getBoard();
+		Player player = game.getPlayers().get(0);
+		long initial = game.getHash();
+
+		player.setMovesRemaining(4);
+		long withMoves = game.getHash();
+		assertNotEquals(initial, withMoves);
+		game.setCurrentPlayer(player);
+		assertNotEquals(withMoves, game.getHash());
+		game.setCurrentPlayer(null);
+		assertEquals(withMoves, game.getHash());
+
+		// Step onto whichever corridor is beside the start, then back
+		Point start = board.getPlayerLocation(player);
+		PackedPath step = new PackedPath();
+		for (Direction direction : Direction.values()) {
+			PackedPath candidate = PackedPath.of(Arrays.asList(direction));
+			if (board.isCorridor(start.x + candidate.dx(0), start.y + candidate.dy(0))) {
+				step = candidate;
+				break;
+			}
+		}
+		long token = board.makeMove(player, step, null);
+		assertNotEquals(withMoves, game.getHash());
+		board.unmakeMove(player, token);
+		assertEquals(withMoves, game.getHash());
+
+		Room room = game.getScenario().getRooms().get(0);
+		player.setRoom(room);
+		assertNotEquals(withMoves, game.getHash());
+		player.setRoom(null);
+		player.setMovesRemaining(0);
+		assertEquals(initial, game.getHash());
+
+		// Moving a weapon swaps it with the weapon already in the room
+		Room first = null;
+		Room second = null;
+		for (Room candidate : game.getScenario().getRooms()) {
+			if (game.getRoomWeapon(candidate) != null) {
+				if (first == null) {
+					first = candidate;
+				}
+				else if (second == null) {
+					second = candidate;
+				}
+			}
+		}
+		Weapon weapon = game.getRoomWeapon(first);
+		Weapon other = game.getRoomWeapon(second);
+		game.setRoomWeapon(second, weapon);
+		assertSame(weapon, game.getRoomWeapon(second));
+		assertSame(other, game.getRoomWeapon(first));
+		assertNotEquals(initial, game.getHash());
+		game.setRoomWeapon(first, weapon);
+		assertEquals(initial, game.getHash());
+	}
+
+	@Test
+	public void testSnapshotIsUnchangedByLaterMoves() {
+		Game game = mockGame();
+		Player player = game.getPlayers().get(0);
+		// Weapons are placed at random, so use a room which has one
+		Room room = null;
+		for (Room candidate : game.getScenario().getRooms()) {
+			if (room == null && game.getRoomWeapon(candidate) != null) {
+				room = candidate;
+			}
+		}
+		Room other = game.getScenario().getRooms().get(room == game.getScenario().getRooms().get(0) ? 1 : 0);
+		Point start = game.getBoard().getPlayerLocation(player);
+		Weapon weapon = game.getRoomWeapon(room);
+
+		player.setMovesRemaining(3);
+		GameSnapshot snapshot = game.snapshot();
+		assertEquals(start, snapshot.getLocation(player));
+		assertNull(snapshot.getRoom(player));
+		assertEquals(3, snapshot.getMovesRemaining(player));
+		assertEquals(game.getHash(), snapshot.getHash());
+		Player second = game.getPlayers().get(1);
+		assertTrue(snapshot.isBlocked(second, start.x, start.y));
+		assertFalse(snapshot.isBlocked(player, start.x, start.y));
+
+		player.setRoom(room);
+		player.setMovesRemaining(0);
+		game.setRoomWeapon(other, weapon);
+		assertNull(snapshot.getRoom(player));
+		assertTrue(snapshot.getPlayersInRoom(room).isEmpty());
+		assertEquals(3, snapshot.getMovesRemaining(player));
+		assertSame(weapon, snapshot.getRoomWeapon(room));
+		assertNotEquals(game.getHash(), snapshot.getHash());
+
+		GameSnapshot later = game.snapshot();
+		assertSame(room, later.getRoom(player));
+		assertEquals(Arrays.asList(player), later.getPlayersInRoom(room));
+		assertSame(weapon, later.getRoomWeapon(other));
+	}
+
 	private static Game mockGame() {
 		Loader loader = loadDefaultFile();
 		Game game = new Game(loader);
@@ -0,0 +1,94 @@
+package test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import cluedo.game.Board;
+import cluedo.game.Board.Direction;
+import cluedo.game.Board.UnableToMoveException;
+import cluedo.game.ChunkedBitmap;
+import cluedo.game.Player;
+import cluedo.game.Scenario;
+import cluedo.game.objects.Suspect;
+import cluedo.loader.Loader;
+import cluedo.loader.ScenarioGenerator;
+
+/**
+ * Loads generated boards of tens of millions of tiles and reports the time
+ * taken, the heap used by the scenario and the memory used by each type of
+ * corridor chunk. Run with a small heap (eg. -Xmx256m) to check that huge
+ * boards fit.
+ */
+public class HugeBoardBenchmark {
+	private static final int[] SIZES = { 2000, 5000, 8000 };
+
+	public static void main(String[] args) throws Exception {
+		for (int size : SIZES) {
+			File file = File.createTempFile("huge" + size, ".txt");
+			file.deleteOnExit();
+			ScenarioGenerator generator = new ScenarioGenerator(size, size, size);
+			generator.setRoomCount(2000);
+			generator.write(file);
+
+			long before = usedMemory();
+			long start = System.nanoTime();
+			Scenario scenario = new Scenario(Loader.load(file.getPath()));
+			double loadTime = (System.nanoTime() - start) / 1e6;
+			long used = usedMemory() - before;
+
+			System.out.printf("%dx%d (%,d tiles, %,d bytes): loaded in %.0f ms, %,d bytes of heap%n", size,
+					size, (long) size * size, file.length(), loadTime, used);
+			if (scenario.getCorridors() instanceof ChunkedBitmap) {
+				System.out.println(((ChunkedBitmap) scenario.getCorridors()).getMemoryReport());
+			}
+			play(scenario);
+			file.delete();
+		}
+	}
+
+	/**
+	 * Moves every suspect back and forth from their start tile, to check that
+	 * the board can be played on
+	 */
+	private static void play(Scenario scenario) {
+		Board board = new Board(scenario);
+		int moves = 0;
+		long start = System.nanoTime();
+		for (Suspect suspect : scenario.getData().getSuspects()) {
+			Player player = new Player(suspect.getName(), suspect);
+			board.addPlayer(player);
+			for (Direction direction : Direction.values()) {
+				try {
+					board.movePlayer(player, Arrays.asList(direction), null);
+					board.movePlayer(player, Arrays.asList(opposite(direction)), null);
+					moves += 2;
+				}
+				catch (UnableToMoveException e) {
+					// Blocked in this direction
+				}
+			}
+		}
+		System.out.printf("  %d moves in %.3f ms%n", moves, (System.nanoTime() - start) / 1e6);
+	}
+
+	private static Direction opposite(Direction direction) {
+		switch (direction) {
+		case UP:
+			return Direction.DOWN;
+		case DOWN:
+			return Direction.UP;
+		case LEFT:
+			return Direction.RIGHT;
+		default:
+			return Direction.LEFT;
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
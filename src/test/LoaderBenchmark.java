@@ -0,0 +1,65 @@
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import cluedo.loader.Loader;
+import cluedo.loader.ScenarioGenerator;
+
+/**
+ * Compares the speed of the PATTERN and SCANNER parsers on the bundled data
+ * files and on large boards from ScenarioGenerator. Run with the working
+ * directory set to the project root.
+ */
+public class LoaderBenchmark {
+	private static final int[] GENERATED_SIZES = { 100, 500, 2000 };
+
+	public static void main(String[] args) throws Exception {
+		benchmark("data/standard.txt", 2000);
+		benchmark("data/scifi.txt", 2000);
+
+		for (int size : GENERATED_SIZES) {
+			File file = File.createTempFile("board" + size, ".txt");
+			file.deleteOnExit();
+			new ScenarioGenerator(size, size, size).write(file);
+			benchmark(file.getPath(), Math.max(3, 200000 / (size * size / 10 + 1)));
+		}
+	}
+
+	/**
+	 * Loads the file repeatedly with each parser and prints the average time
+	 * per load
+	 */
+	private static void benchmark(String filename, int iterations) throws Exception {
+		System.out.println(filename + " (" + new File(filename).length() + " bytes)");
+		for (Loader.Parser parser : Loader.Parser.values()) {
+			// Warm up before timing
+			for (int i = 0; i < Math.max(1, iterations / 4); i++) {
+				load(filename, parser);
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				load(filename, parser);
+			}
+			double perLoad = (System.nanoTime() - start) / 1e6 / iterations;
+			System.out.printf("  %-8s %10.3f ms/load%n", parser, perLoad);
+		}
+	}
+
+	/**
+	 * Loads a file as UTF-8, which generated boards require
+	 */
+	private static Loader load(String filename, Loader.Parser parser) throws Exception {
+		Reader reader = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8);
+		try {
+			return new Loader(reader, parser);
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
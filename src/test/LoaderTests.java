@@ -2,31 +2,55 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
-import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import cluedo.game.ChunkedBitmap;
+import cluedo.game.ChunkedBitmap.ChunkType;
+import cluedo.game.Door;
+import cluedo.game.Scenario;
+import cluedo.game.objects.Room;
+import cluedo.game.objects.Suspect;
+import cluedo.game.objects.Weapon;
+import cluedo.loader.CompiledScenario;
 import cluedo.loader.Loader;
 import cluedo.loader.Loader.SyntaxException;
+import cluedo.loader.ScenarioGenerator;
+import cluedo.loader.ScenarioValidator;
+import cluedo.loader.ScenarioRegistry;
+import cluedo.loader.ScenarioWatcher;
 
 public class LoaderTests {
 	private static final String TEST_ROOMS = "rooms:\n  A: Some Room\n";
-	private static final String TEST_SUSPECTS = "suspects:\n  a: First Person [white]\n";
+	private static final String TEST_SUSPECTS = "suspects:\n  a: First Person #FFFFFF\n";
 	private static final String TEST_WEAPONS = "weapons:\n  - Deadly Weapon\n";
 	private static final String TEST_BOARD = "-----\nAAA. |\nAAA..|\n_A/..|\na... |\n ... |\n-----";
 	private static final String TEST_FULL_CONTENT = "---\n" + TEST_ROOMS
 			+ TEST_SUSPECTS + TEST_WEAPONS + TEST_BOARD;
 
-	@After
-	public void tearDown() {
-		new File("test.txt").delete();
-	}
-
 	@Rule
 	public ExpectedException expectedException = ExpectedException.none();
 
@@ -85,6 +109,83 @@ public class LoaderTests {
 		assertNotNull(loader);
 	}
 
+	@Test
+	public void testParsersAgree() throws Exception {
+		Loader pattern = new Loader("data/standard.txt", Loader.Parser.PATTERN);
+		Loader scanner = new Loader("data/standard.txt", Loader.Parser.SCANNER);
+		assertEquals(pattern.getBoardWidth(), scanner.getBoardWidth());
+		assertEquals(pattern.getBoardHeight(), scanner.getBoardHeight());
+		assertEquals(pattern.getCorridors(), scanner.getCorridors());
+		assertEquals(pattern.getRooms().keySet(), scanner.getRooms().keySet());
+		assertEquals(pattern.getSuspects().keySet(), scanner.getSuspects().keySet());
+		assertEquals(pattern.getWeapons().keySet(), scanner.getWeapons().keySet());
+		for (String name : pattern.getRooms().keySet()) {
+			assertEquals(pattern.getRooms().get(name).getPoints(), scanner.getRooms().get(name).getPoints());
+		}
+	}
+
+	@Test
+	public void testCompiledScenarioRoundTrip() throws Exception {
+		File compiled = File.createTempFile("standard", ".clue");
+		compiled.deleteOnExit();
+		Loader original = new Loader("data/standard.txt");
+		CompiledScenario.compile(original, compiled);
+
+		Loader loaded = Loader.load(compiled.getPath());
+		assertEquals(original.getBoardWidth(), loaded.getBoardWidth());
+		assertEquals(original.getBoardHeight(), loaded.getBoardHeight());
+		assertEquals(original.getCorridors(), loaded.getCorridors());
+		assertEquals(original.getWeapons().keySet(), loaded.getWeapons().keySet());
+		for (Suspect suspect : original.getSuspects().values()) {
+			Suspect other = loaded.getSuspects().get(suspect.getName());
+			assertEquals(suspect.getColor(), other.getColor());
+			assertEquals(suspect.getStartLocation(), other.getStartLocation());
+		}
+		for (Room room : original.getRooms().values()) {
+			Room other = loaded.getRooms().get(room.getName());
+			assertEquals(room.getPoints(), other.getPoints());
+			assertEquals(room.getDoors().size(), other.getDoors().size());
+			assertEquals(room.getDoor(0).getLocation(), other.getDoor(0).getLocation());
+			if (room.getPassageExit() != null) {
+				assertEquals(room.getPassageExit().getName(), other.getPassageExit().getName());
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptCompiledScenarioFails() throws Exception {
+		File compiled = File.createTempFile("standard", ".clue");
+		compiled.deleteOnExit();
+		CompiledScenario.compile(new Loader("data/standard.txt"), compiled);
+		byte[] content = Files.readAllBytes(compiled.toPath());
+		compiled.delete();
+
+		// Every truncated file fails with a syntax error
+		for (int length = 0; length < content.length; length++) {
+			try {
+				CompiledScenario.load(ByteBuffer.wrap(content, 0, length));
+				fail("Loaded a compiled scenario truncated to " + length + " bytes");
+			}
+			catch (SyntaxException e) {
+				// Expected
+			}
+		}
+
+		// Corrupt counts and indices either load or fail with a syntax error
+		for (int offset = 0; offset + 4 <= content.length; offset++) {
+			for (int value : new int[] { -1, Integer.MAX_VALUE, 1000 }) {
+				ByteBuffer corrupt = ByteBuffer.wrap(content.clone());
+				corrupt.putInt(offset, value);
+				try {
+					CompiledScenario.load(corrupt);
+				}
+				catch (SyntaxException e) {
+					// Expected
+				}
+			}
+		}
+	}
+
 	public static Loader getTestLoader() {
 		try {
 			return testLoader(TEST_FULL_CONTENT);
@@ -94,13 +195,348 @@ public class LoaderTests {
 		}
 	}
 
-	private static Loader testLoader(String string) throws SyntaxException {
+	@Test
+	public void testLoadsFromStream() throws Exception {
+		byte[] content = TEST_FULL_CONTENT.getBytes(StandardCharsets.UTF_8);
+		Loader loader = Loader.load(new ByteArrayInputStream(content));
+		assertTrue(loader.getRooms().containsKey("Some Room"));
+	}
+
+	@Test
+	public void testLoadsGzipStream() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(TEST_FULL_CONTENT.getBytes(StandardCharsets.UTF_8));
+		out.close();
+
+		Loader loader = Loader.load(new ByteArrayInputStream(bytes.toByteArray()));
+		assertTrue(loader.getRooms().containsKey("Some Room"));
+		assertTrue(loader.getWeapons().containsKey("Deadly Weapon"));
+	}
+
+	@Test
+	public void testLoadsByteBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap(TEST_FULL_CONTENT.getBytes(StandardCharsets.UTF_8));
+		Loader loader = Loader.load(buffer);
+		assertTrue(loader.getSuspects().containsKey("First Person"));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void testReportsProgress() throws Exception {
+		ScenarioGenerator generator = new ScenarioGenerator(400, 400, 3);
+		StringWriter text = new StringWriter();
+		generator.write(text);
+		final byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+
+		final List<Long> updates = new ArrayList<Long>();
+		Loader.load(ByteBuffer.wrap(content), new Loader.ProgressListener() {
+			@Override
+			public void progress(long bytesRead, long totalBytes) {
+				assertEquals(content.length, totalBytes);
+				updates.add(bytesRead);
+			}
+		});
+
+		assertTrue(updates.size() > 1);
+		for (int i = 1; i < updates.size(); i++) {
+			assertTrue(updates.get(i) > updates.get(i - 1));
+		}
+		assertEquals(content.length, (long) updates.get(updates.size() - 1));
+	}
+
+	@Test
+	public void testInterruptCancelsLoad() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap(TEST_FULL_CONTENT.getBytes(StandardCharsets.UTF_8));
+		Thread.currentThread().interrupt();
+		try {
+			Loader.load(buffer, new Loader.ProgressListener() {
+				@Override
+				public void progress(long bytesRead, long totalBytes) {
+				}
+			});
+			fail("Expected loading to be cancelled");
+		}
+		catch (InterruptedIOException e) {
+			// Expected
+		}
+		finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	public void testMissingResourceFails() throws Exception {
+		expectedException.expect(FileNotFoundException.class);
+		Loader.loadResource("no/such/scenario.txt");
+	}
+
+	@Test
+	public void testLoadsResource() throws Exception {
+		// Put a copy of the standard scenario at the root of the classpath
+		// the loader's classes came from
+		File root = new File(Loader.class.getClassLoader().getResource("cluedo/loader/Loader.class").toURI())
+				.getParentFile().getParentFile().getParentFile();
+		File resource = File.createTempFile("standard", ".txt", root);
+		resource.deleteOnExit();
+		try {
+			Files.write(resource.toPath(), Files.readAllBytes(new File("data/standard.txt").toPath()));
+			Loader loaded = Loader.loadResource(resource.getName());
+			Loader original = Loader.load("data/standard.txt");
+
+			assertEquals(original.getBoardWidth(), loaded.getBoardWidth());
+			assertEquals(original.getBoardHeight(), loaded.getBoardHeight());
+			assertEquals(original.getCorridors(), loaded.getCorridors());
+			assertEquals(original.getRooms().keySet(), loaded.getRooms().keySet());
+			assertEquals(original.getSuspects().keySet(), loaded.getSuspects().keySet());
+			assertEquals(original.getWeapons().keySet(), loaded.getWeapons().keySet());
+			for (String name : original.getRooms().keySet()) {
+				assertEquals(original.getRooms().get(name).getPoints(), loaded.getRooms().get(name).getPoints());
+			}
+		}
+		finally {
+			resource.delete();
+		}
+	}
+
+	@Test
+	public void testGeneratedScenarioIsValid() throws Exception {
+		ScenarioGenerator generator = new ScenarioGenerator(120, 80, 42);
+		generator.setRoomCount(30);
+		generator.setSuspectCount(40);
+		generator.setWeaponCount(12);
+		Loader loader = generator.toLoader();
+
+		assertEquals(30, loader.getRooms().size());
+		assertEquals(40, loader.getSuspects().size());
+		assertEquals(12, loader.getWeapons().size());
+		assertEquals(120, loader.getBoardWidth());
+		for (Room room : loader.getRooms().values()) {
+			assertFalse(room.getDoors().isEmpty());
+			for (Door door : room.getDoors()) {
+				Point beside = door.getPointBeside();
+				assertTrue(loader.getCorridors().get(beside.x + beside.y * loader.getBoardWidth()));
+			}
+		}
+		for (Suspect suspect : loader.getSuspects().values()) {
+			assertNotNull(suspect.getStartLocation());
+		}
+		assertTrue(new Scenario(loader).getComponents().getIsolatedRegions().isEmpty());
+
+		// The same seed always produces the same scenario
+		Loader other = generator.toLoader();
+		assertEquals(loader.getCorridors(), other.getCorridors());
+		assertEquals(loader.getRooms().get("Room A").getPoints(), other.getRooms().get("Room A").getPoints());
+	}
+
+	@Test
+	public void testHugeBoardIsChunked() throws Exception {
+		ScenarioGenerator generator = new ScenarioGenerator(1500, 1000, 7);
+		Loader loader = generator.toLoader();
+		assertTrue(loader.getCorridorMap() instanceof ChunkedBitmap);
+
+		ChunkedBitmap chunked = (ChunkedBitmap) loader.getCorridorMap();
+		assertTrue(chunked.getChunkCount(ChunkType.FULL) > 0);
+		assertTrue(chunked.getChunkCount(ChunkType.MIXED) > 0);
+
+		// Compiling stores the corridors as a flat bit set, so compare against that
+		BitSet flat = chunked.toBitSet();
+		for (int y = 0; y < 1000; y += 7) {
+			for (int x = 0; x < 1500; x++) {
+				assertEquals(flat.get(x + 1500 * y), chunked.get(x, y));
+			}
+		}
+		assertEquals(chunked.toBitSet(), ChunkedBitmap.fromBitSet(1500, 1000, flat).toBitSet());
+	}
+
+	@Test
+	public void testValidatorReportsProblems() throws Exception {
+		File directory = Files.createTempDirectory("scenarios").toFile();
+		File valid = new File(directory, "valid.txt");
+		File broken = new File(directory, "broken.txt");
+		File unreachable = new File(directory, "unreachable.txt");
+		writeFile(valid, TEST_FULL_CONTENT);
+		writeFile(broken, TEST_FULL_CONTENT.replace("AAA..|", "AAA..."));
+		writeFile(unreachable, TEST_FULL_CONTENT.replace("rooms:\n", "rooms:\n  B: Other Room\n")
+				.replace("AAA. |", "AAA.B|"));
+		// Not scenarios, so not validated
+		File temporary = new File(directory, "copying.txt.tmp");
+		File backup = new File(directory, "valid.txt~");
+		File distances = new File(directory, "valid.txt" + ScenarioRegistry.DISTANCE_EXTENSION);
+		writeFile(temporary, "partly");
+		writeFile(backup, "old");
+		writeFile(distances, "saved");
+
+		try {
+			ScenarioValidator.Summary summary = new ScenarioValidator().validateDirectory(directory);
+			assertEquals(3, summary.getResults().size());
+			assertEquals(1, summary.getValidCount());
+
+			ScenarioValidator.Result brokenResult = summary.getResults().get(0);
+			assertEquals(broken.getPath(), brokenResult.getFilename());
+			assertTrue(brokenResult.getErrors().get(0).contains("must end with a '|'"));
+
+			ScenarioValidator.Result unreachableResult = summary.getResults().get(1);
+			assertEquals(1, unreachableResult.getErrors().size());
+			assertTrue(unreachableResult.getErrors().get(0).startsWith("Other Room can't be reached"));
+
+			assertTrue(summary.getResults().get(2).isValid());
+			assertTrue(summary.toJson().contains("\"invalid\": 2"));
+		}
+		finally {
+			valid.delete();
+			broken.delete();
+			unreachable.delete();
+			temporary.delete();
+			backup.delete();
+			distances.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testValidatorChecksCardCounts() throws Exception {
+		File file = File.createTempFile("cards", ".txt");
+		file.deleteOnExit();
+		ScenarioValidator validator = new ScenarioValidator();
 		try {
-			PrintWriter out = new PrintWriter("test.txt");
-			out.println(string);
-			out.close();
+			// More weapons than rooms can't all be placed in a room
+			writeFile(file, TEST_FULL_CONTENT.replace("weapons:\n", "weapons:\n  - Other Weapon\n"));
+			List<String> errors = validator.validateFile(file).getErrors();
+			assertEquals(1, errors.size());
+			assertTrue(errors.get(0).startsWith("There are more weapons (2) than rooms (1)"));
+
+			writeFile(file, TEST_FULL_CONTENT.replace("  - Deadly Weapon\n", ""));
+			assertEquals(Arrays.asList("There are no weapons"), validator.validateFile(file).getErrors());
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRegistryCachesByContent() throws Exception {
+		File first = File.createTempFile("first", ".txt");
+		File second = File.createTempFile("second", ".txt");
+		first.deleteOnExit();
+		second.deleteOnExit();
+		writeFile(first, TEST_FULL_CONTENT);
+		writeFile(second, TEST_FULL_CONTENT);
+
+		ScenarioRegistry registry = new ScenarioRegistry(ScenarioRegistry.DEFAULT_CAPACITY);
+		Scenario scenario = registry.get(first.getPath());
+		assertSame(scenario, registry.get(first.getPath()));
+		assertSame(scenario, registry.get(second.getPath()));
+		assertEquals(1, registry.getScenarioCount());
 
-			return new Loader("test.txt");
+		writeFile(second, TEST_FULL_CONTENT.replace("Deadly Weapon", "Other Weapon"));
+		second.setLastModified(second.lastModified() + 2000);
+		assertNotSame(scenario, registry.get(second.getPath()));
+		assertEquals(2, registry.getScenarioCount());
+	}
+
+	@Test
+	public void testRegistryEvictsLeastRecentlyUsed() throws Exception {
+		File first = File.createTempFile("first", ".txt");
+		File second = File.createTempFile("second", ".txt");
+		first.deleteOnExit();
+		second.deleteOnExit();
+		writeFile(first, TEST_FULL_CONTENT);
+		writeFile(second, TEST_FULL_CONTENT.replace("Deadly Weapon", "Other Weapon"));
+
+		// Too small for two scenarios, so only the most recent one is kept
+		ScenarioRegistry registry = new ScenarioRegistry(1);
+		Scenario scenario = registry.get(first.getPath());
+		registry.get(second.getPath());
+		assertEquals(1, registry.getScenarioCount());
+		assertNotSame(scenario, registry.get(first.getPath()));
+	}
+
+	@Test
+	public void testRegistryCountsTablesBuiltLater() throws Exception {
+		File first = File.createTempFile("first", ".txt");
+		File second = File.createTempFile("second", ".txt");
+		first.deleteOnExit();
+		second.deleteOnExit();
+		writeFile(first, TEST_FULL_CONTENT);
+		writeFile(second, TEST_FULL_CONTENT.replace("Deadly Weapon", "Other Weapon"));
+
+		// Room for both scenarios as loaded, but not once the first has
+		// built its tables
+		long loaded = new Scenario(getTestLoader()).estimateSize();
+		ScenarioRegistry registry = new ScenarioRegistry(loaded * 2 + 1);
+		Scenario scenario = registry.get(first.getPath());
+		scenario.getFloodFill();
+		scenario.getDistances();
+		assertTrue(registry.getSize() > loaded);
+
+		registry.get(second.getPath());
+		assertEquals(1, registry.getScenarioCount());
+		assertNotSame(scenario, registry.get(first.getPath()));
+	}
+
+	@Test
+	public void testReloadKeepsUnchangedCards() throws Exception {
+		Scenario original = new Scenario(testLoader(TEST_FULL_CONTENT));
+		Suspect suspect = original.getData().getSuspect("First Person");
+		Weapon weapon = original.getData().getWeapon("Deadly Weapon");
+
+		// Widen a corridor, leaving the start tile where it was
+		Scenario widened = new Scenario(testLoader(TEST_FULL_CONTENT.replace("a... |", "a....|")), original);
+		assertTrue(widened.isCorridor(4, 3));
+		assertSame(suspect, widened.getData().getSuspect("First Person"));
+		assertSame(suspect, widened.getData().getSuspectsById().get('a'));
+		assertSame(weapon, widened.getData().getWeapon("Deadly Weapon"));
+		assertNotSame(original.getData().getRoom("Some Room"), widened.getData().getRoom("Some Room"));
+
+		// Moving the start tile changes the suspect
+		Scenario moved = new Scenario(testLoader(TEST_FULL_CONTENT.replace("a... |", ".a.. |")), original);
+		assertNotSame(suspect, moved.getData().getSuspect("First Person"));
+		assertEquals(new Point(1, 3), moved.getData().getSuspect("First Person").getStartLocation());
+		assertSame(weapon, moved.getData().getWeapon("Deadly Weapon"));
+	}
+
+	@Test
+	public void testWatcherReloadsChangedFile() throws Exception {
+		File file = File.createTempFile("watched", ".txt");
+		file.deleteOnExit();
+		writeFile(file, TEST_FULL_CONTENT);
+		Scenario original = new Scenario(Loader.load(file.getPath()));
+
+		final BlockingQueue<Scenario> reloaded = new LinkedBlockingQueue<Scenario>();
+		ScenarioWatcher watcher = new ScenarioWatcher(file.getPath(), original, new ScenarioWatcher.Listener() {
+			@Override
+			public void scenarioChanged(Scenario scenario) {
+				reloaded.add(scenario);
+			}
+
+			@Override
+			public void reloadFailed(String message) {
+			}
+		});
+		try {
+			writeFile(file, TEST_FULL_CONTENT.replace("Deadly Weapon", "Other Weapon"));
+			Scenario scenario = reloaded.poll(20, TimeUnit.SECONDS);
+			assertNotNull("File was not reloaded", scenario);
+			assertNotNull(scenario.getData().getWeapon("Other Weapon"));
+			assertSame(original.getData().getSuspect("First Person"), scenario.getData().getSuspect("First Person"));
+			assertSame(scenario, watcher.getScenario());
+		}
+		finally {
+			watcher.close();
+			file.delete();
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		PrintWriter writer = new PrintWriter(file);
+		writer.print(content);
+		writer.close();
+	}
+
+	static Loader testLoader(String string) throws SyntaxException {
+		try {
+			return new Loader(new StringReader(string + "\n"));
 		}
 		catch (IOException e) {
 			throw new RuntimeException(e);
@@ -3,6 +3,10 @@ package test;
 import static org.junit.Assert.*;
 
 import java.awt.Point;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -29,6 +33,35 @@ public class RoomTests {
 		assertEquals(3, room.getCenterPoint().y);
 	}
 
+	@Test
+	public void testPointsMatchHashSet() {
+		Random random = new Random(1);
+		Room room = new Room("Test room");
+		Set<Point> expected = new HashSet<Point>();
+		for (int i = 0; i < 2000; i++) {
+			Point point = new Point(random.nextInt(40), random.nextInt(20) - 10);
+			room.addPoint(point.x, point.y);
+			expected.add(point);
+		}
+
+		assertEquals(expected, room.getPoints());
+		assertEquals(expected.size(), room.getPoints().size());
+		assertFalse(room.getPoints().contains(new Point(40, 0)));
+	}
+
+	@Test
+	public void testPointsIterateInRowMajorOrder() {
+		Room room = mockRoom(new Point[] {
+				new Point(3, 1), new Point(1, 1), new Point(2, 0), new Point(2, 1)
+		});
+		Iterator<Point> points = room.getPoints().iterator();
+		assertEquals(new Point(2, 0), points.next());
+		assertEquals(new Point(1, 1), points.next());
+		assertEquals(new Point(2, 1), points.next());
+		assertEquals(new Point(3, 1), points.next());
+		assertFalse(points.hasNext());
+	}
+
 	private Room mockRoom(Point[] points) {
 		Room room = new Room("Test room");
 		for (Point point : points) {